@@ -0,0 +1,66 @@
+/*
+ * Copyright 2025 TerminalMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.terminalmc.commandkeys.benchmark;
+
+import dev.terminalmc.commandkeys.config.Config;
+import dev.terminalmc.commandkeys.config.Profile;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures activating the profile linked to a server address on connect, as
+ * performed by {@link Config#activateMpProfile}, with one linked profile per
+ * address and an unlinked address for every fourth connect.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ActivationBenchmark {
+    private static final int CONNECT_COUNT = 1024;
+
+    @Param({"10", "1000"})
+    public int profileCount;
+
+    private Config config;
+    private final String[] hosts = new String[CONNECT_COUNT];
+    private int connect;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        config = new Config();
+        for (int i = 0; i < profileCount; i++) {
+            Profile profile = new Profile();
+            profile.forceAddLink(i % 2 == 0
+                    ? "server" + i + ".example.net"
+                    : "*.region" + i + ".example.net");
+            config.addProfile(profile);
+        }
+        for (int i = 0; i < CONNECT_COUNT; i++) {
+            int n = (i * 7) % profileCount;
+            if (i % 4 == 3) hosts[i] = "unlinked.example.org";
+            else if (n % 2 == 0) hosts[i] = "server" + n + ".example.net";
+            else hosts[i] = "mc.region" + n + ".example.net";
+        }
+    }
+
+    @Benchmark
+    public Profile activateMpProfile() {
+        config.activateMpProfile(hosts[connect++ & (CONNECT_COUNT - 1)], 25565);
+        return config.activeProfile();
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright 2025 TerminalMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.terminalmc.commandkeys.benchmark;
+
+import dev.terminalmc.commandkeys.config.Config;
+import dev.terminalmc.commandkeys.config.Macro;
+import dev.terminalmc.commandkeys.config.Profile;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link Config#cleanup}, as performed by every save, of a config
+ * with a single large profile, and changing a behavior control of the
+ * profile then reading the resulting status of every macro.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class CleanupBenchmark {
+    private static final int MESSAGE_COUNT = 3;
+
+    @Param({"1000", "5000"})
+    public int macroCount;
+
+    private Config config;
+    private Profile profile;
+    private List<Macro> macros;
+    private boolean on;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        config = SyntheticConfig.load(macroCount, MESSAGE_COUNT, 0);
+        profile = config.activeProfile();
+        macros = profile.getMacros();
+    }
+
+    @Benchmark
+    public void cleanup() {
+        config.cleanup();
+    }
+
+    @Benchmark
+    public int toggleControl() {
+        on = !on;
+        profile.setAddToHistory(on ? Profile.Control.ON : Profile.Control.DEFER);
+        int count = 0;
+        for (Macro macro : macros) {
+            if (macro.getAddToHistoryStatus()) count++;
+        }
+        return count;
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright 2025 TerminalMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.terminalmc.commandkeys.benchmark;
+
+import dev.terminalmc.commandkeys.config.Config;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Measures reading and writing a config with a single profile of synthetic
+ * macros, from an index and profile file, and from the binary snapshot.
+ *
+ * <p>{@link ConfigIoBenchmark#loadMigrated} loads the single-file format
+ * written by {@link SyntheticConfig#write}, so also measures its migration
+ * and the writing of the index and profile files, as on the first start
+ * after an update.</p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ConfigIoBenchmark {
+    private static final int MESSAGE_COUNT = 3;
+
+    @Param({"10", "1000", "10000"})
+    public int macroCount;
+
+    private Path dir;
+    private Path readFile;
+    private Path writeFile;
+    private Config config;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        dir = Files.createTempDirectory("commandkeys-bench");
+        readFile = SyntheticConfig.write(dir, macroCount, MESSAGE_COUNT, 0);
+        writeFile = dir.resolve("output.json");
+        config = Config.load(readFile);
+        if (config == null) throw new IllegalStateException("Unable to load synthetic config");
+        Config.save(config, writeFile);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(dir)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    @Benchmark
+    public Config loadMigrated() {
+        return Config.load(readFile);
+    }
+
+    @Benchmark
+    public Config loadSharded() {
+        return Config.load(writeFile);
+    }
+
+    @Benchmark
+    public Config loadSnapshot() {
+        return Config.loadSnapshot(writeFile);
+    }
+
+    @Benchmark
+    public void save() throws IOException {
+        Config.save(config, writeFile);
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright 2025 TerminalMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.terminalmc.commandkeys.benchmark;
+
+import dev.terminalmc.commandkeys.config.Config;
+import dev.terminalmc.commandkeys.config.Macro;
+import dev.terminalmc.commandkeys.config.Profile;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures copying a profile with {@link Config#copyProfile}, and copying it
+ * then opening the copy for editing, which gives it its own macros.
+ *
+ * <p>Copies are kept until the end of the iteration, so each iteration runs a
+ * fixed batch of invocations.</p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Measurement(batchSize = 100)
+@Warmup(batchSize = 100)
+public class CopyBenchmark {
+    @Param({"10", "1000"})
+    public int macroCount;
+
+    private Config config;
+    private Profile profile;
+
+    @Setup(Level.Iteration)
+    public void setup() throws IOException {
+        config = SyntheticConfig.load(macroCount, 3, 0);
+        profile = config.getProfiles().stream()
+                .filter((p) -> !p.getMacros().isEmpty())
+                .findFirst()
+                .orElseThrow();
+    }
+
+    @Benchmark
+    public Profile copyProfile() {
+        config.copyProfile(profile);
+        return config.getProfiles().getLast();
+    }
+
+    @Benchmark
+    public List<Macro> copyAndEdit() {
+        config.copyProfile(profile);
+        return config.getProfiles().getLast().getMacros();
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright 2025 TerminalMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.terminalmc.commandkeys.benchmark;
+
+import com.mojang.blaze3d.platform.InputConstants;
+import dev.terminalmc.commandkeys.config.Config;
+import dev.terminalmc.commandkeys.config.Keybind;
+import dev.terminalmc.commandkeys.config.Macro;
+import dev.terminalmc.commandkeys.config.Profile;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static dev.terminalmc.commandkeys.config.Macro.ConflictStrategy.AVOID;
+
+/**
+ * Measures macro selection for a key press, as performed by
+ * {@link dev.terminalmc.commandkeys.util.KeybindUtil#handleKey}.
+ *
+ * <p>The window key state is replaced by a single held limit key per press,
+ * and macros are selected but not triggered.</p>
+ *
+ * <p>With an {@code inheritDepth} above zero, the macros are spread across a
+ * chain of that many ancestor profiles, which should not affect the time per
+ * press as inherited macros are flattened into the maps.</p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class DispatchBenchmark {
+    private static final int PRESS_COUNT = 1024;
+
+    @Param({"10", "1000", "10000"})
+    public int macroCount;
+
+    @Param({"0", "3"})
+    public int inheritDepth;
+
+    private Profile profile;
+    private final InputConstants.Key[] keys = new InputConstants.Key[PRESS_COUNT];
+    private final InputConstants.Key[] heldKeys = new InputConstants.Key[PRESS_COUNT];
+    private int press;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        Config config = SyntheticConfig.load(macroCount, 2, 0);
+        profile = config.activeProfile();
+        if (inheritDepth > 0) {
+            List<Profile> ancestors = new ArrayList<>();
+            Profile child = profile;
+            for (int i = 0; i < inheritDepth; i++) {
+                Profile ancestor = new Profile("Ancestor " + i);
+                config.addProfile(ancestor);
+                child.setParent(ancestor);
+                ancestors.add(ancestor);
+                child = ancestor;
+            }
+            List<Macro> macros = List.copyOf(profile.getMacros());
+            for (int i = 0; i < macros.size(); i++) {
+                int depth = i % (inheritDepth + 1);
+                if (depth == 0) continue;
+                profile.removeMacro(macros.get(i));
+                ancestors.get(depth - 1).addMacro(macros.get(i));
+            }
+        }
+        // Build the maps before measuring
+        profile.getKeybindMap();
+
+        Random random = new Random(SyntheticConfig.SEED);
+        List<String> limitKeys = SyntheticConfig.LIMIT_KEYS;
+        for (int i = 0; i < PRESS_COUNT; i++) {
+            keys[i] = InputConstants.getKey(
+                    SyntheticConfig.KEYS.get(random.nextInt(SyntheticConfig.KEYS.size())));
+            heldKeys[i] = InputConstants.getKey(limitKeys.get(random.nextInt(limitKeys.size())));
+        }
+    }
+
+    @Benchmark
+    public void handleKey(Blackhole bh) {
+        int i = press++ & (PRESS_COUNT - 1);
+        bh.consume(select(profile, keys[i], heldKeys[i]));
+    }
+
+    /**
+     * Selects the macros to activate as in
+     * {@link dev.terminalmc.commandkeys.util.KeybindUtil#handleKey}, with
+     * {@code heldKey} standing in for {@link Keybind#isLimitKeyDown}.
+     */
+    private static Collection<Macro> select(Profile profile, InputConstants.Key key,
+                                            InputConstants.Key heldKey) {
+        if (!profile.getKeybindMap().containsKey(key)) return List.of();
+
+        Collection<Keybind> keybinds = profile.getKeybindMap().get(key);
+        Keybind monoKb = null;
+        Collection<Macro> activeMacros = null;
+        for (Keybind kb : keybinds) {
+            if (!kb.getLimitKey().equals(InputConstants.UNKNOWN)
+                    && kb.getLimitKey().equals(heldKey)) {
+                activeMacros = profile.getMacroMap().get(kb).stream()
+                        .filter((macro) -> !macro.getStrategy().equals(AVOID))
+                        .toList();
+                if (!activeMacros.isEmpty()) break;
+            } else if (kb.getLimitKey().equals(InputConstants.UNKNOWN)) {
+                monoKb = kb;
+            }
+        }
+        if (activeMacros == null || activeMacros.isEmpty()) {
+            if (monoKb == null) return List.of();
+            activeMacros = profile.getMacroMap().get(monoKb).stream()
+                    .filter((macro) -> !macro.getStrategy().equals(AVOID))
+                    .toList();
+        }
+        return activeMacros;
+    }
+}
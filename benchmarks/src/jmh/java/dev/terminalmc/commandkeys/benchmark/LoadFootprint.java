@@ -0,0 +1,147 @@
+/*
+ * Copyright 2025 TerminalMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.terminalmc.commandkeys.benchmark;
+
+import com.sun.management.ThreadMXBean;
+import dev.terminalmc.commandkeys.CommandKeys;
+import dev.terminalmc.commandkeys.config.Config;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Measures a single load of a synthetic config in a fresh JVM, as at game
+ * startup. The JMH benchmarks, such as {@link ConfigIoBenchmark}, measure
+ * warmed-up code instead.
+ *
+ * <p>Run with {@code ./gradlew :benchmarks:loadFootprint}, optionally with
+ * {@code -PmacroCount=<count>}. The config is written, then each format is
+ * loaded by a new JVM with the same options, which reports the time taken,
+ * the bytes allocated by the loading thread, and the peak heap usage over
+ * that before loading.</p>
+ */
+public class LoadFootprint {
+    private static final int MESSAGE_COUNT = 3;
+    /**
+     * The formats loaded: a single file of version 5, which is migrated and
+     * split into an index with profile files as it is loaded, an index with
+     * profile files, and the binary snapshot of the latter.
+     */
+    private static final List<String> FORMATS = List.of("migrated", "sharded", "snapshot");
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length == 3 && args[0].equals("measure")) {
+            measure(args[1], Path.of(args[2]));
+            return;
+        }
+        int macroCount = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+        Path dir = Files.createTempDirectory("commandkeys-bench");
+        try {
+            Path legacyFile = SyntheticConfig.write(dir, macroCount, MESSAGE_COUNT, 0);
+            Path shardedFile = dir.resolve("output.json");
+            Config config = Config.load(legacyFile);
+            if (config == null) throw new IllegalStateException("Unable to load synthetic config");
+            Config.save(config, shardedFile);
+            // Written next to the index by the save
+            Path snapshotFile = dir.resolve(CommandKeys.MOD_ID + ".bin");
+            System.out.printf("%d macros%n", macroCount);
+            System.out.printf("migrated file %6.1f MB%n", Files.size(legacyFile) / 1e6);
+            System.out.printf("sharded  files %5.1f MB%n", shardedSize(dir, legacyFile, snapshotFile) / 1e6);
+            System.out.printf("snapshot file %6.1f MB%n", Files.size(snapshotFile) / 1e6);
+            for (String format : FORMATS) {
+                run(format, format.equals("migrated") ? legacyFile : shardedFile);
+            }
+        } finally {
+            try (Stream<Path> files = Files.walk(dir)) {
+                for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                    Files.delete(file);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the total size of the JSON files written by the save, which is
+     * every file in {@code dir} except the legacy file and the snapshot.
+     */
+    private static long shardedSize(Path dir, Path legacyFile, Path snapshotFile)
+            throws IOException {
+        long size = 0;
+        try (Stream<Path> files = Files.walk(dir)) {
+            for (Path file : files.filter(Files::isRegularFile).toList()) {
+                if (!file.equals(legacyFile) && !file.equals(snapshotFile)) size += Files.size(file);
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Loads {@code file} in {@code format} in a new JVM.
+     */
+    private static void run(String format, Path file) throws IOException, InterruptedException {
+        List<String> command = new ArrayList<>();
+        command.add(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+        command.addAll(ManagementFactory.getRuntimeMXBean().getInputArguments());
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(LoadFootprint.class.getName());
+        command.add("measure");
+        command.add(format);
+        command.add(file.toString());
+        int exitCode = new ProcessBuilder(command).inheritIO().start().waitFor();
+        if (exitCode != 0) throw new IllegalStateException("Measurement failed: " + format);
+    }
+
+    private static void measure(String format, Path file) {
+        List<MemoryPoolMXBean> heapPools = ManagementFactory.getMemoryPoolMXBeans().stream()
+                .filter((pool) -> pool.getType() == MemoryType.HEAP).toList();
+        ThreadMXBean threads = (ThreadMXBean)ManagementFactory.getThreadMXBean();
+        System.gc();
+        long baseline = 0;
+        for (MemoryPoolMXBean pool : heapPools) {
+            pool.resetPeakUsage();
+            baseline += pool.getUsage().getUsed();
+        }
+        long allocatedBefore = threads.getCurrentThreadAllocatedBytes();
+        long start = System.nanoTime();
+
+        Config config = load(format, file);
+
+        long elapsed = System.nanoTime() - start;
+        long allocated = threads.getCurrentThreadAllocatedBytes() - allocatedBefore;
+        // The sum of the peaks of each pool, which may not have coincided
+        long peak = 0;
+        for (MemoryPoolMXBean pool : heapPools) peak += pool.getPeakUsage().getUsed();
+        if (config == null) throw new IllegalStateException("Unable to load " + file);
+        System.out.printf("%-8s load %5d ms, allocated %6.1f MB, peak heap +%6.1f MB%n",
+                format, elapsed / 1_000_000, allocated / 1e6, (peak - baseline) / 1e6);
+    }
+
+    private static Config load(String format, Path file) {
+        return format.equals("snapshot")
+                ? Config.loadSnapshot(file)
+                : Config.load(file);
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright 2025 TerminalMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.terminalmc.commandkeys.benchmark;
+
+import dev.terminalmc.commandkeys.config.Macro;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures one client tick of {@link Macro#tick} across the active profile,
+ * as performed by {@link dev.terminalmc.commandkeys.CommandKeys#onEndTick},
+ * with every macro holding scheduled messages.
+ *
+ * <p>Message delays are long enough that nothing is sent during a run.</p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class MacroTickBenchmark {
+    private static final int MESSAGE_COUNT = 4;
+    private static final int DELAY_TICKS = 100_000_000;
+
+    @Param({"10", "1000", "10000"})
+    public int macroCount;
+
+    private List<Macro> macros;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        macros = SyntheticConfig.load(macroCount, MESSAGE_COUNT, DELAY_TICKS)
+                .activeProfile().getMacros();
+        for (Macro macro : macros) macro.trigger(null);
+    }
+
+    @Benchmark
+    public void tick() {
+        macros.forEach(Macro::tick);
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright 2025 TerminalMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.terminalmc.commandkeys.benchmark;
+
+import dev.terminalmc.commandkeys.config.Config;
+import dev.terminalmc.commandkeys.config.Profile;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Measures reading a config with a single profile of synthetic macros from a
+ * file written by an earlier version, which is upgraded to the current
+ * version, and reading it back after it was written in the current format.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class MigrationBenchmark {
+    private static final int MESSAGE_COUNT = 3;
+
+    @Param({"1", "2", "3", "4"})
+    public int version;
+
+    @Param({"1000", "10000"})
+    public int macroCount;
+
+    private Path dir;
+    private Path legacyFile;
+    private Path migratedFile;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        dir = Files.createTempDirectory("commandkeys-bench");
+        legacyFile = SyntheticConfig.writeLegacy(dir, version, macroCount, MESSAGE_COUNT);
+        migratedFile = dir.resolve("migrated.json");
+        Config config = Config.load(legacyFile);
+        if (config == null) throw new IllegalStateException("Unable to load synthetic config");
+        Config.save(config, migratedFile);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(dir)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    @Benchmark
+    public Config migrate() {
+        return Config.load(legacyFile);
+    }
+
+    /**
+     * Loads every profile, as {@link MigrationBenchmark#migrate} does.
+     */
+    @Benchmark
+    public Config loadMigrated() {
+        Config config = Config.load(migratedFile);
+        if (config != null) config.getProfiles().forEach(Profile::getMacros);
+        return config;
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright 2025 TerminalMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.terminalmc.commandkeys.benchmark;
+
+import dev.terminalmc.commandkeys.CommandKeys;
+import dev.terminalmc.commandkeys.util.HeadlessClientContext;
+import dev.terminalmc.commandkeys.util.PlaceholderUtil;
+import net.minecraft.core.BlockPos;
+import net.minecraft.network.chat.Component;
+import net.minecraft.world.phys.Vec3;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link PlaceholderUtil#replace} over representative message
+ * templates, with client state supplied by a {@link HeadlessClientContext}.
+ *
+ * <p>The recent chat contains 50 messages, with a single private message in
+ * the middle.</p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class PlaceholderBenchmark {
+    private static final int CHAT_SIZE = 50;
+
+    @Param({
+            "/home",
+            "Selling 64 diamonds, 10% off",
+            "/msg friend %notaplaceholder% %also not% 100%",
+            "Long message with a trailing percent: Lorem ipsum dolor sit amet, consectetur "
+                    + "adipiscing elit, sed do eiusmod tempor incididunt ut labore et dolore "
+                    + "magna aliqua. Ut enim ad minim veniam, quis nostrud exercitation 100%",
+            "Hi, I'm %myname%",
+            "/tp %x+5% %y% %z-3%",
+            "/setblock %posF10% stone",
+            "/msg %pmsender% Received, thanks",
+            "Your number was %#<Player7> my number is (\\d+)%",
+    })
+    public String template;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        HeadlessClientContext context = new HeadlessClientContext(0);
+        context.playerName = "Player";
+        context.playerBlockPos = new BlockPos(100, 64, -200);
+        context.lookAngle = new Vec3(0.6, -0.2, 0.8);
+        for (int i = 0; i < CHAT_SIZE; i++) {
+            if (i == CHAT_SIZE / 2) {
+                context.chatMessages.addLast(Component.translatable(
+                        "commands.message.display.incoming",
+                        Component.literal("Friend"), Component.literal("Hello")));
+            } else {
+                context.chatMessages.addLast(Component.literal(
+                        String.format("<Player%d> my number is %d", i, i * 31)));
+            }
+        }
+        CommandKeys.setContext(context);
+    }
+
+    @Benchmark
+    public Object replace() {
+        return PlaceholderUtil.replace(template);
+    }
+}
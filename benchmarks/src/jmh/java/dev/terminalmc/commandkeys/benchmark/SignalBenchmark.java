@@ -0,0 +1,67 @@
+/*
+ * Copyright 2025 TerminalMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.terminalmc.commandkeys.benchmark;
+
+import dev.terminalmc.commandkeys.config.Config;
+import dev.terminalmc.commandkeys.config.Profile;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures matching a tab-list header against the signals of all profiles,
+ * as performed by {@link Config#onServerText} when a server updates its
+ * header every tick. Each header differs from the last, as with an animated
+ * header, and names one of the servers behind the proxy.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class SignalBenchmark {
+    private static final int HEADER_COUNT = 1024;
+
+    @Param({"10", "100"})
+    public int profileCount;
+
+    private Config config;
+    private final String[] headers = new String[HEADER_COUNT];
+    private int header;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        config = new Config();
+        for (int i = 0; i < profileCount; i++) {
+            Profile profile = new Profile();
+            profile.setSignals(List.of("You are on (?:server|realm)-" + i + "\\b"));
+            config.addProfile(profile);
+        }
+        config.activateMpProfile("proxy.example.net", 25565);
+        for (int i = 0; i < HEADER_COUNT; i++) {
+            headers[i] = "§6Example Network §7| " + i % 8 + " online\nYou are on server-"
+                    + (i * 7) % profileCount + "\nstore.example.net";
+        }
+    }
+
+    @Benchmark
+    public Profile matchHeader() {
+        config.onServerText(Config.ServerText.TAB_HEADER,
+                headers[header++ & (HEADER_COUNT - 1)]);
+        config.tickSignals();
+        return config.activeProfile();
+    }
+}
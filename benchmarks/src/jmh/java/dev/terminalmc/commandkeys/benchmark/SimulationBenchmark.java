@@ -0,0 +1,81 @@
+/*
+ * Copyright 2025 TerminalMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.terminalmc.commandkeys.benchmark;
+
+import com.mojang.blaze3d.platform.InputConstants;
+import dev.terminalmc.commandkeys.CommandKeys;
+import dev.terminalmc.commandkeys.config.Config;
+import dev.terminalmc.commandkeys.util.HeadlessClientContext;
+import dev.terminalmc.commandkeys.util.KeybindUtil;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures one simulated client tick containing a key press, run through
+ * {@link KeybindUtil#handleKey} and {@link CommandKeys#tick} with real
+ * profile and macro instances and a {@link HeadlessClientContext}.
+ *
+ * <p>Each macro sends its messages one tick apart, so a steady state of
+ * scheduled and sent messages is reached during warmup.</p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SimulationBenchmark {
+    private static final int PRESS_COUNT = 1024;
+
+    @Param({"10", "1000", "10000"})
+    public int macroCount;
+
+    private HeadlessClientContext context;
+    private final InputConstants.Key[] keys = new InputConstants.Key[PRESS_COUNT];
+    private final InputConstants.Key[] heldKeys = new InputConstants.Key[PRESS_COUNT];
+    private int press;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        context = new HeadlessClientContext(PRESS_COUNT);
+        CommandKeys.setContext(context);
+        Config config = SyntheticConfig.load(macroCount, 2, 1);
+        // One press per tick would otherwise be ratelimited
+        config.setRatelimitCount(Integer.MAX_VALUE);
+        Config.set(config);
+
+        Random random = new Random(SyntheticConfig.SEED);
+        for (int i = 0; i < PRESS_COUNT; i++) {
+            keys[i] = InputConstants.getKey(SyntheticConfig.KEYS.get(
+                    random.nextInt(SyntheticConfig.KEYS.size())));
+            heldKeys[i] = InputConstants.getKey(SyntheticConfig.LIMIT_KEYS.get(
+                    random.nextInt(SyntheticConfig.LIMIT_KEYS.size())));
+        }
+    }
+
+    @Benchmark
+    public long pressAndTick() {
+        int i = press++ & (PRESS_COUNT - 1);
+        context.heldKeys.clear();
+        context.heldKeys.add(keys[i]);
+        context.heldKeys.add(heldKeys[i]);
+        KeybindUtil.handleKey(keys[i]);
+        CommandKeys.tick(true);
+        context.advanceTick();
+        return context.getSendCount();
+    }
+}
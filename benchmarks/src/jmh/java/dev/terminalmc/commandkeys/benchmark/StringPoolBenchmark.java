@@ -0,0 +1,93 @@
+/*
+ * Copyright 2025 TerminalMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.terminalmc.commandkeys.benchmark;
+
+import dev.terminalmc.commandkeys.config.Config;
+import dev.terminalmc.commandkeys.config.StringPool;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Measures loading a config with a single profile of synthetic macros, with
+ * strings deduplicated by {@link StringPool}.
+ *
+ * <p>The {@link StringPool.Report} of each load is reported as secondary
+ * results: the retained size of the pooled strings, and the size of the
+ * duplicates which are no longer retained. These are summed over the loads
+ * of each iteration, so are divided by {@code loads} to give the values for
+ * one load.</p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class StringPoolBenchmark {
+    private static final int MESSAGE_COUNT = 3;
+
+    @Param({"1000", "10000"})
+    public int macroCount;
+
+    private Path dir;
+    private Path file;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class MemoryReport {
+        public long loads;
+        public long uniqueStrings;
+        public long pooledBytes;
+        public long duplicates;
+        public long savedBytes;
+
+        void add(StringPool.Report report) {
+            loads++;
+            uniqueStrings += report.unique();
+            pooledBytes += report.pooledBytes();
+            duplicates += report.duplicates();
+            savedBytes += report.savedBytes();
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        dir = Files.createTempDirectory("commandkeys-bench");
+        file = SyntheticConfig.write(dir, macroCount, MESSAGE_COUNT, 0);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(dir)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    @Benchmark
+    public Config load(MemoryReport report) {
+        StringPool.reset();
+        Config config = Config.load(file);
+        if (config == null) throw new IllegalStateException("Unable to load synthetic config");
+        report.add(StringPool.report());
+        return config;
+    }
+}
@@ -0,0 +1,297 @@
+/*
+ * Copyright 2025 TerminalMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.terminalmc.commandkeys.benchmark;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import dev.terminalmc.commandkeys.config.Config;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generates configs in the single-file serialized format, or that of an
+ * earlier version, with a single profile containing a given number of
+ * macros.
+ *
+ * <p>Generation is seeded, so the same parameters always produce the same
+ * config.</p>
+ */
+public class SyntheticConfig {
+    public static final long SEED = 42;
+
+    /**
+     * Key names used for primary keys.
+     */
+    public static final List<String> KEYS = new ArrayList<>();
+    /**
+     * Key names used for limit keys, including the unbound key.
+     */
+    public static final List<String> LIMIT_KEYS = List.of(
+            "key.keyboard.unknown",
+            "key.keyboard.left.shift",
+            "key.keyboard.left.control",
+            "key.keyboard.left.alt"
+    );
+
+    static {
+        for (char c = 'a'; c <= 'z'; c++) KEYS.add("key.keyboard." + c);
+        for (char c = '0'; c <= '9'; c++) KEYS.add("key.keyboard." + c);
+        for (int i = 1; i <= 12; i++) KEYS.add("key.keyboard.f" + i);
+    }
+
+    private static final String[] TEMPLATES = {
+            "/home",
+            "/warp spawn",
+            "/msg player%d Hello there!",
+            "/tp %d 64 -%d",
+            "Selling %d diamonds, 10%% off",
+            "/gamemode creative",
+    };
+
+    /**
+     * @param macroCount the number of macros to generate.
+     * @param messageCount the number of messages per macro.
+     * @param delayTicks the delay of each message.
+     * @return a serialized config, in the single-file format of version 5,
+     * which is migrated and split into an index and profile files by
+     * {@link Config#load}.
+     */
+    public static JsonObject create(int macroCount, int messageCount, int delayTicks) {
+        Random random = new Random(SEED);
+
+        JsonArray macros = new JsonArray();
+        for (int i = 0; i < macroCount; i++) {
+            JsonArray messages = new JsonArray();
+            for (int j = 0; j < messageCount; j++) {
+                String template = TEMPLATES[random.nextInt(TEMPLATES.length)];
+                JsonObject message = new JsonObject();
+                message.addProperty("version", 1);
+                message.addProperty("enabled", true);
+                message.addProperty("string", String.format(template, i, j));
+                message.addProperty("delayTicks", delayTicks);
+                messages.add(message);
+            }
+
+            JsonObject macro = new JsonObject();
+            macro.addProperty("version", 5);
+            macro.addProperty("addToHistory", random.nextBoolean());
+            macro.addProperty("showHudMessage", random.nextBoolean());
+            macro.addProperty("resumeRepeating", false);
+            macro.addProperty("useRatelimit", true);
+            // Every fifth macro avoids conflicts, the rest submit
+            macro.addProperty("conflictStrategy", i % 5 == 4 ? "AVOID" : "SUBMIT");
+            macro.addProperty("sendMode", "SEND");
+            macro.addProperty("spaceTicks", 0);
+            macro.add("keybind", keybind(
+                    KEYS.get(random.nextInt(KEYS.size())),
+                    LIMIT_KEYS.get(random.nextInt(LIMIT_KEYS.size()))));
+            macro.add("altKeybind", keybind("key.keyboard.unknown", "key.keyboard.unknown"));
+            macro.add("messages", messages);
+            macros.add(macro);
+        }
+
+        JsonObject profile = new JsonObject();
+        profile.addProperty("version", 4);
+        profile.addProperty("name", "Synthetic Profile");
+        profile.add("links", new JsonArray());
+        profile.addProperty("addToHistory", "DEFER");
+        profile.addProperty("showHudMessage", "DEFER");
+        profile.addProperty("resumeRepeating", "OFF");
+        profile.addProperty("useRatelimit", "ON");
+        profile.add("macros", macros);
+
+        JsonArray profiles = new JsonArray();
+        profiles.add(profile);
+
+        JsonObject config = new JsonObject();
+        config.addProperty("version", 5);
+        config.add("profiles", profiles);
+        config.addProperty("spDefault", 0);
+        config.addProperty("mpDefault", 0);
+        config.addProperty("defaultConflictStrategy", "SUBMIT");
+        config.addProperty("defaultSendMode", "SEND");
+        config.addProperty("ratelimitCount", 4);
+        config.addProperty("ratelimitTicks", 20);
+        config.addProperty("ratelimitStrict", false);
+        config.addProperty("ratelimitSp", false);
+        return config;
+    }
+
+    /**
+     * @param version the config version, from 1 to 4.
+     * @param macroCount the number of macros to generate.
+     * @param messageCount the number of messages per macro.
+     * @return a serialized config in the format of an earlier version, with
+     * profiles and macros in the format current at that version.
+     */
+    public static JsonObject createLegacy(int version, int macroCount, int messageCount) {
+        if (version < 1 || version > 4) throw new IllegalArgumentException(
+                "Unsupported legacy version " + version);
+        Random random = new Random(SEED);
+        // Ordinal names used before macro version 3
+        String[] strategies = {"ZERO", "ONE", "TWO", "THREE"};
+        String[] modes = {"ZERO", "ONE", "TWO"};
+        int macroVersion = version == 1 ? 0 : version - 1;
+
+        JsonArray macros = new JsonArray();
+        for (int i = 0; i < macroCount; i++) {
+            JsonArray messages = new JsonArray();
+            for (int j = 0; j < messageCount; j++) {
+                String string = String.format(TEMPLATES[random.nextInt(TEMPLATES.length)], i, j);
+                if (macroVersion < 2) {
+                    messages.add(string);
+                } else {
+                    JsonObject message = new JsonObject();
+                    message.addProperty("version", 1);
+                    message.addProperty("enabled", true);
+                    message.addProperty("string", string);
+                    message.addProperty("delayTicks", 0);
+                    messages.add(message);
+                }
+            }
+            String keyName = KEYS.get(random.nextInt(KEYS.size()));
+            String limitKeyName = LIMIT_KEYS.get(random.nextInt(LIMIT_KEYS.size()));
+
+            JsonObject macro = new JsonObject();
+            macro.addProperty("version", macroVersion);
+            if (macroVersion < 3) {
+                macro.addProperty("conflictStrategy", strategies[i % 5 == 4 ? 3 : 0]);
+                macro.addProperty("sendStrategy", modes[0]);
+            } else {
+                macro.addProperty("addToHistory", random.nextBoolean());
+                macro.addProperty("showHudMessage", random.nextBoolean());
+                macro.addProperty("conflictStrategy", i % 5 == 4 ? "AVOID" : "SUBMIT");
+                macro.addProperty("sendMode", "SEND");
+            }
+            if (macroVersion >= 1) macro.addProperty("spaceTicks", 0);
+            if (macroVersion < 3) {
+                macro.add("key", legacyKey(keyName));
+                macro.add("limitKey", legacyKey(limitKeyName));
+            } else if (macroVersion == 3) {
+                macro.addProperty("keyName", keyName);
+                macro.addProperty("limitKeyName", limitKeyName);
+            } else {
+                macro.add("keybind", keybind(keyName, limitKeyName));
+                macro.add("altKeybind", keybind("key.keyboard.unknown", "key.keyboard.unknown"));
+            }
+            macro.add("messages", messages);
+            macros.add(macro);
+        }
+
+        JsonObject config = new JsonObject();
+        config.addProperty("version", version);
+        JsonArray profiles = new JsonArray();
+        profiles.add(legacyProfile(version, "Synthetic Profile", macros));
+        if (version == 1) {
+            config.add("spDefaultProfile", profiles.get(0));
+            config.add("mpDefaultProfile", legacyProfile(version, "Empty", new JsonArray()));
+            config.add("profiles", new JsonArray());
+        } else {
+            config.add("profiles", profiles);
+            config.addProperty("spDefault", 0);
+            config.addProperty("mpDefault", 0);
+        }
+        if (version >= 4) {
+            config.addProperty("defaultConflictStrategy", "SUBMIT");
+            config.addProperty("defaultSendMode", "SEND");
+        }
+        return config;
+    }
+
+    private static JsonObject legacyProfile(int version, String name, JsonArray macros) {
+        JsonObject profile = new JsonObject();
+        // Profile versions 2 and 3 both belong to config version 3
+        int profileVersion = version < 3 ? 1 : version;
+        profile.addProperty("version", profileVersion);
+        profile.addProperty("name", name);
+        profile.add(profileVersion >= 3 ? "links" : "addresses", new JsonArray());
+        if (profileVersion >= 2) {
+            profile.addProperty("addToHistory", "DEFER");
+            profile.addProperty("showHudMessage", "DEFER");
+        }
+        if (profileVersion >= 4) {
+            profile.addProperty("resumeRepeating", "OFF");
+            profile.addProperty("useRatelimit", "ON");
+        }
+        profile.add(profileVersion >= 2 ? "macros" : "commandKeys", macros);
+        return profile;
+    }
+
+    private static JsonObject legacyKey(String name) {
+        JsonObject key = new JsonObject();
+        key.addProperty("name", name);
+        return key;
+    }
+
+    private static JsonObject keybind(String keyName, String limitKeyName) {
+        JsonObject keybind = new JsonObject();
+        keybind.addProperty("version", 0);
+        keybind.addProperty("keyName", keyName);
+        keybind.addProperty("limitKeyName", limitKeyName);
+        return keybind;
+    }
+
+    /**
+     * Writes a config generated by {@link SyntheticConfig#create} to a new
+     * file in {@code dir}.
+     */
+    public static Path write(Path dir, int macroCount, int messageCount, int delayTicks)
+            throws IOException {
+        Path file = dir.resolve("synthetic-" + macroCount + ".json");
+        Files.writeString(file, new Gson().toJson(create(macroCount, messageCount, delayTicks)),
+                StandardCharsets.UTF_8);
+        return file;
+    }
+
+    /**
+     * Writes a config generated by {@link SyntheticConfig#createLegacy} to a
+     * new file in {@code dir}.
+     */
+    public static Path writeLegacy(Path dir, int version, int macroCount, int messageCount)
+            throws IOException {
+        Path file = dir.resolve("synthetic-v" + version + "-" + macroCount + ".json");
+        Files.writeString(file, new Gson().toJson(createLegacy(version, macroCount, messageCount)),
+                StandardCharsets.UTF_8);
+        return file;
+    }
+
+    /**
+     * Generates, writes and reads back a config, leaving no file behind.
+     */
+    public static Config load(int macroCount, int messageCount, int delayTicks)
+            throws IOException {
+        Path dir = Files.createTempDirectory("commandkeys-bench");
+        Path file = write(dir, macroCount, messageCount, delayTicks);
+        try {
+            Config config = Config.load(file);
+            if (config == null) throw new IllegalStateException("Unable to load synthetic config");
+            // Normalize the macros, as when first saved
+            config.cleanup();
+            return config;
+        } finally {
+            Files.delete(file);
+            Files.delete(dir);
+        }
+    }
+}
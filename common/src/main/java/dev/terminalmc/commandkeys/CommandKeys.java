@@ -22,12 +22,13 @@ import dev.terminalmc.commandkeys.config.Config;
 import dev.terminalmc.commandkeys.config.Macro;
 import dev.terminalmc.commandkeys.config.Profile;
 import dev.terminalmc.commandkeys.gui.screen.OptionsScreen;
+import dev.terminalmc.commandkeys.util.ClientContext;
+import dev.terminalmc.commandkeys.util.MinecraftClientContext;
 import dev.terminalmc.commandkeys.util.ModLogger;
 import dev.terminalmc.commandkeys.util.PlaceholderUtil;
 import net.minecraft.ChatFormatting;
 import net.minecraft.client.KeyMapping;
 import net.minecraft.client.Minecraft;
-import net.minecraft.client.gui.screens.ChatScreen;
 import net.minecraft.client.gui.screens.Screen;
 import net.minecraft.client.player.LocalPlayer;
 import net.minecraft.network.chat.Component;
@@ -53,6 +54,8 @@ public class CommandKeys {
             .withStyle(ChatFormatting.GRAY);
     
     public static String lastConnection = "";
+
+    private static ClientContext context = new MinecraftClientContext();
     
     private static final List<TickCounter> rateLimiter = new ArrayList<>();
     private static class TickCounter {
@@ -63,7 +66,10 @@ public class CommandKeys {
     }
 
     public static void init() {
-        Config.getAndSave();
+        Config.startLoading();
+        Config.startWatching();
+        Runtime.getRuntime().addShutdownHook(
+                new Thread(Config::flush, MOD_NAME + " config flush"));
     }
 
     public static void onEndTick(Minecraft mc) {
@@ -71,11 +77,22 @@ public class CommandKeys {
         while (CONFIG_KEY.consumeClick()) {
             mc.setScreen(new OptionsScreen(mc.screen, true));
         }
+        tick(mc.player != null && mc.level != null && !mc.isPaused());
+    }
+
+    /**
+     * Ticks the ratelimiter, the server signals and, if {@code tickMacros} is
+     * {@code true}, the macros of the active profile.
+     */
+    public static void tick(boolean tickMacros) {
         // Tick ratelimiter
         rateLimiter.removeIf((tc) -> tc.tick() > Config.get().getRatelimitTicks());
+        // Switch profile if signalled
+        Config.get().tickSignals();
         // Tick macros
-        if (mc.player != null && mc.level != null && !mc.isPaused()) {
-            Config.get().activeProfile().getMacros().forEach(Macro::tick);
+        if (tickMacros) {
+            // Including inherited and referenced macros
+            Config.get().activeProfile().getBoundMacros().forEach(Macro::tick);
             // Note: If multiple macros are triggered in the same tick, the
             // message order will be based on their list positions, not the 
             // order in which they were triggered order.
@@ -86,6 +103,22 @@ public class CommandKeys {
         // Cache update event (not currently used)
     }
 
+    /**
+     * @return the {@link ClientContext} used to send messages and read client
+     * state.
+     */
+    public static ClientContext context() {
+        return context;
+    }
+
+    /**
+     * Replaces the {@link ClientContext}, allowing macros to be run without
+     * a client.
+     */
+    public static void setContext(ClientContext context) {
+        CommandKeys.context = context;
+    }
+
     public static Profile profile() {
         return Config.get().activeProfile();
     }
@@ -100,15 +133,15 @@ public class CommandKeys {
     }
     
     public static boolean inSingleplayer() {
-        return Minecraft.getInstance().getSingleplayerServer() != null;
+        return context.inSingleplayer();
     }
     
     public static boolean canTrigger(InputConstants.Key key) {
         if (
-                (!inSingleplayer() || Config.get().ratelimitSp) 
+                (!inSingleplayer() || Config.get().getRatelimitSp()) 
                 && rateLimiter.size() >= Config.get().getRatelimitCount()) 
         {
-            Minecraft.getInstance().gui.getChat().addMessage(PREFIX.copy().append(
+            context.showChatMessage(PREFIX.copy().append(
                     localized("message", "sendBlocked",
                             key.getDisplayName().copy().withStyle(ChatFormatting.GRAY),
                             Component.literal(String.valueOf(Config.get().getRatelimitCount()))
@@ -116,7 +149,7 @@ public class CommandKeys {
                             Component.literal(String.valueOf(Config.get().getRatelimitTicks()))
                                     .withStyle(ChatFormatting.GRAY))
                             .withStyle(ChatFormatting.RED)));
-            if (Config.getAndSave().ratelimitStrict) rateLimiter.add(new TickCounter());
+            if (Config.get().getRatelimitStrict()) rateLimiter.add(new TickCounter());
             return false;
         }
         rateLimiter.add(new TickCounter());
@@ -132,33 +165,30 @@ public class CommandKeys {
     }
 
     public static void send(boolean type, String message, boolean addToHistory, boolean showHudMsg) {
-        Minecraft mc = Minecraft.getInstance();
-        if (mc.player == null) return;
-        if (!mc.player.connection.isAcceptingMessages()) return;
+        ClientContext ctx = context;
+        if (!ctx.canSend()) return;
         Pair<String,Integer> result = PlaceholderUtil.replace(message);
         message = result.getFirst();
         int faults = result.getSecond();
         if (faults == 0) {
             if (type) {
-                mc.setScreen(new ChatScreen(message));
+                ctx.openChat(message);
             } else {
-                // new ChatScreen("").handleChatInput(message, addToHistory)
-                // could be slightly better for compat but costs performance.
                 if (message.startsWith("/")) {
-                    mc.player.connection.sendCommand(message.substring(1));
+                    ctx.sendCommand(message.substring(1));
                 } else {
-                    mc.player.connection.sendChat(message);
+                    ctx.sendChat(message);
                 }
-                if (addToHistory) mc.gui.getChat().addRecentChat(message);
-                if (showHudMsg) mc.gui.setOverlayMessage(Component.literal(message)
-                        .withStyle(ChatFormatting.GRAY), false);
+                if (addToHistory) ctx.addToHistory(message);
+                if (showHudMsg) ctx.showOverlayMessage(Component.literal(message)
+                        .withStyle(ChatFormatting.GRAY));
             }
         } else {
             MutableComponent msg = PREFIX.copy();
             msg.append(localized("message", "placeholderFault",
                     Component.literal(message).withStyle(ChatFormatting.GRAY))
                     .withStyle(ChatFormatting.RED));
-            mc.gui.getChat().addMessage(msg);
+            ctx.showChatMessage(msg);
         }
     }
 }
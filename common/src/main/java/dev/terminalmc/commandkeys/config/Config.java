@@ -17,83 +17,210 @@
 package dev.terminalmc.commandkeys.config;
 
 import com.google.gson.*;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
 import dev.terminalmc.commandkeys.CommandKeys;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.io.*;
 import java.lang.reflect.Type;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
+import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
 
 import static dev.terminalmc.commandkeys.config.Profile.LINK_PROFILE_MAP;
 
 /**
- * Config consists of a list of {@link Profile} instances, two {@code int}s to 
- * keep track of the default profiles for singleplayer and multiplayer, default 
- * options for new {@link Profile} or {@link Macro} instances, and global
- * mod options.
+ * Config consists of a list of {@link Profile} instances, references to the
+ * default profiles for singleplayer and multiplayer, default options for new
+ * {@link Profile} or {@link Macro} instances, and global mod options.
  *
- * <p>When a profile is activated it is automatically moved to the start of the
- * list, so the list maintains most-recently-used order and the current active
- * profile can be obtained using {@code getFirst()}.</p>
+ * <p>The config is stored as an index file, containing the ID, name and links
+ * of each profile and the global options, and a file per profile in a
+ * directory beside it containing its controls and macros. Only modified
+ * profiles are written on save, and the index only if the global options or
+ * the profile list have changed. Profile files are not read until required,
+ * see {@link Profile#load}.</p>
+ *
+ * <p>A binary {@link ConfigSnapshot} of the whole config is also written on
+ * save, and read on startup instead of the JSON files if they are unchanged.
+ * </p>
+ *
+ * <p>Edits to the current instance are recorded in a {@link ConfigJournal}
+ * as they are made, and the config files are only written on save once the
+ * journal has grown large, see {@link Config#save}.</p>
+ *
+ * <p>The profile list keeps the order in which profiles were added. The active
+ * profile is held separately, along with the most-recently-used order of all
+ * profiles, so that activating a profile takes constant time and does not
+ * modify the config, see {@link Config#activateProfile}. The default profiles
+ * are stored by ID.</p>
  *
  * <p>The profile list is guaranteed to contain at least one instance at all
  * times, and at least two if the singleplayer default instance is not also the
  * multiplayer default instance.</p>
  */
 public class Config {
-    public final int version = 5;
+    static final int VERSION = 8;
+    public final int version = VERSION;
     private static final Path DIR_PATH = Path.of("config");
     private static final String FILE_NAME = CommandKeys.MOD_ID + ".json";
-    private static final String BACKUP_FILE_NAME = CommandKeys.MOD_ID + ".unreadable.json";
+    static final String UNREADABLE_SUFFIX = ".unreadable.json";
+    private static final String BACKUP_FILE_NAME = CommandKeys.MOD_ID + UNREADABLE_SUFFIX;
     private static final Gson GSON = new GsonBuilder()
-            .registerTypeAdapter(Config.class, new Config.Deserializer())
-            .registerTypeAdapter(Profile.class, new Profile.Deserializer())
-            .registerTypeAdapter(Macro.class, new Macro.Deserializer())
-            .registerTypeAdapter(Keybind.class, new Keybind.Deserializer())
-            .registerTypeAdapter(Message.class, new Message.Deserializer())
+            .registerTypeAdapter(Profile.class, new Profile.Adapter())
+            .registerTypeAdapter(Macro.class, new Macro.Adapter())
+            .registerTypeAdapter(Keybind.class, new Keybind.Adapter())
+            .registerTypeAdapter(Message.class, new Message.Adapter())
             .setPrettyPrinting()
             .create();
+    private static final Adapter INDEX_ADAPTER = new Adapter(null);
+    private static final ConfigWriter WRITER = new ConfigWriter(DIR_PATH.resolve(FILE_NAME));
+    /**
+     * Number of ticks a profile must remain matched by server signals before
+     * it is activated, see {@link Config#onServerText}.
+     */
+    static final int SIGNAL_DEBOUNCE_TICKS = 20;
+    /**
+     * Reads profiles in the background, see {@link Profile#prewarm}. A single
+     * thread, as the reads are queued on activation and each is short.
+     */
+    private static final Executor PREWARM_EXECUTOR =
+            Executors.newSingleThreadExecutor((runnable) -> {
+                Thread thread = new Thread(runnable, CommandKeys.MOD_NAME + " profile prewarm");
+                thread.setDaemon(true);
+                return thread;
+            });
 
     // Profile list
     private final List<Profile> profiles;
-    private int spDefault;
-    private int mpDefault;
+    private Profile spDefault;
+    private Profile mpDefault;
+
+    /**
+     * Profiles by ID, from least to most recently activated.
+     */
+    private final transient LinkedHashMap<String, Profile> recentProfiles = new LinkedHashMap<>();
+    private transient Profile activeProfile;
+    /**
+     * The profile last activated by the user or on joining a world or server,
+     * which is the active profile unless it has a sub-profile for the current
+     * dimension.
+     */
+    private transient Profile baseProfile;
+    /**
+     * The ID of the dimension the player is in, or {@code null} if unknown.
+     */
+    private transient @Nullable String dimension;
+
+    /**
+     * Text received from the server and matched against signals, by source.
+     */
+    private final transient Map<ServerText, String> serverTexts = new EnumMap<>(ServerText.class);
+    private transient @Nullable SignalMatcher signalMatcher;
+    /**
+     * The profile activated on joining the world or server, which is
+     * activated again when no signal matches.
+     */
+    private transient @Nullable Profile joinedProfile;
+    /**
+     * The profile matched by the current server text, or
+     * {@link Config#joinedProfile} if none.
+     */
+    private transient @Nullable Profile signalProfile;
+    /**
+     * The profile last activated by signals, or on joining.
+     */
+    private transient @Nullable Profile signalledProfile;
+    /**
+     * Number of ticks for which {@link Config#signalProfile} has differed
+     * from {@link Config#signalledProfile}.
+     */
+    private transient int signalTicks;
+    /**
+     * Macros referenced by profiles, stored as a profile of its own which is
+     * not in the profile list, see {@link MacroRef}.
+     */
+    private final transient Profile library;
 
     // Default options used by new macro instances
-    public Macro.ConflictStrategy defaultConflictStrategy;
-    public Macro.SendMode defaultSendMode;
+    private Macro.ConflictStrategy defaultConflictStrategy;
+    private Macro.SendMode defaultSendMode;
 
     // Ratelimit options
     private int ratelimitCount;
     private int ratelimitTicks;
-    public boolean ratelimitStrict;
-    public boolean ratelimitSp;
+    private boolean ratelimitStrict;
+    private boolean ratelimitSp;
+
+    /**
+     * Whether the index has been modified since last saved.
+     */
+    private transient boolean dirty;
+    /**
+     * IDs of profiles removed since last saved, whose files are to be deleted.
+     */
+    private final transient Set<String> removedProfileIds = new HashSet<>();
+    /**
+     * Whether the snapshot file is missing or out of date, and must be written
+     * on the next save even if nothing else is.
+     */
+    private transient boolean snapshotStale;
+
+    /**
+     * Sequence number of the last {@link ConfigJournal} record included in
+     * the config files.
+     */
+    private long journalSeq;
+    /**
+     * Whether the config has been modified in a way not recorded in the
+     * journal, so must be written on the next save.
+     */
+    private transient boolean compactOnSave;
 
     /**
      * Creates a profile list with a single profile, set as both singleplayer
      * and multiplayer default.
      */
     public Config() {
-        this(new ArrayList<>(List.of(new Profile("Default Profile"))), 0, 0, 
+        this(new ArrayList<>(List.of(new Profile("Default Profile"))));
+        this.dirty = true;
+        this.compactOnSave = true;
+        profiles.getFirst().markDirty();
+        library.markDirty();
+    }
+
+    private Config(List<Profile> profiles) {
+        this(profiles, profiles.getFirst(), profiles.getFirst(), Profile.library(null),
                 Macro.ConflictStrategy.SUBMIT, Macro.SendMode.SEND, 4, 20, false, false);
     }
 
     /**
      * Not validated, only for use by self-validating deserializer.
      */
-    private Config(List<Profile> profiles, int spDefault, int mpDefault, 
+    private Config(List<Profile> profiles, Profile spDefault, Profile mpDefault, Profile library,
                    Macro.ConflictStrategy defaultConflictStrategy, Macro.SendMode defaultSendMode,
                    int ratelimitCount, int ratelimitTicks, boolean ratelimitStrict, boolean ratelimitSp) {
         this.profiles = profiles;
         this.spDefault = spDefault;
         this.mpDefault = mpDefault;
+        this.library = library;
+        profiles.forEach((profile) -> profile.linkLibrary(library));
+        // The saved list order was the most-recently-used order before
+        // version 8, and is the initial order since
+        profiles.reversed().forEach((profile) -> recentProfiles.put(profile.getId(), profile));
+        this.activeProfile = profiles.getFirst();
+        this.baseProfile = activeProfile;
         activateProfile(spDefault);
         this.defaultConflictStrategy = defaultConflictStrategy;
         this.defaultSendMode = defaultSendMode;
@@ -103,24 +230,55 @@ public class Config {
         this.ratelimitSp = ratelimitSp;
     }
 
-    public int getSpDefault() {
+    public Profile getSpDefault() {
         return spDefault;
     }
 
-    public void setSpDefault(int index) {
-        if (index < 0 || index >= profiles.size()) 
-            throw new IndexOutOfBoundsException(index);
-        this.spDefault = index;
+    public void setSpDefault(Profile profile) {
+        requireProfile(profile);
+        if (profile == spDefault) return;
+        this.spDefault = profile;
+        optionsChanged();
     }
 
-    public int getMpDefault() {
+    public Profile getMpDefault() {
         return mpDefault;
     }
 
-    public void setMpDefault(int index) {
-        if (spDefault < 0 || spDefault >= profiles.size())
-            throw new IndexOutOfBoundsException(index);
-        this.mpDefault = index;
+    public void setMpDefault(Profile profile) {
+        requireProfile(profile);
+        if (profile == mpDefault) return;
+        this.mpDefault = profile;
+        optionsChanged();
+    }
+
+    /**
+     * @throws IllegalArgumentException if {@code profile} is not in the
+     * profile list.
+     */
+    private void requireProfile(Profile profile) {
+        if (recentProfiles.get(profile.getId()) != profile)
+            throw new IllegalArgumentException("Unknown profile " + profile.getId());
+    }
+
+    public Macro.ConflictStrategy getDefaultConflictStrategy() {
+        return defaultConflictStrategy;
+    }
+
+    public void setDefaultConflictStrategy(Macro.ConflictStrategy conflictStrategy) {
+        if (conflictStrategy == defaultConflictStrategy) return;
+        this.defaultConflictStrategy = conflictStrategy;
+        optionsChanged();
+    }
+
+    public Macro.SendMode getDefaultSendMode() {
+        return defaultSendMode;
+    }
+
+    public void setDefaultSendMode(Macro.SendMode sendMode) {
+        if (sendMode == defaultSendMode) return;
+        this.defaultSendMode = sendMode;
+        optionsChanged();
     }
 
     public int getRatelimitCount() {
@@ -129,7 +287,9 @@ public class Config {
 
     public void setRatelimitCount(int count) {
         if (count < 1) throw new IllegalArgumentException();
+        if (count == ratelimitCount) return;
         this.ratelimitCount = count;
+        optionsChanged();
     }
 
     public int getRatelimitTicks() {
@@ -138,7 +298,62 @@ public class Config {
 
     public void setRatelimitTicks(int ticks) {
         if (ticks < 1) throw new IllegalArgumentException();
+        if (ticks == ratelimitTicks) return;
         this.ratelimitTicks = ticks;
+        optionsChanged();
+    }
+
+    public boolean getRatelimitStrict() {
+        return ratelimitStrict;
+    }
+
+    public void setRatelimitStrict(boolean strict) {
+        if (strict == ratelimitStrict) return;
+        this.ratelimitStrict = strict;
+        optionsChanged();
+    }
+
+    public boolean getRatelimitSp() {
+        return ratelimitSp;
+    }
+
+    public void setRatelimitSp(boolean sp) {
+        if (sp == ratelimitSp) return;
+        this.ratelimitSp = sp;
+        optionsChanged();
+    }
+
+    private void optionsChanged() {
+        dirty = true;
+        journal("options", (record) -> {
+            record.addProperty("spDefault", spDefault.getId());
+            record.addProperty("mpDefault", mpDefault.getId());
+            record.addProperty("defaultConflictStrategy", defaultConflictStrategy.name());
+            record.addProperty("defaultSendMode", defaultSendMode.name());
+            record.addProperty("ratelimitCount", ratelimitCount);
+            record.addProperty("ratelimitTicks", ratelimitTicks);
+            record.addProperty("ratelimitStrict", ratelimitStrict);
+            record.addProperty("ratelimitSp", ratelimitSp);
+        });
+    }
+    
+    /**
+     * @return the macro library, whose macros profiles can reference by ID,
+     * so that editing a library macro applies to every profile referencing
+     * it. The library is not in the profile list, and cannot be activated.
+     */
+    public Profile getLibrary() {
+        return library;
+    }
+
+    /**
+     * @return the profiles followed by the library.
+     */
+    private List<Profile> profilesAndLibrary() {
+        List<Profile> all = new ArrayList<>(profiles.size() + 1);
+        all.addAll(profiles);
+        all.add(library);
+        return all;
     }
     
     // Profile activation handling
@@ -147,37 +362,89 @@ public class Config {
      * @return the most recently activated {@link Profile}.
      */
     public Profile activeProfile() {
-        return profiles.getFirst();
+        return activeProfile;
     }
 
     /**
-     * Activates the {@link Profile} at {@code index}, if it is not already
-     * active.
+     * Activates {@code profile}, or its sub-profile for the current dimension
+     * if it has one, stopping any repeating macros of the active profile
+     * which do not resume. The active profile and most-recently-used order
+     * are not saved, so activation does not modify the config.
      */
-    public void activateProfile(int index) {
-        profiles.getFirst().getMacros().forEach((macro) -> {
-            if (!macro.resumeRepeatingStatus) macro.stopRepeating();
-        });
-        if (index != 0) {
-            profiles.addFirst(profiles.remove(index));
-            if (index == spDefault) spDefault = 0;
-            else if (index > spDefault) spDefault++;
-            if (index == mpDefault) mpDefault = 0;
-            else if (index > mpDefault) mpDefault++;
+    public void activateProfile(Profile profile) {
+        activateProfile(profile, false);
+    }
+
+    /**
+     * @param prewarm whether to prepare {@code profile} and its ancestors in
+     *                the background rather than load it now, see
+     *                {@link Profile#prewarm}. Its sub-profiles are always
+     *                prepared in the background, so that switching to one
+     *                does not load it or build its maps.
+     */
+    private void activateProfile(Profile profile, boolean prewarm) {
+        baseProfile = profile;
+        Profile subProfile = dimension != null ? profile.getSubProfile(dimension) : null;
+        switchProfile(subProfile != null ? subProfile : profile);
+        if (prewarm) {
+            for (Profile ancestor = profile; ancestor != null; ancestor = ancestor.getParent()) {
+                ancestor.prewarm(PREWARM_EXECUTOR);
+            }
+        } else {
+            activeProfile.load();
+        }
+        for (Profile sub : profile.getSubProfiles()) sub.prewarm(PREWARM_EXECUTOR);
+    }
+
+    /**
+     * Activates the sub-profile of the last activated profile for the
+     * dimension {@code dimension}, if it has one, else the last activated
+     * profile itself. The profile is only swapped, having been prepared when
+     * the last activated profile was.
+     * @param dimension the ID of the dimension, such as
+     *                  {@code minecraft:the_nether}.
+     */
+    public void activateDimension(String dimension) {
+        this.dimension = dimension;
+        Profile subProfile = baseProfile.getSubProfile(dimension);
+        Profile profile = subProfile != null ? subProfile : baseProfile;
+        if (profile != activeProfile) switchProfile(profile);
+    }
+
+    /**
+     * Makes {@code profile} the active profile, stopping any repeating macros
+     * of the active profile which do not resume.
+     */
+    private void switchProfile(Profile profile) {
+        // Including inherited and referenced macros
+        for (Profile active = activeProfile; active != null; active = active.getParent()) {
+            if (!active.isLoaded()) continue;
+            active.getMacros().forEach(Config::stopRepeating);
+            for (MacroRef ref : active.getMacroRefs()) {
+                Macro macro = active.getLibraryMacro(ref);
+                if (macro != null) stopRepeating(macro);
+            }
+        }
+        if (profile != activeProfile) {
+            activeProfile = profile;
+            recentProfiles.putLast(profile.getId(), profile);
         }
     }
 
+    private static void stopRepeating(Macro macro) {
+        if (!macro.getResumeRepeatingStatus()) macro.stopRepeating();
+    }
+
     /**
      * Activates the profile linked to the level ID, if one exists, else
-     * activates the singleplayer default profile.
+     * activates the singleplayer default profile. The profile is prewarmed
+     * while the level loads.
      */
     public void activateSpProfile(String levelId) {
-        Profile profile = LINK_PROFILE_MAP.getOrDefault(levelId, null);
-        if (profile != null) {
-            activateProfile(profiles.indexOf(profile));
-        } else {
-            activateProfile(spDefault);
-        }
+        // Known once the level is joined
+        dimension = null;
+        Profile profile = LINK_PROFILE_MAP.get(levelId);
+        activateJoinedProfile(profile != null ? profile : spDefault);
     }
 
     /**
@@ -185,13 +452,82 @@ public class Config {
      * activates the multiplayer default profile.
      */
     public void activateMpProfile(String address) {
-        Profile profile = LINK_PROFILE_MAP.getOrDefault(address, null);
-        if (profile != null) {
-            activateProfile(profiles.indexOf(profile));
-        } else {
-            activateProfile(mpDefault);
+        activateMpProfile(address, LinkMatcher.ANY_PORT);
+    }
+
+    /**
+     * Activates the profile linked to the host and port, if one exists, else
+     * activates the multiplayer default profile. The profile is prewarmed
+     * while connecting.
+     * @param port the port, or -1 if unknown.
+     */
+    public void activateMpProfile(String host, int port) {
+        // Known once the server is joined
+        dimension = null;
+        Profile profile = Profile.matchLink(host, port);
+        activateJoinedProfile(profile != null ? profile : mpDefault);
+    }
+
+    private void activateJoinedProfile(Profile profile) {
+        serverTexts.clear();
+        joinedProfile = profile;
+        signalProfile = profile;
+        signalledProfile = profile;
+        signalTicks = 0;
+        activateProfile(profile, true);
+    }
+
+    // Server signals
+
+    /**
+     * Text received from the server, which may identify the server behind a
+     * proxy.
+     */
+    public enum ServerText {
+        TAB_HEADER,
+        TAB_FOOTER,
+        OBJECTIVE
+    }
+
+    /**
+     * Updates the text of {@code source}, and matches the text of all sources
+     * against the signals of all profiles, see {@link Profile#setSignals}. If
+     * the matched profile changes, it is activated once it has remained
+     * matched for {@link Config#SIGNAL_DEBOUNCE_TICKS}, see
+     * {@link Config#tickSignals}. If no profile matches, the profile
+     * activated on joining is.
+     */
+    public void onServerText(ServerText source, String text) {
+        // Servers may resend the same text every tick
+        if (text.equals(serverTexts.put(source, text)) || joinedProfile == null) return;
+        if (signalMatcher == null) signalMatcher = SignalMatcher.compile(profiles);
+        Profile profile = signalMatcher.match(String.join("\n", serverTexts.values()));
+        if (profile == null) profile = joinedProfile;
+        if (profile != signalProfile) {
+            signalProfile = profile;
+            signalTicks = 0;
         }
     }
+
+    /**
+     * Activates the profile matched by server signals, once it has remained
+     * matched for long enough. Must be called every tick.
+     */
+    public void tickSignals() {
+        if (signalProfile == signalledProfile || signalProfile == null) return;
+        if (++signalTicks < SIGNAL_DEBOUNCE_TICKS) return;
+        signalledProfile = signalProfile;
+        signalTicks = 0;
+        activateProfile(signalProfile, true);
+    }
+
+    /**
+     * Discards the compiled signals of the current instance, after the
+     * signals of a profile changed.
+     */
+    static void signalsChanged() {
+        if (instance != null) instance.signalMatcher = null;
+    }
     
     // Profile handling
 
@@ -202,56 +538,159 @@ public class Config {
         return Collections.unmodifiableList(profiles);
     }
 
+    /**
+     * @return the profiles from most to least recently activated, starting
+     * with the active profile.
+     */
+    public List<Profile> getRecentProfiles() {
+        return new ArrayList<>(recentProfiles.sequencedValues().reversed());
+    }
+
     /**
      * Creates an exact copy of the {@code profile}, minus links and with
-     * " (Copy)" appended to the name.
+     * " (Copy)" appended to the name. The copy inherits from the same parent.
      */
     public void copyProfile(Profile profile) {
         Profile copyProfile = new Profile(profile);
-        copyProfile.name = profile.getDisplayName() + " (Copy)";
+        copyProfile.setHeader(profile.getDisplayName() + " (Copy)", List.of());
+        addCopy(profile, copyProfile);
+    }
+
+    private void addCopy(Profile profile, Profile copyProfile) {
         profiles.add(copyProfile);
+        recentProfiles.putFirst(copyProfile.getId(), copyProfile);
+        dirty = true;
+        // Recorded by contents rather than source, as the source may have
+        // been written with later edits included
+        journal("copyProfile", (record) -> {
+            record.addProperty("profile", profile.getId());
+            record.addProperty("copy", copyProfile.getId());
+            record.addProperty("name", copyProfile.getName());
+            record.add("body", GSON.toJsonTree(copyProfile, Profile.class));
+        });
+        copyProfile.setParent(profile.getParent());
     }
 
     /**
      * Adds {@code profile} to the {@link Profile} list.
      */
     public void addProfile(Profile profile) {
+        profile.linkLibrary(library);
         profiles.add(profile);
+        signalMatcher = null;
+        recentProfiles.putFirst(profile.getId(), profile);
+        profile.markDirty();
+        dirty = true;
+        journalAddProfile(profile);
+    }
+
+    private void journalAddProfile(Profile profile) {
+        journal("addProfile", (record) -> {
+            record.addProperty("name", profile.getName());
+            record.add("body", GSON.toJsonTree(profile, Profile.class));
+        });
     }
 
     /**
-     * Removes the element at {@code index} in the {@link Profile} list.
+     * Removes {@code profile} from the {@link Profile} list. If it is active,
+     * the next most recently activated profile is activated. Profiles which
+     * inherited from it inherit from its parent instead.
+     * @throws IllegalArgumentException if {@code profile} is a default
+     * profile.
      */
-    public void removeProfile(int index) {
-        profiles.remove(index);
-        if (index < spDefault) spDefault--;
-        if (index < mpDefault) mpDefault--;
+    public void removeProfile(Profile profile) {
+        if (profile == spDefault || profile == mpDefault)
+            throw new IllegalArgumentException("Cannot remove a default profile");
+        if (!profiles.remove(profile)) return;
+        profile.detach();
+        signalMatcher = null;
+        String id = profile.getId();
+        recentProfiles.remove(id);
+        removedProfileIds.add(id);
+        dirty = true;
+        journal("removeProfile", (record) -> record.addProperty("profile", id));
+        if (profile == joinedProfile) joinedProfile = recentProfiles.lastEntry().getValue();
+        if (profile == signalProfile) signalProfile = joinedProfile;
+        if (profile == signalledProfile) signalledProfile = joinedProfile;
+        if (profile == activeProfile || profile == baseProfile) {
+            activateProfile(recentProfiles.lastEntry().getValue());
+        }
     }
 
     // Cleanup
 
     public void cleanup() {
         for (Profile p : profiles) p.cleanup();
+        library.cleanup();
     }
 
     // Instance management
 
     private static Config instance = null;
+    /**
+     * The config being loaded by {@link Config#startLoading}, if not yet
+     * taken as the current instance.
+     */
+    private static volatile @Nullable CompletableFuture<Config> loading = null;
 
+    /**
+     * @return the current instance, loading it if required. If it is being
+     * loaded in the background, waits for it to finish.
+     */
     public static Config get() {
         if (instance == null) {
-            instance = Config.load();
+            CompletableFuture<Config> future = loading;
+            loading = null;
+            instance = future != null ? await(future) : Config.load();
         }
         return instance;
     }
 
+    private static Config await(CompletableFuture<Config> future) {
+        try {
+            return future.join();
+        } catch (CompletionException | CancellationException e) {
+            CommandKeys.LOG.error("Unable to load config in the background", e);
+            return Config.load();
+        }
+    }
+
+    /**
+     * Starts loading, cleaning up and saving the config on a background
+     * thread, so that it overlaps with the game's own loading. The config is
+     * handed to the client thread by the first call to {@link Config#get},
+     * after which it is only accessed by that thread.
+     */
+    public static void startLoading() {
+        if (instance != null || loading != null) return;
+        loading = CompletableFuture.supplyAsync(() -> {
+            Config config = load();
+            save(config);
+            return config;
+        }, (task) -> {
+            Thread thread = new Thread(task, CommandKeys.MOD_NAME + " config loader");
+            thread.setDaemon(true);
+            thread.start();
+        });
+    }
+
     public static Config getAndSave() {
         get();
         save();
         return instance;
     }
 
+    /**
+     * Replaces the current instance without saving, allowing a config to be
+     * used without reading or writing the config file.
+     */
+    public static void set(Config config) {
+        instance = config;
+        loading = null;
+    }
+
     public static Config resetAndSave() {
+        loading = null;
         instance = new Config();
         save();
         return instance;
@@ -259,23 +698,64 @@ public class Config {
 
     // Load and save
 
+    /**
+     * Reads the config files, then replays any edits recorded in the journal
+     * since they were last written, and opens the journal to record further
+     * edits. Strings are deduplicated by a new {@link StringPool}.
+     */
     public static @NotNull Config load() {
         Path file = DIR_PATH.resolve(FILE_NAME);
+        // Reading and replaying must not record any edits
+        if (journal != null) {
+            journal.close();
+            journal = null;
+        }
+        StringPool.reset();
         Config config = null;
         if (Files.exists(file)) {
-            config = load(file, GSON);
+            config = ConfigSnapshot.read(file);
             if (config == null) {
-                backup();
-                CommandKeys.LOG.warn("Resetting config");
+                config = load(file);
+                if (config == null) {
+                    backup();
+                    CommandKeys.LOG.warn("Resetting config");
+                } else {
+                    config.snapshotStale = true;
+                }
             }
         }
-        return config != null ? config : new Config();
+        // Edits to a config which could not be read are discarded
+        boolean replay = config != null;
+        if (config == null) config = new Config();
+        Config target = config;
+        ConfigJournal opened = ConfigJournal.open(file.resolveSibling(ConfigJournal.FILE_NAME),
+                config.journalSeq, replay ? target::replay : null);
+        // The edits replayed are already recorded
+        for (Profile profile : config.profilesAndLibrary()) profile.commitEdits();
+        journal = opened;
+        if (journal.getSeq() != config.journalSeq) config.compactOnSave = true;
+        return config;
     }
 
-    private static @Nullable Config load(Path file, Gson gson) {
-        try (InputStreamReader reader = new InputStreamReader(
-                new FileInputStream(file.toFile()), StandardCharsets.UTF_8)) {
-            return gson.fromJson(reader, Config.class);
+    /**
+     * Reads a config from the index {@code file} and the profile files beside
+     * it, without affecting the current instance.
+     *
+     * <p>Invalid profiles and macros are skipped, in which case a copy of the
+     * file containing them is kept, see {@link Config#copyUnreadable}.</p>
+     *
+     * <p>An index written by an earlier version is upgraded by
+     * {@link ConfigMigrator}, and written in the current format on the next
+     * save.</p>
+     * @return the config, or {@code null} if it could not be read.
+     */
+    public static @Nullable Config load(Path file) {
+        try {
+            try {
+                return read(file, openReader(file));
+            } catch (ConfigMigrator.StaleVersionException e) {
+                return readMigrated(file);
+            }
         } catch (Exception e) {
             // Catch Exception as errors in deserialization may not fall under
             // IOException or JsonParseException, but should not crash the game.
@@ -284,6 +764,55 @@ public class Config {
         }
     }
 
+    private static Config read(Path file, Reader source) throws IOException {
+        try (ConfigReader reader = new ConfigReader(source)) {
+            Config config = new Adapter(profileDir(file)).read(reader);
+            if (reader.getSkipped() > 0) copyUnreadable(file);
+            return config;
+        }
+    }
+
+    private static Config readMigrated(Path file) throws IOException {
+        JsonObject json;
+        try (Reader reader = openReader(file)) {
+            json = JsonParser.parseReader(reader).getAsJsonObject();
+        }
+        CommandKeys.LOG.info("Upgrading config from version {} to {}",
+                ConfigMigrator.version(json), VERSION);
+        Path dir = profileDir(file);
+        ConfigMigrator.migrateConfig(json, (id) -> readProfileTree(profileFile(dir, id)));
+        Config config = read(file, new StringReader(json.toString()));
+        // Write every part in the current format. Profiles read from a header
+        // without a body were not migrated.
+        for (Profile profile : config.profiles) {
+            if (profile.isLoaded()) profile.markDirty();
+        }
+        config.dirty = true;
+        config.compactOnSave = true;
+        return config;
+    }
+
+    /**
+     * Reads the profile file at {@code file} written by an earlier version,
+     * keeping a copy of it if it cannot be read.
+     * @return the contents of the file, or {@code null} if it could not be
+     * read.
+     */
+    private static @Nullable JsonObject readProfileTree(Path file) {
+        try (Reader reader = openReader(file)) {
+            return JsonParser.parseReader(reader).getAsJsonObject();
+        } catch (IOException | RuntimeException e) {
+            CommandKeys.LOG.warn("Skipping unreadable profile file {}: {}", file, e.getMessage());
+            if (Files.exists(file)) copyUnreadable(file);
+            return null;
+        }
+    }
+
+    private static Reader openReader(Path file) throws IOException {
+        return new BufferedReader(new InputStreamReader(
+                new FileInputStream(file.toFile()), StandardCharsets.UTF_8));
+    }
+
     private static void backup() {
         try {
             CommandKeys.LOG.warn("Copying {} to {}", FILE_NAME, BACKUP_FILE_NAME);
@@ -297,85 +826,817 @@ public class Config {
         }
     }
 
+    /**
+     * Copies {@code file}, from which invalid elements were skipped, so that
+     * they are not lost when the file is next written.
+     */
+    private static void copyUnreadable(Path file) {
+        String name = file.getFileName().toString();
+        Path backupFile = file.resolveSibling(
+                name.substring(0, name.length() - ".json".length()) + UNREADABLE_SUFFIX);
+        try {
+            CommandKeys.LOG.warn("Copying {} to {}", file, backupFile);
+            Files.copy(file, backupFile, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            CommandKeys.LOG.error("Unable to copy config file", e);
+        }
+    }
+
+    /**
+     * Reads a config from the snapshot beside the index {@code file}, without
+     * affecting the current instance.
+     * @return the config, or {@code null} if there is no snapshot, or it is
+     * unreadable or out of date.
+     */
+    public static @Nullable Config loadSnapshot(Path file) {
+        return ConfigSnapshot.read(file);
+    }
+
+    /**
+     * @return the directory containing the profile files of the index
+     * {@code file}.
+     */
+    static Path profileDir(Path file) {
+        return file.resolveSibling(CommandKeys.MOD_ID);
+    }
+
+    static Path profileFile(Path dir, String id) {
+        return dir.resolve(id + ".json");
+    }
+
+    /**
+     * Cleans up the current instance and schedules any modified parts of it to
+     * be written by {@link Config#WRITER}, followed by a new
+     * {@link ConfigSnapshot}. Only the snapshots are taken on the calling
+     * thread, formatting and file I/O are done in the background.
+     *
+     * <p>The snapshots are {@link JsonElement} trees, as the config instance
+     * may be modified before the write happens.</p>
+     *
+     * <p>If the journal is open, nothing is written unless it needs
+     * compacting or the config was modified in a way not recorded in it, as
+     * the edits since the last write are already stored in the journal.</p>
+     */
     public static void save() {
+        if (instance != null) save(instance);
+    }
+
+    private static void save(Config config) {
+        config.cleanup();
+        if (journal != null) {
+            if (!config.compactOnSave && !config.snapshotStale
+                    && !journal.needsCompaction()) {
+                CommandKeys.onConfigSaved(config);
+                return;
+            }
+            // The records so far are included in the files written below
+            if (journal.getSeq() != config.journalSeq) {
+                config.journalSeq = journal.getSeq();
+                config.dirty = true;
+            }
+            for (Path segment : journal.rotate()) WRITER.submit(segment, null);
+            config.compactOnSave = false;
+        }
+        boolean changed = config.snapshotStale;
+        boolean canSnapshot = true;
+        Path dir = profileDir(DIR_PATH.resolve(FILE_NAME));
+        for (Profile profile : config.profilesAndLibrary()) {
+            if (profile.isDirty()) {
+                if (journal != null) profile.journalSeq = config.journalSeq;
+                WRITER.submit(profileFile(dir, profile.getId()),
+                        GSON.toJsonTree(profile, Profile.class));
+                profile.clearDirty();
+                changed = true;
+            }
+            if (profile.headerDirty) {
+                config.dirty = true;
+                profile.headerDirty = false;
+            }
+            // The snapshot must not replace the unreadable profile file
+            if (profile.loadFailed) canSnapshot = false;
+        }
+        for (String id : config.removedProfileIds) {
+            WRITER.submit(profileFile(dir, id), null);
+            changed = true;
+        }
+        config.removedProfileIds.clear();
+        if (config.dirty) {
+            WRITER.submit(DIR_PATH.resolve(FILE_NAME), INDEX_ADAPTER.toJsonTree(config));
+            config.dirty = false;
+            changed = true;
+        }
+        if (changed && canSnapshot) {
+            WRITER.submit(ConfigSnapshot.of(config));
+            config.snapshotStale = false;
+        }
+        CommandKeys.onConfigSaved(config);
+    }
+
+    /**
+     * Immediately writes any save not yet written, blocking until done.
+     */
+    public static void flush() {
+        if (journal != null) journal.flush();
+        WRITER.flush();
+    }
+
+    // Journal
+
+    private static @Nullable ConfigJournal journal = null;
+
+    /**
+     * Records the edits to the current instance not yet recorded in the
+     * journal, see {@link Profile#commitEdits}. Done on save, and when an
+     * options screen is closed.
+     */
+    public static void commitEdits() {
         if (instance == null) return;
-        instance.cleanup();
-        try {
-            if (!Files.isDirectory(DIR_PATH)) Files.createDirectories(DIR_PATH);
-            Path file = DIR_PATH.resolve(FILE_NAME);
-            Path tempFile = file.resolveSibling(file.getFileName() + ".tmp");
-            try (OutputStreamWriter writer = new OutputStreamWriter(
-                    new FileOutputStream(tempFile.toFile()), StandardCharsets.UTF_8)) {
-                writer.write(GSON.toJson(instance));
-            } catch (IOException e) {
-                throw new IOException(e);
+        for (Profile profile : instance.profilesAndLibrary()) profile.commitEdits();
+    }
+
+    /**
+     * Appends a record of an edit to the current instance to the journal, if
+     * open. The journal is closed while replaying.
+     * @param op the operation, see {@link Config#replay}.
+     * @param fields adds the operands of the operation to the record.
+     */
+    static void journal(String op, Consumer<JsonObject> fields) {
+        if (journal != null) journal.append(op, fields);
+    }
+
+    /**
+     * Applies a record read from the journal, using the methods which wrote
+     * it. Profiles are identified by ID and macros by index. Records already
+     * included in the file of a profile are skipped, see
+     * {@link Profile#replay}.
+     * @throws RuntimeException if the record is invalid, or refers to a
+     * profile or macro which does not exist.
+     */
+    void replay(JsonObject record) {
+        String op = required(record.get("op"), "op").getAsString();
+        switch (op) {
+            case "options" -> {
+                setSpDefault(replayDefault(required(record.get("spDefault"), "spDefault")));
+                setMpDefault(replayDefault(required(record.get("mpDefault"), "mpDefault")));
+                setDefaultConflictStrategy(Macro.ConflictStrategy.valueOf(
+                        required(record.get("defaultConflictStrategy"),
+                                "defaultConflictStrategy").getAsString()));
+                setDefaultSendMode(Macro.SendMode.valueOf(
+                        required(record.get("defaultSendMode"), "defaultSendMode")
+                                .getAsString()));
+                setRatelimitCount(required(record.get("ratelimitCount"), "ratelimitCount")
+                        .getAsInt());
+                setRatelimitTicks(required(record.get("ratelimitTicks"), "ratelimitTicks")
+                        .getAsInt());
+                setRatelimitStrict(required(record.get("ratelimitStrict"), "ratelimitStrict")
+                        .getAsBoolean());
+                setRatelimitSp(required(record.get("ratelimitSp"), "ratelimitSp")
+                        .getAsBoolean());
             }
-            Files.move(tempFile, file, StandardCopyOption.ATOMIC_MOVE,
-                    StandardCopyOption.REPLACE_EXISTING);
-            CommandKeys.onConfigSaved(instance);
-        } catch (IOException e) {
-            CommandKeys.LOG.error("Unable to save config", e);
+            // Written before version 8, when activation modified the config
+            case "activate" -> activateProfile(replayProfile(record));
+            case "addProfile" -> {
+                Profile profile = replayBody(required(record.getAsJsonObject("body"), "body"));
+                profile.setHeader(required(record.get("name"), "name").getAsString(),
+                        List.of());
+                addProfile(profile);
+            }
+            case "copyProfile" -> {
+                Profile profile = replayProfile(record);
+                // Recorded by source alone by earlier releases
+                JsonObject body = record.getAsJsonObject("body");
+                Profile copyProfile;
+                if (body != null) {
+                    copyProfile = replayBody(body);
+                    copyProfile.linkLibrary(library);
+                    copyProfile.markDirty();
+                } else {
+                    copyProfile = new Profile(
+                            required(record.get("copy"), "copy").getAsString(), profile);
+                }
+                copyProfile.setHeader(required(record.get("name"), "name").getAsString(),
+                        List.of());
+                addCopy(profile, copyProfile);
+            }
+            case "removeProfile" -> removeProfile(replayProfile(record));
+            case "header" -> {
+                Profile profile = replayProfile(record);
+                profile.replay(op, record);
+                // The parent is identified by ID, and absent if none
+                JsonElement parent = record.get("parent");
+                profile.setParent(parent != null ? replayProfile(parent.getAsString()) : null);
+            }
+            default -> replayProfile(record).replay(op, record);
         }
     }
 
-    // Deserialization
+    /**
+     * @return the profile written by {@link Profile.Adapter} to a record.
+     */
+    private static Profile replayBody(JsonObject body) {
+        ConfigMigrator.migrateProfile(body);
+        Profile profile = GSON.fromJson(body, Profile.class);
+        // Every later record for the profile applies to it
+        profile.journalSeq = 0;
+        return profile;
+    }
 
-    public static class Deserializer implements JsonDeserializer<Config> {
-        @Override
-        public Config deserialize(JsonElement json, Type typeOfT, JsonDeserializationContext ctx)
-                throws JsonParseException {
-            JsonObject obj = json.getAsJsonObject();
-            int version = obj.has("version") ? obj.get("version").getAsInt() : 0;
-
-            Macro.ConflictStrategy defaultConflictStrategy = version >= 4
-                    ? Macro.ConflictStrategy.valueOf(obj.get("defaultConflictStrategy").getAsString())
-                    : Macro.ConflictStrategy.SUBMIT;
-            Macro.SendMode defaultSendMode = version >= 4
-                    ? Macro.SendMode.valueOf(obj.get("defaultSendMode").getAsString())
-                    : Macro.SendMode.SEND;
-
-            int ratelimitCount = version >= 5
-                    ? obj.get("ratelimitCount").getAsInt()
-                    : 4;
-            int ratelimitTicks = version >= 5
-                    ? obj.get("ratelimitTicks").getAsInt()
-                    : 20;
-            boolean ratelimitStrict = version >= 5
-                    ? obj.get("ratelimitStrict").getAsBoolean()
-                    : false;
-            boolean ratelimitSp = version >= 5
-                    ? obj.get("ratelimitSp").getAsBoolean()
-                    : false;
-
-            List<Profile> profiles = new ArrayList<>();
-            for (JsonElement je : obj.getAsJsonArray("profiles")) {
-                profiles.add(ctx.deserialize(je, Profile.class));
+    private Profile replayProfile(JsonObject record) {
+        return replayProfile(required(record.get("profile"), "profile").getAsString());
+    }
+
+    private Profile replayProfile(String id) {
+        if (id.equals(Profile.LIBRARY_ID)) return library;
+        Profile profile = recentProfiles.get(id);
+        if (profile == null) throw new JsonParseException("Unknown profile " + id);
+        return profile;
+    }
+
+    /**
+     * @return the default profile identified by {@code value}, an ID, or an
+     * index into the profile list before version 8.
+     */
+    private Profile replayDefault(JsonElement value) {
+        if (value.getAsJsonPrimitive().isNumber()) return profiles.get(value.getAsInt());
+        Profile profile = recentProfiles.get(value.getAsString());
+        if (profile == null) throw new JsonParseException("Unknown profile " + value);
+        return profile;
+    }
+
+    /**
+     * Cleans up {@code config} and writes all of it to the index {@code file}
+     * and the profile files beside it, followed by a snapshot, on the calling
+     * thread.
+     */
+    public static void save(Config config, Path file) throws IOException {
+        config.cleanup();
+        Path dir = profileDir(file);
+        for (Profile profile : config.profilesAndLibrary()) {
+            write(profile, Profile.class, profileFile(dir, profile.getId()));
+        }
+        write(INDEX_ADAPTER.toJsonTree(config), file);
+        ConfigSnapshot.of(config).write(file);
+    }
+
+    /**
+     * Writes {@code json} to {@code file}, via a temporary file in the same
+     * directory.
+     */
+    static void write(JsonElement json, Path file) throws IOException {
+        write(json, JsonElement.class, file);
+    }
+
+    /**
+     * Streams {@code src} to {@code file}, via a temporary file in the same 
+     * directory which is forced to the storage device before it is moved.
+     */
+    private static void write(Object src, Type type, Path file) throws IOException {
+        Path dir = file.toAbsolutePath().getParent();
+        if (!Files.isDirectory(dir)) Files.createDirectories(dir);
+        Path tempFile = file.resolveSibling(file.getFileName() + ".tmp");
+        FileOutputStream out = new FileOutputStream(tempFile.toFile());
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(
+                out, StandardCharsets.UTF_8))) {
+            GSON.toJson(src, type, writer);
+            // Forced before the journal records it includes are deleted
+            writer.flush();
+            out.getFD().sync();
+        }
+        Files.move(tempFile, file, StandardCopyOption.ATOMIC_MOVE,
+                StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    // External changes
+
+    private static @Nullable ConfigWatcher watcher = null;
+
+    /**
+     * Starts watching the config files, so that changes made by other
+     * programs are applied without a restart.
+     */
+    public static void startWatching() {
+        if (watcher != null) return;
+        watcher = new ConfigWatcher(DIR_PATH.resolve(FILE_NAME));
+        watcher.start();
+    }
+
+    /**
+     * Applies config files modified by another program to the current
+     * instance. Parts with unsaved changes are not modified, and will replace
+     * the modified files when next saved. Must be called on the client thread.
+     *
+     * <p>If the journal is open, edits recorded in it are treated as saved,
+     * and replaced by the modified files. The journal is then compacted, so
+     * that the records of those edits are not replayed onto the modified
+     * files.</p>
+     * @param index the modified index, or {@code null} if not modified.
+     * @param profileFiles the modified profile files, by profile ID.
+     */
+    static void applyExternalChanges(@Nullable JsonObject index,
+                                     Map<String, JsonObject> profileFiles) {
+        if (instance == null) return;
+        boolean journaled = journal != null;
+        if (journaled) commitEdits();
+        boolean compact = false;
+        if (index != null) {
+            if (instance.dirty && !journaled) {
+                CommandKeys.LOG.warn("Not reloading modified config index, as it has " +
+                        "unsaved changes");
+            } else {
+                try {
+                    boolean dirty = instance.dirty;
+                    instance.applyExternalIndex(index);
+                    // Still marked as modified, so written again past the
+                    // records of the journaled edits replaced
+                    compact = dirty;
+                } catch (RuntimeException e) {
+                    CommandKeys.LOG.warn("Unable to apply modified config index", e);
+                }
             }
-            
-            int spDefault;
-            int mpDefault;
-            if (version == 1) {
-                profiles.addFirst(ctx.deserialize(obj.get("mpDefaultProfile"), Profile.class));
-                profiles.addFirst(ctx.deserialize(obj.get("spDefaultProfile"), Profile.class));
-                if (profiles.size() < 2) throw new JsonParseException(
-                        "Expected 2 or more profiles, got " + profiles.size());
-                spDefault = 0;
-                mpDefault = 1;
+        }
+        Path dir = profileDir(DIR_PATH.resolve(FILE_NAME));
+        for (Profile profile : instance.profilesAndLibrary()) {
+            JsonObject json = profileFiles.get(profile.getId());
+            if (json == null) continue;
+            boolean dirty = profile.isDirty();
+            if (dirty && !journaled) {
+                CommandKeys.LOG.warn("Not reloading modified profile {}, as it has " +
+                        "unsaved changes", profile.getDisplayName());
+                continue;
+            }
+            try {
+                profile.applyExternalChanges(json, profileFile(dir, profile.getId()));
+                // Written again past the records of the journaled edits replaced
+                if (dirty) {
+                    profile.markDirty();
+                    compact = true;
+                }
+            } catch (RuntimeException e) {
+                CommandKeys.LOG.warn("Unable to apply modified profile {}",
+                        profile.getDisplayName(), e);
+            }
+        }
+        // The snapshot no longer matches the files. Only the modified
+        // profiles are encoded again when it is next written.
+        instance.snapshotStale = true;
+        if (compact) {
+            instance.compactOnSave = true;
+            save(instance);
+        }
+    }
+
+    /**
+     * Applies a modified index. Profiles are matched by ID, new profiles are
+     * loaded when first required, and the active profile remains active if
+     * it was not removed.
+     */
+    private void applyExternalIndex(JsonObject index) {
+        // Read everything before modifying anything
+        int version = required(index.get("version"), "version").getAsInt();
+        if (version < VERSION) throw new JsonParseException("Unsupported index version " + version);
+        List<Profile> updated = new ArrayList<>();
+        Map<String, Profile> removed = new HashMap<>();
+        for (Profile profile : profiles) removed.put(profile.getId(), profile);
+        Map<Profile, String> names = new HashMap<>();
+        Map<Profile, List<String>> links = new HashMap<>();
+        Map<Profile, String> parentIds = new HashMap<>();
+        Map<Profile, List<String>> dimensions = new HashMap<>();
+        Map<Profile, List<String>> signals = new HashMap<>();
+        Path dir = profileDir(DIR_PATH.resolve(FILE_NAME));
+        for (JsonElement element : required(index.getAsJsonArray("profiles"), "profiles")) {
+            JsonObject header = element.getAsJsonObject();
+            String id = required(header.get("id"), "id").getAsString();
+            List<String> profileLinks = new ArrayList<>();
+            for (JsonElement link : required(header.getAsJsonArray("links"), "links")) {
+                profileLinks.add(link.getAsString());
+            }
+            Profile profile = removed.remove(id);
+            if (profile == null) {
+                profile = Profile.unloaded(id, "", new ArrayList<>(),
+                        new Profile.FileLoader(profileFile(dir, id)));
+                profile.linkLibrary(library);
+            }
+            updated.add(profile);
+            names.put(profile, required(header.get("name"), "name").getAsString());
+            links.put(profile, profileLinks);
+            JsonElement parentId = header.get("parent");
+            if (parentId != null) parentIds.put(profile, parentId.getAsString());
+            dimensions.put(profile, optionalStrings(header, "dimensions"));
+            signals.put(profile, optionalStrings(header, "signals"));
+        }
+        if (updated.isEmpty()) throw new JsonParseException("Config Error: profiles.isEmpty()");
+        String spDefault = required(index.get("spDefault"), "spDefault").getAsString();
+        String mpDefault = required(index.get("mpDefault"), "mpDefault").getAsString();
+        Macro.ConflictStrategy conflictStrategy = Macro.ConflictStrategy.valueOf(
+                required(index.get("defaultConflictStrategy"), "defaultConflictStrategy")
+                        .getAsString());
+        Macro.SendMode sendMode = Macro.SendMode.valueOf(
+                required(index.get("defaultSendMode"), "defaultSendMode").getAsString());
+        int ratelimitCount = required(index.get("ratelimitCount"), "ratelimitCount").getAsInt();
+        int ratelimitTicks = required(index.get("ratelimitTicks"), "ratelimitTicks").getAsInt();
+        boolean ratelimitStrict = required(index.get("ratelimitStrict"), "ratelimitStrict")
+                .getAsBoolean();
+        boolean ratelimitSp = required(index.get("ratelimitSp"), "ratelimitSp").getAsBoolean();
+
+        // Apply
+        for (Profile profile : removed.values()) {
+            if (profile.isLoaded()) profile.getMacros().forEach(Macro::clearScheduled);
+            profile.linkParent(null);
+            profile.unshare();
+        }
+        updated.forEach((profile) -> {
+            profile.setHeader(names.get(profile), links.get(profile));
+            profile.linkDimensions(dimensions.get(profile));
+            profile.linkSignals(signals.get(profile));
+        });
+        signalMatcher = null;
+        profiles.clear();
+        profiles.addAll(updated);
+        Profile.rebuildLinkMap(profiles);
+        // Keep the order of the remaining profiles, new profiles are least
+        // recently activated
+        for (String id : removed.keySet()) recentProfiles.remove(id);
+        for (Profile profile : updated.reversed()) {
+            if (!recentProfiles.containsKey(profile.getId())) {
+                recentProfiles.putFirst(profile.getId(), profile);
+            }
+        }
+        // Only profiles whose parent changed are relinked, so that the maps of
+        // the others are kept
+        Map<Profile, String> relinked = new LinkedHashMap<>();
+        for (Profile profile : updated) {
+            Profile parent = profile.getParent();
+            String parentId = parentIds.get(profile);
+            if (parent == null ? parentId != null : !parent.getId().equals(parentId)) {
+                profile.linkParent(null);
+                if (parentId != null) relinked.put(profile, parentId);
+            }
+        }
+        linkParents(relinked);
+        this.spDefault = findProfile(spDefault);
+        this.mpDefault = findProfile(mpDefault);
+        this.defaultConflictStrategy = conflictStrategy;
+        this.defaultSendMode = sendMode;
+        this.ratelimitCount = ratelimitCount >= 1 ? ratelimitCount : 4;
+        this.ratelimitTicks = ratelimitTicks >= 1 ? ratelimitTicks : 20;
+        this.ratelimitStrict = ratelimitStrict;
+        this.ratelimitSp = ratelimitSp;
+        if (joinedProfile != null && removed.containsKey(joinedProfile.getId())) {
+            joinedProfile = recentProfiles.lastEntry().getValue();
+        }
+        signalProfile = joinedProfile;
+        signalledProfile = joinedProfile;
+        if (removed.containsKey(baseProfile.getId())) {
+            baseProfile = recentProfiles.lastEntry().getValue();
+        }
+        activateProfile(baseProfile);
+    }
+
+    /**
+     * Sets the parent of each profile by ID, ignoring any parent which does
+     * not exist or inherits from the profile.
+     */
+    private void linkParents(Map<Profile, String> parentIds) {
+        parentIds.forEach((profile, id) -> {
+            Profile parent = recentProfiles.get(id);
+            if (parent != null && profile.canInheritFrom(parent)) {
+                profile.linkParent(parent);
             } else {
-                spDefault = obj.get("spDefault").getAsInt();
-                mpDefault = obj.get("mpDefault").getAsInt();
+                CommandKeys.LOG.warn("Ignoring invalid parent {} of profile {}",
+                        id, profile.getDisplayName());
+            }
+        });
+    }
+
+    /**
+     * @return the profile with {@code id}, or the first profile if there is
+     * none.
+     */
+    private Profile findProfile(String id) {
+        Profile profile = recentProfiles.get(id);
+        return profile != null ? profile : profiles.getFirst();
+    }
+
+    // Snapshot serialization
+
+    void writeSnapshot(DataOutput out) throws IOException {
+        out.writeInt(profiles.size());
+        Map<Profile, Integer> indices = new HashMap<>();
+        for (Profile profile : profiles) {
+            indices.put(profile, indices.size());
+            profile.writeSnapshot(out);
+        }
+        // Parents by index, -1 if none
+        for (Profile profile : profiles) {
+            Profile parent = profile.getParent();
+            out.writeInt(parent != null ? indices.get(parent) : -1);
+        }
+        library.writeSnapshot(out);
+        out.writeInt(profiles.indexOf(spDefault));
+        out.writeInt(profiles.indexOf(mpDefault));
+        out.writeByte(defaultConflictStrategy.ordinal());
+        out.writeByte(defaultSendMode.ordinal());
+        out.writeInt(ratelimitCount);
+        out.writeInt(ratelimitTicks);
+        out.writeBoolean(ratelimitStrict);
+        out.writeBoolean(ratelimitSp);
+        out.writeLong(journalSeq);
+    }
+
+    static Config readSnapshot(ByteBuffer in, Path profileDir) {
+        int profileCount = in.getInt();
+        List<Profile> profiles = new ArrayList<>(profileCount);
+        for (int i = 0; i < profileCount; i++) profiles.add(Profile.readSnapshot(in, profileDir));
+        Map<Profile, String> parentIds = new LinkedHashMap<>();
+        for (Profile profile : profiles) {
+            int parent = in.getInt();
+            if (parent >= 0) parentIds.put(profile, profiles.get(parent).getId());
+        }
+        Profile library = Profile.readSnapshot(in, profileDir);
+        int spDefault = in.getInt();
+        int mpDefault = in.getInt();
+        Macro.ConflictStrategy conflictStrategy = Macro.ConflictStrategy.values()[in.get()];
+        Macro.SendMode sendMode = Macro.SendMode.values()[in.get()];
+        int ratelimitCount = in.getInt();
+        int ratelimitTicks = in.getInt();
+        boolean ratelimitStrict = in.get() != 0;
+        boolean ratelimitSp = in.get() != 0;
+        long journalSeq = in.getLong();
+        Config config = new Config(profiles, profiles.get(spDefault), profiles.get(mpDefault),
+                library, conflictStrategy, sendMode,
+                ratelimitCount, ratelimitTicks, ratelimitStrict, ratelimitSp);
+        config.linkParents(parentIds);
+        config.journalSeq = journalSeq;
+        config.dirty = false;
+        return config;
+    }
+
+    // Serialization
+
+    /**
+     * @return {@code value}, if not {@code null}.
+     * @throws JsonParseException if {@code value} is {@code null}.
+     */
+    static <T> T required(@Nullable T value, String name) {
+        if (value == null) throw new JsonParseException("Missing field: " + name);
+        return value;
+    }
+
+    /**
+     * @return the strings of the array {@code name} of {@code json}, or an
+     * empty list if it is absent.
+     */
+    static List<String> optionalStrings(JsonObject json, String name) {
+        List<String> strings = new ArrayList<>();
+        JsonArray array = json.getAsJsonArray(name);
+        if (array != null) {
+            for (JsonElement element : array) strings.add(element.getAsString());
+        }
+        return strings;
+    }
+
+    /**
+     * Reads and writes the index. Profiles are written as headers, and read
+     * from the profile directory when first required.
+     */
+    public static class Adapter extends TypeAdapter<Config> {
+        private final Profile.Adapter profileAdapter = new Profile.Adapter();
+        private final @Nullable Path profileDir;
+
+        /**
+         * @param profileDir the directory to read profile files from, or
+         *                   {@code null} if the adapter is only used to write.
+         */
+        public Adapter(@Nullable Path profileDir) {
+            this.profileDir = profileDir;
+        }
+
+        @Override
+        public void write(JsonWriter out, Config config) throws IOException {
+            out.beginObject();
+            out.name("version").value(config.version);
+            out.name("profiles").beginArray();
+            for (Profile profile : config.profiles) {
+                out.beginObject();
+                out.name("id").value(profile.getId());
+                out.name("name").value(profile.getName());
+                out.name("links").beginArray();
+                for (String link : profile.getLinks()) out.value(link);
+                out.endArray();
+                if (profile.getParent() != null) {
+                    out.name("parent").value(profile.getParent().getId());
+                }
+                if (!profile.getDimensions().isEmpty()) {
+                    out.name("dimensions").beginArray();
+                    for (String dimension : profile.getDimensions()) out.value(dimension);
+                    out.endArray();
+                }
+                if (!profile.getSignals().isEmpty()) {
+                    out.name("signals").beginArray();
+                    for (String signal : profile.getSignals()) out.value(signal);
+                    out.endArray();
+                }
+                out.endObject();
             }
+            out.endArray();
+            out.name("spDefault").value(config.spDefault.getId());
+            out.name("mpDefault").value(config.mpDefault.getId());
+            out.name("defaultConflictStrategy").value(config.defaultConflictStrategy.name());
+            out.name("defaultSendMode").value(config.defaultSendMode.name());
+            out.name("ratelimitCount").value(config.ratelimitCount);
+            out.name("ratelimitTicks").value(config.ratelimitTicks);
+            out.name("ratelimitStrict").value(config.ratelimitStrict);
+            out.name("ratelimitSp").value(config.ratelimitSp);
+            out.name("journalSeq").value(config.journalSeq);
+            out.endObject();
+        }
+
+        @Override
+        public Config read(JsonReader in) throws IOException {
+            List<Profile> profiles = null;
+            Map<Profile, String> parentIds = new LinkedHashMap<>();
+            String spDefault = null;
+            String mpDefault = null;
+            String defaultConflictStrategy = null;
+            String defaultSendMode = null;
+            Integer ratelimitCount = null;
+            Integer ratelimitTicks = null;
+            Boolean ratelimitStrict = null;
+            Boolean ratelimitSp = null;
+            long journalSeq = 0;
+
+            in.beginObject();
+            ConfigMigrator.requireVersion(in, VERSION);
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "profiles" -> {
+                        profiles = new ArrayList<>();
+                        in.beginArray();
+                        while (in.hasNext()) {
+                            Profile profile = ConfigReader.readOrSkip(in,
+                                    (reader) -> readProfileEntry(reader, parentIds), "profile");
+                            if (profile != null) profiles.add(profile);
+                        }
+                        in.endArray();
+                    }
+                    case "spDefault" -> spDefault = in.nextString();
+                    case "mpDefault" -> mpDefault = in.nextString();
+                    case "defaultConflictStrategy" -> defaultConflictStrategy = in.nextString();
+                    case "defaultSendMode" -> defaultSendMode = in.nextString();
+                    case "ratelimitCount" -> ratelimitCount = in.nextInt();
+                    case "ratelimitTicks" -> ratelimitTicks = in.nextInt();
+                    case "ratelimitStrict" -> ratelimitStrict = in.nextBoolean();
+                    case "ratelimitSp" -> ratelimitSp = in.nextBoolean();
+                    case "journalSeq" -> journalSeq = in.nextLong();
+                    default -> in.skipValue();
+                }
+            }
+            in.endObject();
 
             // Validate
-            if (profiles.isEmpty()) throw new JsonParseException("Config Error: profiles.isEmpty()");
-            if (spDefault < 0 || spDefault >= profiles.size()) spDefault = 0;
-            if (mpDefault < 0 || mpDefault >= profiles.size()) mpDefault = 0;
-            if (ratelimitCount < 1) ratelimitCount = 4;
-            if (ratelimitTicks < 1) ratelimitTicks = 20;
-
-            return new Config(profiles, spDefault, mpDefault, 
-                    defaultConflictStrategy, defaultSendMode, 
-                    ratelimitCount, ratelimitTicks, ratelimitStrict, ratelimitSp);
+            if (required(profiles, "profiles").isEmpty())
+                throw new JsonParseException("Config Error: profiles.isEmpty()");
+            // A skipped default profile is replaced by the first profile
+            Profile spDefaultProfile = profiles.getFirst();
+            Profile mpDefaultProfile = profiles.getFirst();
+            for (Profile profile : profiles) {
+                if (profile.getId().equals(required(spDefault, "spDefault"))) {
+                    spDefaultProfile = profile;
+                }
+                if (profile.getId().equals(required(mpDefault, "mpDefault"))) {
+                    mpDefaultProfile = profile;
+                }
+            }
+            if (required(ratelimitCount, "ratelimitCount") < 1) ratelimitCount = 4;
+            if (required(ratelimitTicks, "ratelimitTicks") < 1) ratelimitTicks = 20;
+
+            // Created if missing, as when upgraded from an earlier version
+            Path libraryFile = profileDir != null
+                    ? profileFile(profileDir, Profile.LIBRARY_ID) : null;
+            boolean hasLibrary = libraryFile != null && Files.exists(libraryFile);
+            Profile library = Profile.library(
+                    hasLibrary ? new Profile.FileLoader(libraryFile) : null);
+
+            Config config = new Config(profiles, spDefaultProfile, mpDefaultProfile, library,
+                    Macro.ConflictStrategy.valueOf(
+                            required(defaultConflictStrategy, "defaultConflictStrategy")),
+                    Macro.SendMode.valueOf(required(defaultSendMode, "defaultSendMode")),
+                    ratelimitCount, ratelimitTicks,
+                    required(ratelimitStrict, "ratelimitStrict"),
+                    required(ratelimitSp, "ratelimitSp"));
+            config.linkParents(parentIds);
+            config.compactOnSave = false;
+            config.journalSeq = journalSeq;
+            if (!hasLibrary) {
+                library.markDirty();
+                config.compactOnSave = true;
+            }
+            return config;
+        }
+
+        /**
+         * Reads a profile header. A header with a {@code body} holds the
+         * profile itself, as produced by {@link ConfigMigrator}, otherwise the
+         * profile is read from its file when first required. The parent ID is
+         * added to {@code parentIds}, to be linked once all are read.
+         */
+        private Profile readProfileEntry(JsonReader in, Map<Profile, String> parentIds)
+                throws IOException {
+            String id = null;
+            String name = null;
+            List<String> links = null;
+            String parent = null;
+            List<String> dimensions = List.of();
+            List<String> signals = List.of();
+            Profile body = null;
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "id" -> id = in.nextString();
+                    case "name" -> name = in.nextString();
+                    case "links" -> {
+                        links = new ArrayList<>();
+                        in.beginArray();
+                        while (in.hasNext()) links.add(in.nextString());
+                        in.endArray();
+                    }
+                    case "parent" -> parent = in.nextString();
+                    case "dimensions" -> {
+                        dimensions = new ArrayList<>();
+                        in.beginArray();
+                        while (in.hasNext()) dimensions.add(in.nextString());
+                        in.endArray();
+                    }
+                    case "signals" -> {
+                        signals = new ArrayList<>();
+                        in.beginArray();
+                        while (in.hasNext()) signals.add(in.nextString());
+                        in.endArray();
+                    }
+                    case "body" -> body = profileAdapter.read(in);
+                    default -> in.skipValue();
+                }
+            }
+            in.endObject();
+            Profile profile;
+            if (body != null) {
+                body.initHeader(required(name, "name"), required(links, "links"));
+                profile = body;
+            } else {
+                Path file = profileFile(requireProfileDir(), required(id, "id"));
+                profile = Profile.unloaded(id, required(name, "name"), required(links, "links"),
+                        new Profile.FileLoader(file));
+            }
+            if (parent != null) parentIds.put(profile, parent);
+            profile.linkDimensions(dimensions);
+            profile.linkSignals(signals);
+            return profile;
+        }
+
+        private Path requireProfileDir() {
+            if (profileDir == null) throw new JsonParseException("No profile directory");
+            return profileDir;
+        }
+    }
+
+    /**
+     * Reads the profile file at {@code file}, skipping any invalid macros. If
+     * any are skipped or the file cannot be read, a copy of it is kept.
+     * @throws JsonParseException if the file does not contain the profile
+     * {@code id}.
+     */
+    static Profile readProfile(Path file, String id) throws IOException {
+        try {
+            return readProfile(file, id, openReader(file));
+        } catch (ConfigMigrator.StaleVersionException e) {
+            JsonObject json;
+            try (Reader reader = openReader(file)) {
+                json = JsonParser.parseReader(reader).getAsJsonObject();
+            } catch (JsonParseException | IllegalStateException e2) {
+                copyUnreadable(file);
+                throw e2;
+            }
+            ConfigMigrator.migrateProfile(json);
+            Profile profile = readProfile(file, id, new StringReader(json.toString()));
+            // Write in the current format
+            profile.markDirty();
+            return profile;
+        }
+    }
+
+    private static Profile readProfile(Path file, String id, Reader source) throws IOException {
+        try (ConfigReader reader = new ConfigReader(source)) {
+            Profile profile;
+            try {
+                profile = GSON.fromJson(reader, Profile.class);
+                if (profile == null || !profile.getId().equals(id)) throw new JsonParseException(
+                        "Expected profile " + id + " in " + file);
+            } catch (JsonParseException e) {
+                copyUnreadable(file);
+                throw e;
+            }
+            if (reader.getSkipped() > 0) copyUnreadable(file);
+            return profile;
         }
     }
 }
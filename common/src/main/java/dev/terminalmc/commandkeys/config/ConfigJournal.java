@@ -0,0 +1,325 @@
+/*
+ * Copyright 2025 TerminalMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.terminalmc.commandkeys.config;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import dev.terminalmc.commandkeys.CommandKeys;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+
+/**
+ * An append-only log of edits to the current config, so that edits are kept
+ * without writing the config files on every save.
+ *
+ * <p>Each edit is appended as a single line containing a JSON object, with a
+ * sequence number {@code seq} and an operation {@code op}. The record is
+ * encoded on the calling thread, then written to the journal file with a
+ * single write and forced to the storage device by
+ * {@link ConfigJournal#APPENDER}, so that no file I/O is done on the client
+ * thread. A record survives the game or the system crashing once
+ * written.</p>
+ *
+ * <p>The journal is compacted by {@link Config#save}, which writes the
+ * modified parts of the config along with the sequence number of the last
+ * record they include. The journal file is then renamed to a segment named
+ * after that sequence number, to be deleted once the config files are
+ * written, and a new journal file is started.</p>
+ *
+ * <p>As the profile files are written before the index, a crash may leave
+ * some of them ahead of it. Each profile file therefore stores the sequence
+ * number of the last record it includes, and older records for the profile
+ * are skipped.</p>
+ *
+ * <p>On load, the records of any remaining segments and the journal file with
+ * a greater sequence number than the config are replayed in order, see
+ * {@link Config#replay}. A record cut short by a crash is ignored.</p>
+ */
+class ConfigJournal {
+    static final String FILE_NAME = CommandKeys.MOD_ID + ".journal";
+    /**
+     * Size of the journal file above which it is compacted on the next save.
+     */
+    static final long COMPACT_BYTES = 64 * 1024;
+    private static final Gson GSON = new Gson();
+    /**
+     * Writes records and moves journal files in the order submitted, shared
+     * by every journal.
+     */
+    private static final ExecutorService APPENDER = Executors.newSingleThreadExecutor(
+            (runnable) -> {
+                Thread thread = new Thread(runnable, CommandKeys.MOD_NAME + " config journal");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+    private final Path file;
+    /**
+     * Segments whose records are included in the config files, or will be
+     * once written.
+     */
+    private final List<Path> segments;
+    /**
+     * The open journal file, only accessed by {@link ConfigJournal#APPENDER}.
+     */
+    private @Nullable FileChannel channel;
+    private long seq;
+    /**
+     * The size of the journal file once the records submitted so far are
+     * written.
+     */
+    private long size;
+    private volatile boolean failed;
+
+    private ConfigJournal(Path file, List<Path> segments, long seq) {
+        this.file = file;
+        this.segments = segments;
+        this.seq = seq;
+    }
+
+    /**
+     * Reads the journal {@code file} and the segments beside it, then opens
+     * it to append new records. The journal file of the previous session is
+     * moved to a segment, so that new records are never appended to a record
+     * cut short by a crash.
+     * @param after the sequence number of the last record included in the
+     *              config files.
+     * @param replay applies each record with a greater sequence number than
+     *               {@code after}, or {@code null} to discard them.
+     */
+    static ConfigJournal open(Path file, long after, @Nullable Consumer<JsonObject> replay) {
+        List<Path> segments = listSegments(file);
+        long seq = after;
+        int replayed = 0;
+        int failed = 0;
+        List<Path> sources = new ArrayList<>(segments);
+        if (Files.exists(file)) sources.add(file);
+        for (Path source : sources) {
+            try (BufferedReader reader = Files.newBufferedReader(source, StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (line.isBlank()) continue;
+                    JsonObject record;
+                    long recordSeq;
+                    try {
+                        record = JsonParser.parseString(line).getAsJsonObject();
+                        recordSeq = Config.required(record.get("seq"), "seq").getAsLong();
+                    } catch (RuntimeException e) {
+                        CommandKeys.LOG.warn("Ignoring unreadable config journal record in {}",
+                                source);
+                        continue;
+                    }
+                    seq = Math.max(seq, recordSeq);
+                    if (recordSeq <= after || replay == null) continue;
+                    try {
+                        replay.accept(record);
+                        replayed++;
+                    } catch (RuntimeException e) {
+                        CommandKeys.LOG.warn("Unable to replay config journal record {}",
+                                recordSeq, e);
+                        failed++;
+                    }
+                }
+            } catch (IOException e) {
+                CommandKeys.LOG.error("Unable to read config journal {}", source, e);
+            }
+        }
+        if (replayed > 0 || failed > 0) {
+            CommandKeys.LOG.info("Replayed {} config edits from journal, {} failed",
+                    replayed, failed);
+        }
+
+        if (Files.exists(file)) {
+            Path segment = segmentFile(file, seq);
+            try {
+                if (Files.exists(segment)) {
+                    // No readable records newer than the last segment
+                    Files.delete(file);
+                } else {
+                    Files.move(file, segment, StandardCopyOption.ATOMIC_MOVE);
+                    segments.add(segment);
+                }
+            } catch (IOException e) {
+                CommandKeys.LOG.error("Unable to move config journal", e);
+            }
+        }
+        return new ConfigJournal(file, segments, seq);
+    }
+
+    private static Path segmentFile(Path file, long seq) {
+        return file.resolveSibling(CommandKeys.MOD_ID + "." + seq + ".journal");
+    }
+
+    /**
+     * @return the segments beside the journal {@code file}, in order.
+     */
+    private static List<Path> listSegments(Path file) {
+        List<Path> segments = new ArrayList<>();
+        Path dir = file.toAbsolutePath().getParent();
+        if (!Files.isDirectory(dir)) return segments;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(
+                dir, CommandKeys.MOD_ID + ".*.journal")) {
+            for (Path segment : stream) {
+                if (segmentSeq(segment) >= 0) segments.add(segment);
+            }
+        } catch (IOException e) {
+            CommandKeys.LOG.error("Unable to list config journal segments", e);
+        }
+        segments.sort(Comparator.comparingLong(ConfigJournal::segmentSeq));
+        return segments;
+    }
+
+    /**
+     * @return the sequence number in the name of {@code segment}, or -1 if it
+     * is not a segment.
+     */
+    private static long segmentSeq(Path segment) {
+        String name = segment.getFileName().toString();
+        String seq = name.substring(CommandKeys.MOD_ID.length() + 1,
+                name.length() - ".journal".length());
+        try {
+            return Long.parseLong(seq);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Encodes a record of an edit, and submits it to be appended to the
+     * journal file.
+     * @param op the operation, see {@link Config#replay}.
+     * @param fields adds the operands of the operation to the record.
+     */
+    void append(String op, Consumer<JsonObject> fields) {
+        JsonObject record = new JsonObject();
+        record.addProperty("seq", ++seq);
+        record.addProperty("op", op);
+        fields.accept(record);
+        ByteBuffer bytes = StandardCharsets.UTF_8.encode(GSON.toJson(record) + "\n");
+        size += bytes.remaining();
+        APPENDER.execute(() -> write(bytes));
+    }
+
+    /**
+     * Appends {@code bytes} to the journal file with a single write, and
+     * forces it to the storage device. Runs on {@link ConfigJournal#APPENDER}.
+     */
+    private void write(ByteBuffer bytes) {
+        try {
+            if (channel == null) {
+                channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                        StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+            }
+            channel.write(bytes);
+            channel.force(false);
+        } catch (IOException e) {
+            CommandKeys.LOG.error("Unable to write config journal", e);
+            failed = true;
+        }
+    }
+
+    /**
+     * @return the sequence number of the last record.
+     */
+    long getSeq() {
+        return seq;
+    }
+
+    /**
+     * @return {@code true} if the journal file has grown past
+     * {@link ConfigJournal#COMPACT_BYTES}, or a record could not be written,
+     * {@code false} otherwise.
+     */
+    boolean needsCompaction() {
+        return failed || size >= COMPACT_BYTES;
+    }
+
+    /**
+     * Blocks until the records submitted so far are written.
+     */
+    void flush() {
+        CompletableFuture.runAsync(() -> {}, APPENDER).join();
+    }
+
+    /**
+     * Closes the journal file once the records submitted so far are written,
+     * blocking until done. It is reopened if another record is appended.
+     */
+    void close() {
+        CompletableFuture.runAsync(this::closeChannel, APPENDER).join();
+    }
+
+    private void closeChannel() {
+        if (channel == null) return;
+        try {
+            channel.close();
+        } catch (IOException e) {
+            CommandKeys.LOG.warn("Unable to close config journal", e);
+        }
+        channel = null;
+    }
+
+    /**
+     * Submits the journal file to be moved to a segment once the records
+     * submitted so far are written, so that new records are written to a new
+     * journal file.
+     * @return the segments whose records are all included in the config as of
+     * now, to be deleted once it is written.
+     */
+    List<Path> rotate() {
+        // Nothing was submitted since the journal file was last moved
+        if (size > 0) {
+            Path segment = segmentFile(file, seq);
+            APPENDER.execute(() -> {
+                closeChannel();
+                try {
+                    Files.move(file, segment, StandardCopyOption.ATOMIC_MOVE,
+                            StandardCopyOption.REPLACE_EXISTING);
+                } catch (IOException e) {
+                    // Records will be skipped by sequence number on load
+                    CommandKeys.LOG.error("Unable to move config journal", e);
+                }
+            });
+            // If deleted before it is moved, the segment is left until the
+            // next compaction, its records being skipped by sequence number
+            segments.add(segment);
+        }
+        size = 0;
+        failed = false;
+        List<Path> obsolete = List.copyOf(segments);
+        segments.clear();
+        return obsolete;
+    }
+}
@@ -0,0 +1,358 @@
+/*
+ * Copyright 2025 TerminalMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.terminalmc.commandkeys.config;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonPrimitive;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.mojang.blaze3d.platform.InputConstants;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Upgrades serialized config objects written by earlier versions to the
+ * current version, so that the deserializers only need to read the current
+ * version.
+ *
+ * <p>Each type has an ordered chain of steps, the step at index {@code i}
+ * upgrading an object from version {@code i} to {@code i + 1}. Objects are
+ * upgraded in place, followed by the objects nested in them. Values which
+ * cannot be upgraded are left as they are, to be rejected by the
+ * deserializer.</p>
+ *
+ * <p>A deserializer reads an object directly only if its first field is the
+ * current version, see {@link ConfigMigrator#requireVersion}. Otherwise it
+ * throws {@link StaleVersionException}, and the file is read again as a tree,
+ * upgraded, and deserialized from the result. The upgraded file is written in
+ * the current format on the next save.</p>
+ */
+final class ConfigMigrator {
+    private ConfigMigrator() {
+    }
+
+    /**
+     * Thrown by a deserializer when an object is not of the current version.
+     * Not a {@link JsonParseException}, so that the object is not skipped as
+     * invalid by {@link ConfigReader#readOrSkip}.
+     */
+    static class StaleVersionException extends RuntimeException {
+        StaleVersionException() {
+            // Thrown once per file, no stack trace required
+            super(null, null, false, false);
+        }
+    }
+
+    /**
+     * Source of the profile files of a version 6 index, which only contained
+     * their IDs.
+     */
+    @FunctionalInterface
+    interface ProfileFiles {
+        /**
+         * @return the contents of the profile file, or {@code null} if it
+         * could not be read.
+         */
+        @Nullable JsonObject read(String id);
+    }
+
+    @FunctionalInterface
+    private interface Step {
+        void apply(JsonObject json, ProfileFiles files);
+    }
+
+    /**
+     * Reads the first field of the current object.
+     * @throws StaleVersionException if the field is not {@code version} with
+     * the value {@code version}.
+     */
+    static void requireVersion(JsonReader in, int version) throws IOException {
+        if (!in.hasNext() || !in.nextName().equals("version")
+                || !in.peek().equals(JsonToken.NUMBER) || in.nextInt() != version) {
+            throw new StaleVersionException();
+        }
+    }
+
+    /**
+     * @return the version of {@code json}, or 0 if it has none.
+     */
+    static int version(JsonObject json) {
+        return json.get("version") instanceof JsonPrimitive version && version.isNumber()
+                ? version.getAsInt() : 0;
+    }
+
+    // Config
+
+    private static final List<Step> CONFIG_STEPS = List.of(
+            // 0 to 1
+            (json, files) -> {},
+            // 1 to 2: the default profiles were stored apart from the list
+            (json, files) -> {
+                JsonElement sp = json.remove("spDefaultProfile");
+                JsonElement mp = json.remove("mpDefaultProfile");
+                if (sp != null && mp != null && json.get("profiles") instanceof JsonArray profiles) {
+                    JsonArray merged = new JsonArray();
+                    merged.add(sp);
+                    merged.add(mp);
+                    merged.addAll(profiles);
+                    json.add("profiles", merged);
+                    json.addProperty("spDefault", 0);
+                    json.addProperty("mpDefault", 1);
+                }
+            },
+            // 2 to 3
+            (json, files) -> {},
+            // 3 to 4: added default options for new macros
+            (json, files) -> {
+                json.addProperty("defaultConflictStrategy", Macro.ConflictStrategy.SUBMIT.name());
+                json.addProperty("defaultSendMode", Macro.SendMode.SEND.name());
+            },
+            // 4 to 5: added ratelimit options
+            (json, files) -> {
+                json.addProperty("ratelimitCount", 4);
+                json.addProperty("ratelimitTicks", 20);
+                json.addProperty("ratelimitStrict", false);
+                json.addProperty("ratelimitSp", false);
+            },
+            // 5 to 6: profiles were stored inline, now in a header with a body
+            (json, files) -> {
+                if (!(json.get("profiles") instanceof JsonArray profiles)) return;
+                for (int i = 0; i < profiles.size(); i++) {
+                    if (profiles.get(i) instanceof JsonObject profile) {
+                        profiles.set(i, profileHeader(profile));
+                    }
+                }
+            },
+            // 6 to 7: profiles were stored as IDs of self-contained files
+            (json, files) -> {
+                if (!(json.get("profiles") instanceof JsonArray profiles)) return;
+                for (int i = profiles.size() - 1; i >= 0; i--) {
+                    if (profiles.get(i) instanceof JsonPrimitive id && id.isString()) {
+                        JsonObject profile = files.read(id.getAsString());
+                        if (profile != null) profiles.set(i, profileHeader(profile));
+                        else profiles.remove(i);
+                    }
+                }
+            },
+            // 7 to 8: default profiles were stored by index
+            (json, files) -> {
+                if (!(json.get("profiles") instanceof JsonArray profiles)) return;
+                for (String name : List.of("spDefault", "mpDefault")) {
+                    if (!(json.get(name) instanceof JsonPrimitive index && index.isNumber())) {
+                        continue;
+                    }
+                    int i = index.getAsInt();
+                    if ((i < 0 || i >= profiles.size()) && !profiles.isEmpty()) i = 0;
+                    if (i < profiles.size() && profiles.get(i) instanceof JsonObject header
+                            && header.get("id") != null) {
+                        json.add(name, header.get("id"));
+                    }
+                }
+            }
+    );
+
+    /**
+     * Upgrades a config index, and the profiles in it. A profile which was
+     * stored inline or in a self-contained file is converted to a header
+     * with the profile as its {@code body}, to be written to its own file.
+     * @param files the source of the profile files of a version 6 index.
+     */
+    static void migrateConfig(JsonObject json, ProfileFiles files) {
+        upgrade(json, CONFIG_STEPS, Config.VERSION, files);
+    }
+
+    /**
+     * @return the header of a self-contained profile, with the profile
+     * upgraded as its {@code body}.
+     */
+    private static JsonObject profileHeader(JsonObject profile) {
+        // Version 5 has an ID, name and links
+        upgrade(profile, PROFILE_STEPS, 5, null);
+        JsonObject header = new JsonObject();
+        header.add("id", profile.get("id"));
+        header.add("name", profile.get("name"));
+        header.add("links", profile.get("links"));
+        migrateProfile(profile);
+        header.add("body", profile);
+        return header;
+    }
+
+    // Profile
+
+    private static final List<Step> PROFILE_STEPS = List.of(
+            // 0 to 1
+            (json, files) -> {},
+            // 1 to 2: command keys renamed to macros, added behavior controls
+            (json, files) -> {
+                rename(json, "commandKeys", "macros");
+                json.addProperty("addToHistory", Profile.addToHistoryDefault.name());
+                json.addProperty("showHudMessage", Profile.showHudMessageDefault.name());
+            },
+            // 2 to 3: addresses renamed to links
+            (json, files) -> rename(json, "addresses", "links"),
+            // 3 to 4: added behavior controls
+            (json, files) -> {
+                json.addProperty("resumeRepeating", Profile.resumeRepeatingDefault.name());
+                json.addProperty("useRatelimit", Profile.useRatelimitDefault.name());
+            },
+            // 4 to 5: added ID
+            (json, files) -> {
+                if (!json.has("id")) json.addProperty("id", UUID.randomUUID().toString());
+            },
+            // 5 to 6: name and links moved to the index
+            (json, files) -> {
+                json.remove("name");
+                json.remove("links");
+            }
+    );
+
+    /**
+     * Upgrades a profile, and the macros in it.
+     */
+    static void migrateProfile(JsonObject json) {
+        upgrade(json, PROFILE_STEPS, Profile.VERSION, null);
+        if (json.get("macros") instanceof JsonArray macros) {
+            for (JsonElement macro : macros) {
+                if (macro instanceof JsonObject object) migrateMacro(object);
+            }
+        }
+    }
+
+    // Macro
+
+    private static final Map<String, String> LEGACY_CONFLICT_STRATEGIES = Map.of(
+            "ZERO", Macro.ConflictStrategy.SUBMIT.name(),
+            "ONE", Macro.ConflictStrategy.ASSERT.name(),
+            "TWO", Macro.ConflictStrategy.VETO.name(),
+            "THREE", Macro.ConflictStrategy.AVOID.name()
+    );
+    private static final Map<String, String> LEGACY_SEND_MODES = Map.of(
+            "ZERO", Macro.SendMode.SEND.name(),
+            "ONE", Macro.SendMode.TYPE.name(),
+            "TWO", Macro.SendMode.CYCLE.name()
+    );
+
+    private static final List<Step> MACRO_STEPS = List.of(
+            // 0 to 1: added message spacing
+            (json, files) -> json.addProperty("spaceTicks", 0),
+            // 1 to 2: messages were plain strings
+            (json, files) -> {
+                if (!(json.get("messages") instanceof JsonArray messages)) return;
+                for (int i = 0; i < messages.size(); i++) {
+                    if (messages.get(i) instanceof JsonPrimitive string && string.isString()) {
+                        JsonObject message = new JsonObject();
+                        message.addProperty("version", Message.VERSION);
+                        message.addProperty("enabled", true);
+                        message.add("string", string);
+                        message.addProperty("delayTicks", 0);
+                        messages.set(i, message);
+                    }
+                }
+            },
+            // 2 to 3: added options, strategy and mode were ordinal names
+            (json, files) -> {
+                json.addProperty("addToHistory", false);
+                json.addProperty("showHudMessage", false);
+                replaceLegacyName(json, "conflictStrategy", LEGACY_CONFLICT_STRATEGIES);
+                rename(json, "sendStrategy", "sendMode");
+                replaceLegacyName(json, "sendMode", LEGACY_SEND_MODES);
+            },
+            // 3 to 4: keys replaced by keybinds, added alternate keybind
+            (json, files) -> {
+                JsonElement keyName = legacyKeyName(json, "keyName", "key");
+                JsonElement limitKeyName = legacyKeyName(json, "limitKeyName", "limitKey");
+                json.add("keybind", keybind(keyName, limitKeyName));
+                JsonPrimitive unknown = new JsonPrimitive(InputConstants.UNKNOWN.getName());
+                json.add("altKeybind", keybind(unknown, unknown));
+            },
+            // 4 to 5: added options
+            (json, files) -> {
+                json.addProperty("resumeRepeating", false);
+                json.addProperty("useRatelimit", false);
+            }
+    );
+
+    static void migrateMacro(JsonObject json) {
+        upgrade(json, MACRO_STEPS, Macro.VERSION, null);
+    }
+
+    /**
+     * @return the key name stored as a string in {@code name}, or as a v0-2
+     * key object in {@code legacyName}, after removing both.
+     */
+    private static @Nullable JsonElement legacyKeyName(JsonObject json, String name,
+                                                       String legacyName) {
+        JsonElement keyName = json.remove(name);
+        JsonElement key = json.remove(legacyName);
+        if (keyName == null && key instanceof JsonObject object) keyName = object.get("name");
+        return keyName;
+    }
+
+    private static JsonObject keybind(@Nullable JsonElement keyName,
+                                      @Nullable JsonElement limitKeyName) {
+        JsonObject keybind = new JsonObject();
+        keybind.addProperty("version", Keybind.VERSION);
+        keybind.add("keyName", keyName);
+        keybind.add("limitKeyName", limitKeyName);
+        return keybind;
+    }
+
+    // Utility
+
+    /**
+     * Applies the steps from the version of {@code json} up to
+     * {@code version}, then sets its version as its first field. Objects of
+     * a later version are read as the current version.
+     */
+    private static void upgrade(JsonObject json, List<Step> steps, int version,
+                                @Nullable ProfileFiles files) {
+        for (int v = version(json); v < version; v++) {
+            steps.get(v).apply(json, files);
+        }
+        List<Map.Entry<String, JsonElement>> entries = new ArrayList<>(json.entrySet());
+        if (!entries.isEmpty() && entries.getFirst().getKey().equals("version")) {
+            json.addProperty("version", version);
+            return;
+        }
+        entries.forEach((entry) -> json.remove(entry.getKey()));
+        json.addProperty("version", version);
+        for (Map.Entry<String, JsonElement> entry : entries) {
+            if (!entry.getKey().equals("version")) json.add(entry.getKey(), entry.getValue());
+        }
+    }
+
+    private static void rename(JsonObject json, String from, String to) {
+        JsonElement value = json.remove(from);
+        if (value != null) json.add(to, value);
+    }
+
+    private static void replaceLegacyName(JsonObject json, String name,
+                                          Map<String, String> legacyNames) {
+        if (json.get(name) instanceof JsonPrimitive value && value.isString()) {
+            String replacement = legacyNames.get(value.getAsString());
+            if (replacement != null) json.addProperty(name, replacement);
+        }
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2025 TerminalMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.terminalmc.commandkeys.config;
+
+import com.google.gson.JsonParseException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import dev.terminalmc.commandkeys.CommandKeys;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * A {@link JsonReader} which tracks its nesting depth, so that an invalid
+ * element can be skipped without re-parsing, allowing the rest of the file to
+ * be read.
+ *
+ * <p>Only elements with invalid content can be skipped. Malformed JSON
+ * cannot be read past, and fails the whole file.</p>
+ */
+class ConfigReader extends JsonReader {
+    private int depth = 0;
+    private int skipped = 0;
+
+    ConfigReader(Reader in) {
+        super(in);
+    }
+
+    @Override
+    public void beginArray() throws IOException {
+        super.beginArray();
+        depth++;
+    }
+
+    @Override
+    public void endArray() throws IOException {
+        super.endArray();
+        depth--;
+    }
+
+    @Override
+    public void beginObject() throws IOException {
+        super.beginObject();
+        depth++;
+    }
+
+    @Override
+    public void endObject() throws IOException {
+        super.endObject();
+        depth--;
+    }
+
+    /**
+     * @return the number of elements skipped so far.
+     */
+    int getSkipped() {
+        return skipped;
+    }
+
+    @FunctionalInterface
+    interface ElementReader<T> {
+        @Nullable T read(JsonReader in) throws IOException;
+    }
+
+    /**
+     * Reads an array element using {@code reader}. If {@code in} is a
+     * {@link ConfigReader} and the element is invalid, the error is logged,
+     * the rest of the element is skipped and {@code null} is returned.
+     * Otherwise, the error is thrown.
+     * @param type the type of element, for logging.
+     */
+    static <T> @Nullable T readOrSkip(JsonReader in, ElementReader<T> reader, String type)
+            throws IOException {
+        if (!(in instanceof ConfigReader configReader)) return reader.read(in);
+        int depth = configReader.depth;
+        String path = configReader.getPath();
+        try {
+            return reader.read(configReader);
+        } catch (JsonParseException | IllegalStateException | IllegalArgumentException e) {
+            // NumberFormatException is an IllegalArgumentException
+            CommandKeys.LOG.warn("Skipping invalid {} at {}: {}", type, path, e.getMessage());
+            configReader.skipped++;
+            configReader.skipRest(depth, path);
+            return null;
+        }
+    }
+
+    /**
+     * Skips the remainder of the array element which was at {@code path}
+     * when the reader was at {@code depth}.
+     */
+    private void skipRest(int depth, String path) throws IOException {
+        while (this.depth > depth) {
+            while (hasNext()) skipValue();
+            if (peek().equals(JsonToken.END_ARRAY)) endArray();
+            else endObject();
+        }
+        // The element itself was not consumed
+        if (getPath().equals(path)) skipValue();
+    }
+}
@@ -0,0 +1,196 @@
+/*
+ * Copyright 2025 TerminalMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.terminalmc.commandkeys.config;
+
+import dev.terminalmc.commandkeys.CommandKeys;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * A compact binary copy of the config, stored beside the index file to speed
+ * up loading. The JSON files remain the source of truth, and the snapshot is
+ * only used if the JSON files have not been modified since it was written.
+ *
+ * <p>File layout, big-endian:</p>
+ * <ol>
+ *     <li>{@code int} magic number {@link ConfigSnapshot#MAGIC}</li>
+ *     <li>{@code int} format version {@link ConfigSnapshot#FORMAT_VERSION}</li>
+ *     <li>{@code int} profile count, then each profile ID as a string,
+ *     followed by that of the macro library</li>
+ *     <li>{@code long} stamp of the index and profile files, see
+ *     {@link ConfigSnapshot#stamp}</li>
+ *     <li>{@code int} payload length</li>
+ *     <li>{@code int} CRC-32 of the payload</li>
+ *     <li>payload, as written by {@link Config#writeSnapshot}</li>
+ * </ol>
+ *
+ * <p>Strings are written as an {@code int} byte count followed by UTF-8
+ * bytes. The controls and macros of each profile are length-prefixed, so
+ * that they can be copied on read and only decoded when the profile is
+ * loaded. A profile not loaded when the snapshot was taken is written with
+ * a length of {@code -1} and no body, and is read from its profile file
+ * instead. Enums are written as {@code byte} ordinals, so
+ * {@link ConfigSnapshot#FORMAT_VERSION} must be incremented if any serialized
+ * enum or field changes.</p>
+ *
+ * @param profileIds the IDs of the profiles in the payload, in order, followed
+ *                   by that of the macro library.
+ * @param payload the serialized config.
+ */
+record ConfigSnapshot(List<String> profileIds, byte[] payload) {
+    static final int MAGIC = 0x434B5342; // "CKSB"
+    static final int FORMAT_VERSION = 8;
+    static final String FILE_NAME = CommandKeys.MOD_ID + ".bin";
+
+    /**
+     * @return the snapshot file of the index {@code file}.
+     */
+    static Path file(Path indexFile) {
+        return indexFile.resolveSibling(FILE_NAME);
+    }
+
+    /**
+     * Serializes {@code config}. The snapshot does not reference
+     * {@code config}, so may be written after {@code config} is modified.
+     */
+    static ConfigSnapshot of(Config config) {
+        List<String> profileIds = new ArrayList<>();
+        for (Profile profile : config.getProfiles()) profileIds.add(profile.getId());
+        profileIds.add(Profile.LIBRARY_ID);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            config.writeSnapshot(out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // Not thrown by ByteArrayOutputStream
+        }
+        return new ConfigSnapshot(profileIds, bytes.toByteArray());
+    }
+
+    /**
+     * Writes the snapshot beside the index {@code file}, stamped with the
+     * current state of the index and profile files. Must be called after the
+     * JSON files are written.
+     */
+    void write(Path indexFile) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        Path file = file(indexFile);
+        Path tempFile = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(tempFile.toFile())))) {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeInt(profileIds.size());
+            for (String id : profileIds) writeString(out, id);
+            out.writeLong(stamp(indexFile, profileIds));
+            out.writeInt(payload.length);
+            out.writeInt((int) crc.getValue());
+            out.write(payload);
+        }
+        Files.move(tempFile, file, StandardCopyOption.ATOMIC_MOVE,
+                StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Reads the snapshot beside the index {@code file} via a memory-mapped
+     * buffer.
+     * @return the config, or {@code null} if there is no snapshot, or it is
+     * unreadable or out of date.
+     */
+    static @Nullable Config read(Path indexFile) {
+        Path file = file(indexFile);
+        if (!Files.exists(file)) return null;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (in.getInt() != MAGIC || in.getInt() != FORMAT_VERSION) {
+                CommandKeys.LOG.info("Ignoring config snapshot of unknown format");
+                return null;
+            }
+            int profileCount = in.getInt();
+            List<String> profileIds = new ArrayList<>(profileCount);
+            for (int i = 0; i < profileCount; i++) profileIds.add(readString(in));
+            if (in.getLong() != stamp(indexFile, profileIds)) {
+                CommandKeys.LOG.info("Config files modified since last snapshot");
+                return null;
+            }
+            int length = in.getInt();
+            int expectedCrc = in.getInt();
+            ByteBuffer payload = in.slice(in.position(), length);
+            CRC32 crc = new CRC32();
+            crc.update(payload.duplicate());
+            if ((int) crc.getValue() != expectedCrc) {
+                CommandKeys.LOG.warn("Ignoring corrupt config snapshot");
+                return null;
+            }
+            return Config.readSnapshot(payload, Config.profileDir(indexFile));
+        } catch (Exception e) {
+            // Any failure means the JSON files must be read instead
+            CommandKeys.LOG.warn("Unable to read config snapshot", e);
+            return null;
+        }
+    }
+
+    /**
+     * Combines the modification time and size of the index file and each
+     * profile file, so that editing any of them invalidates the snapshot.
+     * @throws IOException if any of the files cannot be read.
+     */
+    static long stamp(Path indexFile, List<String> profileIds) throws IOException {
+        CRC32 crc = new CRC32();
+        ByteBuffer buf = ByteBuffer.allocate(Long.BYTES * 2);
+        Path profileDir = Config.profileDir(indexFile);
+        List<Path> files = new ArrayList<>(profileIds.size() + 1);
+        files.add(indexFile);
+        for (String id : profileIds) files.add(Config.profileFile(profileDir, id));
+        for (Path file : files) {
+            BasicFileAttributes attributes = Files.readAttributes(
+                    file, BasicFileAttributes.class);
+            buf.clear();
+            buf.putLong(attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS));
+            buf.putLong(attributes.size());
+            crc.update(buf.array());
+        }
+        // Include the count in the upper bits, as CRC-32 only fills 32
+        return ((long) files.size() << 32) | crc.getValue();
+    }
+
+    static void writeString(DataOutput out, String str) throws IOException {
+        byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    static String readString(ByteBuffer in) {
+        byte[] bytes = new byte[in.getInt()];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
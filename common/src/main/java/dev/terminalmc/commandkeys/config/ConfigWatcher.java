@@ -0,0 +1,182 @@
+/*
+ * Copyright 2025 TerminalMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.terminalmc.commandkeys.config;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import dev.terminalmc.commandkeys.CommandKeys;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+
+/**
+ * Watches the config files for changes made by other programs, and passes
+ * them to {@link Config#applyExternalChanges} on the client thread.
+ *
+ * <p>Events are collected until none have been received for
+ * {@link ConfigWatcher#SETTLE_MS}, so that files written together are applied
+ * together. Files are parsed on the watcher thread, and files whose
+ * modification time and size match those last written by
+ * {@link ConfigWriter} are ignored.</p>
+ */
+class ConfigWatcher {
+    static final long SETTLE_MS = 250;
+
+    /**
+     * The state of each config file when last written or read by this mod.
+     */
+    private static final Map<Path, FileStamp> KNOWN = new ConcurrentHashMap<>();
+
+    record FileStamp(long modified, long size) {
+        /**
+         * @return the current stamp of {@code file}, or {@code null} if it
+         * does not exist.
+         */
+        static @Nullable FileStamp of(Path file) {
+            try {
+                BasicFileAttributes attributes = Files.readAttributes(
+                        file, BasicFileAttributes.class);
+                return new FileStamp(attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS),
+                        attributes.size());
+            } catch (IOException e) {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Records the current state of {@code file}, so that the change just made
+     * to it by this mod is not reloaded.
+     */
+    static void record(Path file) {
+        Path key = file.toAbsolutePath().normalize();
+        FileStamp stamp = FileStamp.of(key);
+        if (stamp == null) KNOWN.remove(key);
+        else KNOWN.put(key, stamp);
+    }
+
+    private final Path indexFile;
+    private final Path profileDir;
+
+    ConfigWatcher(Path indexFile) {
+        this.indexFile = indexFile.toAbsolutePath().normalize();
+        this.profileDir = Config.profileDir(this.indexFile);
+    }
+
+    void start() {
+        Thread thread = new Thread(this::run, CommandKeys.MOD_NAME + " config watcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void run() {
+        try (WatchService service = FileSystems.getDefault().newWatchService()) {
+            Files.createDirectories(profileDir);
+            indexFile.getParent().register(service, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE);
+            profileDir.register(service, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE);
+
+            Set<Path> changed = new LinkedHashSet<>();
+            while (true) {
+                WatchKey key = changed.isEmpty()
+                        ? service.take()
+                        : service.poll(SETTLE_MS, TimeUnit.MILLISECONDS);
+                if (key == null) {
+                    // Settled
+                    process(changed);
+                    changed.clear();
+                    continue;
+                }
+                Path dir = (Path) key.watchable();
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == OVERFLOW) {
+                        // Events were lost, so check everything
+                        changed.add(indexFile);
+                        try (DirectoryStream<Path> files =
+                                     Files.newDirectoryStream(profileDir, "*.json")) {
+                            for (Path file : files) changed.add(file.toAbsolutePath().normalize());
+                        }
+                        continue;
+                    }
+                    Path file = dir.resolve((Path) event.context()).toAbsolutePath().normalize();
+                    if (isConfigFile(file)) changed.add(file);
+                }
+                if (!key.reset()) {
+                    CommandKeys.LOG.warn("Config directory {} is no longer accessible, " +
+                            "stopped watching for changes", dir);
+                    return;
+                }
+            }
+        } catch (InterruptedException ignored) {
+            // Stopped
+        } catch (IOException | RuntimeException e) {
+            CommandKeys.LOG.error("Unable to watch config files for changes", e);
+        }
+    }
+
+    private boolean isConfigFile(Path file) {
+        if (file.equals(indexFile)) return true;
+        String name = file.getFileName().toString();
+        return profileDir.equals(file.getParent()) && name.endsWith(".json")
+                && !name.endsWith(Config.UNREADABLE_SUFFIX);
+    }
+
+    /**
+     * Parses the files in {@code changed} which were not written by this mod,
+     * and passes them to the client thread to be applied.
+     */
+    private void process(Set<Path> changed) {
+        JsonObject index = null;
+        Map<String, JsonObject> profileFiles = new HashMap<>();
+        for (Path file : changed) {
+            FileStamp stamp = FileStamp.of(file);
+            // Deleted profile files are removed via the index
+            if (stamp == null || stamp.equals(KNOWN.get(file))) continue;
+            JsonObject json;
+            try {
+                json = JsonParser.parseString(Files.readString(file, StandardCharsets.UTF_8))
+                        .getAsJsonObject();
+            } catch (IOException | JsonParseException | IllegalStateException e) {
+                // Possibly still being written, in which case another event
+                // will follow
+                CommandKeys.LOG.warn("Unable to read modified config file {}", file, e);
+                continue;
+            }
+            KNOWN.put(file, stamp);
+            if (file.equals(indexFile)) {
+                index = json;
+            } else {
+                String name = file.getFileName().toString();
+                profileFiles.put(name.substring(0, name.length() - ".json".length()), json);
+            }
+        }
+        if (index == null && profileFiles.isEmpty()) return;
+
+        CommandKeys.LOG.info("Reloading config files modified by another program");
+        JsonObject modifiedIndex = index;
+        CommandKeys.context().execute(
+                () -> Config.applyExternalChanges(modifiedIndex, profileFiles));
+    }
+}
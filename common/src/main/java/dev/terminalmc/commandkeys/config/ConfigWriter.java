@@ -0,0 +1,175 @@
+/*
+ * Copyright 2025 TerminalMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.terminalmc.commandkeys.config;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonIOException;
+import dev.terminalmc.commandkeys.CommandKeys;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes serialized config snapshots to disk on a background thread.
+ *
+ * <p>The first snapshot submitted starts a debounce window of
+ * {@link ConfigWriter#DEBOUNCE_MS}. Snapshots submitted within the window
+ * replace any earlier snapshot of the same file, and only the latest is
+ * written when the window ends.</p>
+ *
+ * <p>Profile files are written before the index file, and removed profile
+ * files are deleted after it, so the index never refers to a profile file
+ * which has not been written. If a write fails, the rest of the batch is kept
+ * for the next save.</p>
+ *
+ * <p>The {@link ConfigSnapshot} is written last, and only if the whole batch
+ * succeeded, so that its stamp covers the files it was taken with.</p>
+ */
+class ConfigWriter {
+    static final long DEBOUNCE_MS = 500;
+
+    private final Path indexFile;
+    private final ScheduledExecutorService executor;
+    private final Object lock = new Object();
+    /**
+     * Snapshots not yet written, a {@code null} snapshot meaning the file is
+     * to be deleted.
+     */
+    private final Map<Path, JsonElement> pending = new LinkedHashMap<>();
+    private @Nullable ConfigSnapshot pendingSnapshot;
+    private @Nullable ScheduledFuture<?> scheduled;
+
+    ConfigWriter(Path indexFile) {
+        this.indexFile = indexFile;
+        this.executor = Executors.newSingleThreadScheduledExecutor((runnable) -> {
+            Thread thread = new Thread(runnable, CommandKeys.MOD_NAME + " config writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Schedules {@code snapshot} to be written to {@code file}, replacing any
+     * snapshot of {@code file} not yet written.
+     * @param snapshot a serialized index or profile, which must not be
+     *                 modified after submission, or {@code null} to delete
+     *                 {@code file}.
+     */
+    void submit(Path file, @Nullable JsonElement snapshot) {
+        synchronized (lock) {
+            pending.put(file, snapshot);
+            schedule();
+        }
+    }
+
+    /**
+     * Schedules {@code snapshot} to be written after the pending JSON files,
+     * replacing any snapshot not yet written.
+     */
+    void submit(ConfigSnapshot snapshot) {
+        synchronized (lock) {
+            pendingSnapshot = snapshot;
+            schedule();
+        }
+    }
+
+    private void schedule() {
+        if (scheduled == null) {
+            scheduled = executor.schedule(this::write, DEBOUNCE_MS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Immediately writes any snapshot not yet written, on the calling thread.
+     */
+    void flush() {
+        synchronized (lock) {
+            if (scheduled != null) {
+                scheduled.cancel(false);
+                scheduled = null;
+            }
+        }
+        write();
+    }
+
+    /**
+     * Writes the pending snapshots, if any. Synchronized so that a flush
+     * cannot interleave with a scheduled write.
+     */
+    private synchronized void write() {
+        Map<Path, JsonElement> batch;
+        ConfigSnapshot snapshot;
+        synchronized (lock) {
+            batch = new LinkedHashMap<>(pending);
+            pending.clear();
+            snapshot = pendingSnapshot;
+            pendingSnapshot = null;
+            scheduled = null;
+        }
+
+        // Profiles, then the index, then deletions
+        List<Path> order = new ArrayList<>();
+        List<Path> deletions = new ArrayList<>();
+        for (Map.Entry<Path, JsonElement> entry : batch.entrySet()) {
+            if (entry.getValue() == null) deletions.add(entry.getKey());
+            else if (!entry.getKey().equals(indexFile)) order.add(entry.getKey());
+        }
+        if (batch.get(indexFile) != null) order.add(indexFile);
+        order.addAll(deletions);
+
+        for (int i = 0; i < order.size(); i++) {
+            Path file = order.get(i);
+            JsonElement json = batch.get(file);
+            try {
+                if (json != null) Config.write(json, file);
+                else Files.deleteIfExists(file);
+                ConfigWatcher.record(file);
+            } catch (IOException | JsonIOException e) {
+                CommandKeys.LOG.error("Unable to save config file {}", file, e);
+                // Keep the failed and remaining snapshots for the next save,
+                // unless they have since been replaced
+                synchronized (lock) {
+                    for (Path remaining : order.subList(i, order.size())) {
+                        if (!pending.containsKey(remaining)) {
+                            pending.put(remaining, batch.get(remaining));
+                        }
+                    }
+                    if (pendingSnapshot == null) pendingSnapshot = snapshot;
+                }
+                return;
+            }
+        }
+
+        if (snapshot == null) return;
+        try {
+            snapshot.write(indexFile);
+        } catch (IOException e) {
+            // Not fatal, the stale snapshot will fail its stamp check
+            CommandKeys.LOG.warn("Unable to save config snapshot", e);
+        }
+    }
+}
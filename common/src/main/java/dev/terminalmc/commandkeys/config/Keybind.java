@@ -16,23 +16,34 @@
 
 package dev.terminalmc.commandkeys.config;
 
-import com.google.gson.*;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
 import com.mojang.blaze3d.platform.InputConstants;
-import net.minecraft.client.Minecraft;
+import dev.terminalmc.commandkeys.CommandKeys;
+import org.jetbrains.annotations.Nullable;
 
-import java.lang.reflect.Type;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.Objects;
 
 /**
  * Consists of two {@link InputConstants.Key} instances, allowing both single
  * and dual-key activation.
+ *
+ * <p>A deserialized keybind stores only the key names, and resolves the keys
+ * when first used, so that it can be read off the client thread.
+ * {@link InputConstants#getKey(String)} may register a new key, so must only
+ * be called on the client thread.</p>
  */
 public class Keybind {
-    public final int version = 0;
+    static final int VERSION = 0;
+    public final int version = VERSION;
 
-    private transient InputConstants.Key key;
+    private transient @Nullable InputConstants.Key key;
     private String keyName;
-    private transient InputConstants.Key limitKey;
+    private transient @Nullable InputConstants.Key limitKey;
     private String limitKeyName;
 
     public Keybind() {
@@ -49,7 +60,27 @@ public class Keybind {
         this.limitKeyName = limitKey.getName();
     }
 
+    /**
+     * Copy constructor.
+     */
+    Keybind(Keybind keybind) {
+        this.key = keybind.key;
+        this.keyName = keybind.keyName;
+        this.limitKey = keybind.limitKey;
+        this.limitKeyName = keybind.limitKeyName;
+    }
+
+    /**
+     * Creates an instance whose keys are resolved from their names when first
+     * used.
+     */
+    Keybind(String keyName, String limitKeyName) {
+        this.keyName = StringPool.intern(keyName);
+        this.limitKeyName = StringPool.intern(limitKeyName);
+    }
+
     public InputConstants.Key getKey() {
+        if (key == null) key = resolve(keyName);
         return key;
     }
     
@@ -59,6 +90,7 @@ public class Keybind {
     }
 
     public InputConstants.Key getLimitKey() {
+        if (limitKey == null) limitKey = resolve(limitKeyName);
         return limitKey;
     }
 
@@ -67,45 +99,86 @@ public class Keybind {
         this.limitKeyName = limitKey.getName();
     }
 
+    /**
+     * @return the key named {@code name}, or {@link InputConstants#UNKNOWN} if
+     * there is no such key.
+     */
+    private static InputConstants.Key resolve(String name) {
+        try {
+            return InputConstants.getKey(name);
+        } catch (IllegalArgumentException e) {
+            CommandKeys.LOG.warn("Unknown key {}, unbinding", name);
+            return InputConstants.UNKNOWN;
+        }
+    }
+
     public boolean isKeyDown() {
-        return !key.equals(InputConstants.UNKNOWN) && InputConstants.isKeyDown(
-                Minecraft.getInstance().getWindow().getWindow(), key.getValue());
+        InputConstants.Key key = getKey();
+        return !key.equals(InputConstants.UNKNOWN) && CommandKeys.context().isKeyDown(key);
     }
 
     public boolean isLimitKeyDown() {
-        return !limitKey.equals(InputConstants.UNKNOWN) && InputConstants.isKeyDown(
-                Minecraft.getInstance().getWindow().getWindow(), limitKey.getValue());
+        InputConstants.Key limitKey = getLimitKey();
+        return !limitKey.equals(InputConstants.UNKNOWN) && CommandKeys.context().isKeyDown(limitKey);
     }
     
     boolean isDown() {
-        return isKeyDown() && (limitKey.equals(InputConstants.UNKNOWN) || isLimitKeyDown());
+        return isKeyDown() && (getLimitKey().equals(InputConstants.UNKNOWN) || isLimitKeyDown());
     }
 
     @Override
     public boolean equals(Object other) {
         if (this == other) return true;
         if (!(other instanceof Keybind keybind)) return false;
-        return key.equals(keybind.key) && limitKey.equals(keybind.limitKey);
+        return getKey().equals(keybind.getKey()) && getLimitKey().equals(keybind.getLimitKey());
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(key, limitKey);
+        return Objects.hash(getKey(), getLimitKey());
     }
 
-    // Deserialization
+    // Snapshot serialization
+
+    void writeSnapshot(DataOutput out) throws IOException {
+        ConfigSnapshot.writeString(out, keyName);
+        ConfigSnapshot.writeString(out, limitKeyName);
+    }
+
+    static Keybind readSnapshot(ByteBuffer in) {
+        String keyName = ConfigSnapshot.readString(in);
+        return new Keybind(keyName, ConfigSnapshot.readString(in));
+    }
+
+    // Serialization
+
+    public static class Adapter extends TypeAdapter<Keybind> {
+        @Override
+        public void write(JsonWriter out, Keybind keybind) throws IOException {
+            out.beginObject();
+            out.name("version").value(keybind.version);
+            out.name("keyName").value(keybind.keyName);
+            out.name("limitKeyName").value(keybind.limitKeyName);
+            out.endObject();
+        }
 
-    public static class Deserializer implements JsonDeserializer<Keybind> {
         @Override
-        public Keybind deserialize(JsonElement json, Type typeOfT, JsonDeserializationContext ctx) 
-                throws JsonParseException {
-            JsonObject obj = json.getAsJsonObject();
-            int version = obj.get("version").getAsInt();
-            
-            InputConstants.Key key = InputConstants.getKey(obj.get("keyName").getAsString());
-            InputConstants.Key limitKey = InputConstants.getKey(obj.get("limitKeyName").getAsString());
-
-            return new Keybind(key, limitKey);
+        public Keybind read(JsonReader in) throws IOException {
+            String keyName = null;
+            String limitKeyName = null;
+
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "keyName" -> keyName = in.nextString();
+                    case "limitKeyName" -> limitKeyName = in.nextString();
+                    default -> in.skipValue();
+                }
+            }
+            in.endObject();
+
+            return new Keybind(Config.required(keyName, "keyName"),
+                    Config.required(limitKeyName, "limitKeyName"));
         }
     }
 }
@@ -0,0 +1,141 @@
+/*
+ * Copyright 2025 TerminalMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.terminalmc.commandkeys.config;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Matches server addresses against the wildcard links of all profiles,
+ * compiled from {@link Profile#LINK_PROFILE_MAP}.
+ *
+ * <p>A link is one of:</p>
+ * <ul>
+ *     <li>a host, {@code mc.example.net}, matching any port.</li>
+ *     <li>a host and port, {@code mc.example.net:25566}.</li>
+ *     <li>a wildcard, {@code *.example.net}, matching any subdomain of
+ *     {@code example.net} but not {@code example.net} itself, optionally
+ *     with a port, {@code *.example.net:25566}.</li>
+ * </ul>
+ *
+ * <p>Exact links are matched by a lookup in {@link Profile#LINK_PROFILE_MAP},
+ * and take precedence over wildcards. Wildcards are stored in a trie of
+ * reversed host labels, so that matching takes one step per label of the
+ * address regardless of the number of links. Of several matching wildcards
+ * the longest wins, and of two equally long, the one with the port.</p>
+ */
+final class LinkMatcher {
+    /**
+     * Port of an address whose port is not known.
+     */
+    static final int ANY_PORT = -1;
+    private static final String WILDCARD = "*.";
+
+    private final Node root = new Node();
+
+    private static class Node {
+        private final Map<String, Node> children = new HashMap<>();
+        private @Nullable Profile profile;
+        private @Nullable Map<Integer, Profile> portProfiles;
+    }
+
+    private LinkMatcher() {
+    }
+
+    /**
+     * Compiles the wildcard links of {@code links}.
+     */
+    static LinkMatcher compile(Map<String, Profile> links) {
+        LinkMatcher matcher = new LinkMatcher();
+        links.forEach((link, profile) -> {
+            if (!link.startsWith(WILDCARD)) return;
+            int port = port(link);
+            String host = link.substring(WILDCARD.length(), port == ANY_PORT
+                    ? link.length() : link.lastIndexOf(':'));
+            if (host.isEmpty()) return;
+            Node node = matcher.root;
+            for (String label : reversedLabels(host)) {
+                node = node.children.computeIfAbsent(label, (key) -> new Node());
+            }
+            if (port == ANY_PORT) {
+                node.profile = profile;
+            } else {
+                if (node.portProfiles == null) node.portProfiles = new HashMap<>();
+                node.portProfiles.put(port, profile);
+            }
+        });
+        return matcher;
+    }
+
+    /**
+     * @param links the exact links, {@link Profile#LINK_PROFILE_MAP}.
+     * @param port the port, or {@link LinkMatcher#ANY_PORT} if unknown.
+     * @return the profile linked to the address, or {@code null} if none
+     * is.
+     */
+    @Nullable Profile match(Map<String, Profile> links, String host, int port) {
+        Profile profile = port == ANY_PORT ? null : links.get(host + ":" + port);
+        if (profile == null) profile = links.get(host);
+        if (profile != null) return profile;
+
+        Node node = root;
+        int end = host.length();
+        while (end > 0) {
+            int start = host.lastIndexOf('.', end - 1) + 1;
+            node = node.children.get(host.substring(start, end).toLowerCase(Locale.ROOT));
+            if (node == null || start == 0) break;
+            // A wildcard matches only if at least one label remains
+            Profile match = node.portProfiles == null ? null : node.portProfiles.get(port);
+            if (match == null) match = node.profile;
+            if (match != null) profile = match;
+            end = start - 1;
+        }
+        return profile;
+    }
+
+    /**
+     * @return the port of {@code link}, or {@link LinkMatcher#ANY_PORT} if it
+     * has none.
+     */
+    private static int port(String link) {
+        int colon = link.lastIndexOf(':');
+        if (colon < 0 || colon != link.indexOf(':') || colon == link.length() - 1) {
+            return ANY_PORT;
+        }
+        for (int i = colon + 1; i < link.length(); i++) {
+            if (!Character.isDigit(link.charAt(i))) return ANY_PORT;
+        }
+        try {
+            return Integer.parseInt(link.substring(colon + 1));
+        } catch (NumberFormatException e) {
+            return ANY_PORT;
+        }
+    }
+
+    private static String[] reversedLabels(String host) {
+        String[] labels = host.toLowerCase(Locale.ROOT).split("\\.");
+        for (int i = 0, j = labels.length - 1; i < j; i++, j--) {
+            String label = labels[i];
+            labels[i] = labels[j];
+            labels[j] = label;
+        }
+        return labels;
+    }
+}
@@ -16,12 +16,16 @@
 
 package dev.terminalmc.commandkeys.config;
 
-import com.google.gson.*;
-import com.mojang.blaze3d.platform.InputConstants;
+import com.google.gson.JsonParseException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
 import dev.terminalmc.commandkeys.CommandKeys;
 import org.jetbrains.annotations.Nullable;
 
-import java.lang.reflect.Type;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
@@ -32,18 +36,21 @@ import java.util.Random;
  * a list of {@link Message} instances.
  */
 public class Macro {
-    public final int version = 5;
+    static final int VERSION = 5;
+    public final int version = VERSION;
 
     public static final Random RANDOM = new Random();
 
+    /**
+     * Stable identifier of a macro of the library, by which profiles
+     * reference it, see {@link MacroRef}. {@code null} for other macros.
+     */
+    @Nullable String id;
+
     boolean addToHistory;
-    public transient boolean addToHistoryStatus;
     boolean showHudMessage;
-    public transient boolean showHudMessageStatus;
     boolean resumeRepeating;
-    public transient boolean resumeRepeatingStatus;
     boolean useRatelimit;
-    public transient boolean useRatelimitStatus;
 
     ConflictStrategy conflictStrategy;
 
@@ -66,7 +73,7 @@ public class Macro {
     /**
      * Standard delay between messages when sending.
      */
-    public int spaceTicks;
+    int spaceTicks;
     /**
      * Index of next message forwards when cycling.
      */
@@ -75,7 +82,28 @@ public class Macro {
     Keybind keybind;
     Keybind altKeybind;
 
-    final List<Message> messages;
+    List<Message> messages;
+    /**
+     * Whether {@link Macro#messages} may be shared with a copy of this macro,
+     * in which case it is copied before either modifies it.
+     */
+    private transient boolean messagesShared;
+
+    /**
+     * Whether this macro has been modified since it was last saved.
+     */
+    transient boolean dirty;
+    /**
+     * Whether this macro has been modified since it was last recorded in the
+     * journal, see {@link Profile#commitEdits}.
+     */
+    transient boolean journalPending;
+    /**
+     * The profile whose macro maps this macro was last added to as its own
+     * macro, rather than inherited, to which changes to it are recorded in the
+     * journal.
+     */
+    transient @Nullable Profile owner;
 
     /**
      * Creates a default empty instance.
@@ -86,8 +114,8 @@ public class Macro {
                 false,
                 false,
                 false,
-                Config.get().defaultConflictStrategy,
-                Config.get().defaultSendMode,
+                Config.get().getDefaultConflictStrategy(),
+                Config.get().getDefaultSendMode(),
                 0,
                 0,
                 new Keybind(),
@@ -96,6 +124,29 @@ public class Macro {
         );
     }
 
+    /**
+     * Copy constructor. The messages are shared until either macro modifies
+     * them.
+     */
+    Macro(Macro macro) {
+        this(
+                macro.addToHistory,
+                macro.showHudMessage,
+                macro.resumeRepeating,
+                macro.useRatelimit,
+                macro.conflictStrategy,
+                macro.sendMode,
+                macro.spaceTicks,
+                0,
+                new Keybind(macro.keybind),
+                new Keybind(macro.altKeybind),
+                macro.messages
+        );
+        this.id = macro.id;
+        this.messagesShared = true;
+        macro.messagesShared = true;
+    }
+
     /**
      * Not validated, only for use by self-validating deserializer.
      */
@@ -141,6 +192,24 @@ public class Macro {
         return useRatelimit;
     }
 
+    // Status, as governed by the behavior controls of the owner
+
+    public boolean getAddToHistoryStatus() {
+        return owner != null ? owner.getAddToHistory().apply(addToHistory) : addToHistory;
+    }
+
+    public boolean getShowHudMessageStatus() {
+        return owner != null ? owner.getShowHudMessage().apply(showHudMessage) : showHudMessage;
+    }
+
+    public boolean getResumeRepeatingStatus() {
+        return owner != null ? owner.getResumeRepeating().apply(resumeRepeating) : resumeRepeating;
+    }
+
+    public boolean getUseRatelimitStatus() {
+        return owner != null ? owner.getUseRatelimit().apply(useRatelimit) : useRatelimit;
+    }
+
     public ConflictStrategy getStrategy() {
         return conflictStrategy;
     }
@@ -149,6 +218,26 @@ public class Macro {
         return sendMode;
     }
 
+    public int getSpaceTicks() {
+        return spaceTicks;
+    }
+
+    public void setSpaceTicks(int spaceTicks) {
+        if (spaceTicks < 0) throw new IllegalArgumentException();
+        if (spaceTicks == this.spaceTicks) return;
+        beforeChange();
+        this.spaceTicks = spaceTicks;
+        changed();
+    }
+
+    /**
+     * @return the ID of this macro if it is a macro of the library, otherwise
+     * {@code null}.
+     */
+    public @Nullable String getId() {
+        return id;
+    }
+
     public Keybind getKeybind() {
         return keybind;
     }
@@ -181,15 +270,54 @@ public class Macro {
     }
 
     public void addMessage(Message message) {
+        beforeChange();
         this.messages.add(message);
+        changed();
     }
 
     public void setMessage(int index, String str) {
+        if (str.equals(this.messages.get(index).string)) return;
+        beforeChange();
         this.messages.get(index).string = str;
+        changed();
+    }
+
+    public void setMessageDelay(int index, int delayTicks) {
+        if (delayTicks < 0) throw new IllegalArgumentException();
+        if (delayTicks == this.messages.get(index).delayTicks) return;
+        beforeChange();
+        this.messages.get(index).delayTicks = delayTicks;
+        changed();
     }
 
     public void removeMessage(int index) {
+        beforeChange();
         this.messages.remove(index);
+        changed();
+    }
+
+    /**
+     * Replaces the message strings with their pooled instances, see
+     * {@link StringPool}. Done when an edit is saved rather than by
+     * {@link Macro#setMessage}, so that the intermediate values of an edit are
+     * not pooled.
+     */
+    void internMessages() {
+        for (Message message : messages) message.string = StringPool.intern(message.string);
+    }
+
+    /**
+     * Removes any blank messages.
+     * @return {@code true} if any were removed, {@code false} otherwise.
+     */
+    boolean removeBlankMessages() {
+        for (Message message : messages) {
+            if (message.string.isBlank()) {
+                beforeChange();
+                return messages.removeIf((msg) -> msg.string.isBlank());
+            }
+        }
+        return false;
     }
 
     /**
@@ -199,10 +327,31 @@ public class Macro {
      */
     public void moveMessage(int sourceIndex, int destIndex) {
         if (sourceIndex != destIndex) {
+            beforeChange();
             messages.add(destIndex, messages.remove(sourceIndex));
+            changed();
         }
     }
 
+    /**
+     * Prepares this macro to be modified, copying any data shared with a copy
+     * of it or of its owner, see {@link Profile#beforeEdit}.
+     */
+    private void beforeChange() {
+        if (owner != null) owner.beforeEdit();
+        if (messagesShared) {
+            List<Message> messages = new ArrayList<>(this.messages.size());
+            for (Message message : this.messages) messages.add(new Message(message));
+            this.messages = messages;
+            messagesShared = false;
+        }
+    }
+
+    private void changed() {
+        if (owner != null) owner.macroChanged(this);
+        else dirty = true;
+    }
+
     // Activation
 
     public void trigger(@Nullable Keybind trigger) {
@@ -219,7 +368,7 @@ public class Macro {
                 for (Message msg : messages) {
                     cumulativeDelay += standardDelay ? spaceTicks : msg.delayTicks;
                     schedule(cumulativeDelay, -1, msg.string,
-                            addToHistoryStatus, showHudMessageStatus);
+                            getAddToHistoryStatus(), getShowHudMessageStatus());
                 }
             }
             case TYPE -> {
@@ -237,7 +386,7 @@ public class Macro {
                 // Allow spacer blank messages, and multiple messages per press.
                 for (String msg : messages.get(cycleIndex).string.split(",,")) {
                     if (!msg.isBlank()) {
-                        CommandKeys.send(msg, addToHistoryStatus, showHudMessageStatus);
+                        CommandKeys.send(msg, getAddToHistoryStatus(), getShowHudMessageStatus());
                     }
                 }
             }
@@ -245,7 +394,7 @@ public class Macro {
                 if (!messages.isEmpty()) {
                     Message msg = messages.get(RANDOM.nextInt(messages.size()));
                     if (!msg.string.isBlank()) {
-                        CommandKeys.send(msg.string, addToHistoryStatus, showHudMessageStatus);
+                        CommandKeys.send(msg.string, getAddToHistoryStatus(), getShowHudMessageStatus());
                     }
                 }
             }
@@ -254,7 +403,7 @@ public class Macro {
                 for (Message msg : messages) {
                     cumulativeDelay += msg.delayTicks;
                     schedule(cumulativeDelay, spaceTicks, msg.string,
-                            addToHistoryStatus, showHudMessageStatus);
+                            getAddToHistoryStatus(), getShowHudMessageStatus());
                 }
             }
         }
@@ -319,85 +468,133 @@ public class Macro {
         }
     }
 
-    // Deserialization
+    // Snapshot serialization
+
+    void writeSnapshot(DataOutput out) throws IOException {
+        out.writeBoolean(id != null);
+        if (id != null) ConfigSnapshot.writeString(out, id);
+        out.writeBoolean(addToHistory);
+        out.writeBoolean(showHudMessage);
+        out.writeBoolean(resumeRepeating);
+        out.writeBoolean(useRatelimit);
+        out.writeByte(conflictStrategy.ordinal());
+        out.writeByte(sendMode.ordinal());
+        out.writeInt(spaceTicks);
+        keybind.writeSnapshot(out);
+        altKeybind.writeSnapshot(out);
+        out.writeInt(messages.size());
+        for (Message message : messages) message.writeSnapshot(out);
+    }
+
+    static Macro readSnapshot(ByteBuffer in) {
+        String id = in.get() != 0 ? StringPool.intern(ConfigSnapshot.readString(in)) : null;
+        boolean addToHistory = in.get() != 0;
+        boolean showHudMessage = in.get() != 0;
+        boolean resumeRepeating = in.get() != 0;
+        boolean useRatelimit = in.get() != 0;
+        ConflictStrategy conflictStrategy = ConflictStrategy.values()[in.get()];
+        SendMode sendMode = SendMode.values()[in.get()];
+        int spaceTicks = in.getInt();
+        Keybind keybind = Keybind.readSnapshot(in);
+        Keybind altKeybind = Keybind.readSnapshot(in);
+        int messageCount = in.getInt();
+        List<Message> messages = new ArrayList<>(messageCount);
+        for (int i = 0; i < messageCount; i++) messages.add(Message.readSnapshot(in));
+        Macro macro = new Macro(addToHistory, showHudMessage, resumeRepeating, useRatelimit,
+                conflictStrategy, sendMode, spaceTicks, 0, keybind, altKeybind, messages);
+        macro.id = id;
+        return macro;
+    }
+
+    // Serialization
+
+    public static class Adapter extends TypeAdapter<Macro> {
+        private final Keybind.Adapter keybindAdapter = new Keybind.Adapter();
+        private final Message.Adapter messageAdapter = new Message.Adapter();
 
-    public static class Deserializer implements JsonDeserializer<Macro> {
         @Override
-        public Macro deserialize(JsonElement json, Type typeOfT, JsonDeserializationContext ctx)
-                throws JsonParseException {
-            JsonObject obj = json.getAsJsonObject();
-            int version = obj.has("version") ? obj.get("version").getAsInt() : 0;
-
-            boolean addToHistory = version >= 3 ? obj.get("addToHistory").getAsBoolean() : false;
-            boolean showHudMessage = version >= 3 ? obj.get("showHudMessage").getAsBoolean() : false;
-            boolean resumeRepeating = version >= 5 ? obj.get("resumeRepeating").getAsBoolean() : false;
-            boolean useRatelimit = version >= 5 ? obj.get("useRatelimit").getAsBoolean() : false;
-
-            ConflictStrategy conflictStrategy = version >= 3
-                    ? ConflictStrategy.valueOf(obj.get("conflictStrategy").getAsString())
-                    : getConflictStrategy(obj.get("conflictStrategy").getAsString());
-            SendMode sendMode = version >= 3
-                    ? SendMode.valueOf(obj.get("sendMode").getAsString())
-                    : getSendMode(obj.get("sendStrategy").getAsString());
-
-            int spaceTicks = version >= 1 ? obj.get("spaceTicks").getAsInt() : 0;
-            
-            Keybind keybind = version >= 4
-                    ? ctx.deserialize(obj.get("keybind"), Keybind.class)
-                    : version == 3 
-                        ? new Keybind(
-                            InputConstants.getKey(obj.get("keyName").getAsString()), 
-                            InputConstants.getKey(obj.get("limitKeyName").getAsString()))
-                        : new Keybind(
-                            InputConstants.getKey(obj.getAsJsonObject("key").get("name").getAsString()),
-                            InputConstants.getKey(obj.getAsJsonObject("limitKey").get("name").getAsString()));
-            Keybind altKeybind = version >= 4 
-                    ? ctx.deserialize(obj.get("altKeybind"), Keybind.class) 
-                    : new Keybind();
-            
-            List<Message> messages = new ArrayList<>();
-            for (JsonElement je : obj.getAsJsonArray("messages")) {
-                Message message = version >= 2
-                        ? ctx.deserialize(je, Message.class)
-                        : new Message(true, je.getAsString(), 0);
-                if (message != null) messages.add(message);
+        public void write(JsonWriter out, Macro macro) throws IOException {
+            out.beginObject();
+            out.name("version").value(macro.version);
+            if (macro.id != null) out.name("id").value(macro.id);
+            out.name("addToHistory").value(macro.addToHistory);
+            out.name("showHudMessage").value(macro.showHudMessage);
+            out.name("resumeRepeating").value(macro.resumeRepeating);
+            out.name("useRatelimit").value(macro.useRatelimit);
+            out.name("conflictStrategy").value(macro.conflictStrategy.name());
+            out.name("sendMode").value(macro.sendMode.name());
+            out.name("spaceTicks").value(macro.spaceTicks);
+            out.name("keybind");
+            keybindAdapter.write(out, macro.keybind);
+            out.name("altKeybind");
+            keybindAdapter.write(out, macro.altKeybind);
+            out.name("messages").beginArray();
+            for (Message message : macro.messages) messageAdapter.write(out, message);
+            out.endArray();
+            out.endObject();
+        }
+
+        @Override
+        public Macro read(JsonReader in) throws IOException {
+            String id = null;
+            Boolean addToHistory = null;
+            Boolean showHudMessage = null;
+            Boolean resumeRepeating = null;
+            Boolean useRatelimit = null;
+            String conflictStrategy = null;
+            String sendMode = null;
+            Integer spaceTicks = null;
+            Keybind keybind = null;
+            Keybind altKeybind = null;
+            List<Message> messages = null;
+
+            in.beginObject();
+            ConfigMigrator.requireVersion(in, VERSION);
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "id" -> id = StringPool.intern(in.nextString());
+                    case "addToHistory" -> addToHistory = in.nextBoolean();
+                    case "showHudMessage" -> showHudMessage = in.nextBoolean();
+                    case "resumeRepeating" -> resumeRepeating = in.nextBoolean();
+                    case "useRatelimit" -> useRatelimit = in.nextBoolean();
+                    case "conflictStrategy" -> conflictStrategy = in.nextString();
+                    case "sendMode" -> sendMode = in.nextString();
+                    case "spaceTicks" -> spaceTicks = in.nextInt();
+                    case "keybind" -> keybind = keybindAdapter.read(in);
+                    case "altKeybind" -> altKeybind = keybindAdapter.read(in);
+                    case "messages" -> {
+                        messages = new ArrayList<>();
+                        in.beginArray();
+                        while (in.hasNext()) {
+                            Message message = messageAdapter.read(in);
+                            if (message != null) messages.add(message);
+                        }
+                        in.endArray();
+                    }
+                    default -> in.skipValue();
+                }
             }
+            in.endObject();
 
             // Validate
-            if (spaceTicks < 0) throw new JsonParseException("Macro Error: spaceTicks < 0");
-
-            return new Macro(
-                    addToHistory,
-                    showHudMessage,
-                    resumeRepeating,
-                    useRatelimit,
-                    conflictStrategy,
-                    sendMode,
+            if (Config.required(spaceTicks, "spaceTicks") < 0) 
+                throw new JsonParseException("Macro Error: spaceTicks < 0");
+
+            Macro macro = new Macro(
+                    Config.required(addToHistory, "addToHistory"),
+                    Config.required(showHudMessage, "showHudMessage"),
+                    Config.required(resumeRepeating, "resumeRepeating"),
+                    Config.required(useRatelimit, "useRatelimit"),
+                    ConflictStrategy.valueOf(Config.required(conflictStrategy, "conflictStrategy")),
+                    SendMode.valueOf(Config.required(sendMode, "sendMode")),
                     spaceTicks,
                     0,
-                    keybind,
-                    altKeybind,
-                    messages
+                    Config.required(keybind, "keybind"),
+                    Config.required(altKeybind, "altKeybind"),
+                    Config.required(messages, "messages")
             );
-        }
-
-        public static ConflictStrategy getConflictStrategy(String str) {
-            return switch(str) {
-                case "ZERO" -> ConflictStrategy.SUBMIT;
-                case "ONE" -> ConflictStrategy.ASSERT;
-                case "TWO" -> ConflictStrategy.VETO;
-                case "THREE" -> ConflictStrategy.AVOID;
-                default -> throw new JsonParseException("Macro Error: ConflictStrategy " + str);
-            };
-        }
-
-        public static SendMode getSendMode(String str) {
-            return switch(str) {
-                case "ZERO" -> SendMode.SEND;
-                case "ONE" -> SendMode.TYPE;
-                case "TWO" -> SendMode.CYCLE;
-                default -> throw new JsonParseException("Macro Error: SendMode " + str);
-            };
+            macro.id = id;
+            return macro;
         }
     }
 }
@@ -0,0 +1,136 @@
+/*
+ * Copyright 2025 TerminalMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.terminalmc.commandkeys.config;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * A reference from a {@link Profile} to a {@link Macro} of the config's macro
+ * library, see {@link Config#getLibrary}, by the macro's ID.
+ *
+ * <p>The referenced macro is shared by every profile referencing it, so that
+ * editing it in the library applies to all of them. A reference may override
+ * the primary {@link Keybind} of the macro for its profile, in which case the
+ * alternate keybind remains that of the macro.</p>
+ */
+public class MacroRef {
+    static final int VERSION = 0;
+    public final int version = VERSION;
+
+    private final String macroId;
+    private @Nullable Keybind keybind;
+
+    public MacroRef(String macroId) {
+        this(StringPool.intern(macroId), null);
+    }
+
+    /**
+     * Not validated, only for use by self-validating deserializer.
+     */
+    private MacroRef(String macroId, @Nullable Keybind keybind) {
+        this.macroId = macroId;
+        this.keybind = keybind;
+    }
+
+    /**
+     * Copy constructor.
+     */
+    MacroRef(MacroRef ref) {
+        this(ref.macroId, ref.keybind != null ? new Keybind(ref.keybind) : null);
+    }
+
+    public String getMacroId() {
+        return macroId;
+    }
+
+    /**
+     * @return the keybind overriding the primary keybind of the referenced
+     * macro, or {@code null} if not overridden.
+     */
+    public @Nullable Keybind getKeybind() {
+        return keybind;
+    }
+
+    void setKeybind(@Nullable Keybind keybind) {
+        this.keybind = keybind;
+    }
+
+    /**
+     * @return the keybind activating {@code macro}, the referenced macro,
+     * through this reference.
+     */
+    public Keybind keybindOf(Macro macro) {
+        return keybind != null ? keybind : macro.keybind;
+    }
+
+    // Snapshot serialization
+
+    void writeSnapshot(DataOutput out) throws IOException {
+        ConfigSnapshot.writeString(out, macroId);
+        out.writeBoolean(keybind != null);
+        if (keybind != null) keybind.writeSnapshot(out);
+    }
+
+    static MacroRef readSnapshot(ByteBuffer in) {
+        String macroId = StringPool.intern(ConfigSnapshot.readString(in));
+        return new MacroRef(macroId, in.get() != 0 ? Keybind.readSnapshot(in) : null);
+    }
+
+    // Serialization
+
+    public static class Adapter extends TypeAdapter<MacroRef> {
+        private final Keybind.Adapter keybindAdapter = new Keybind.Adapter();
+
+        @Override
+        public void write(JsonWriter out, MacroRef ref) throws IOException {
+            out.beginObject();
+            out.name("version").value(ref.version);
+            out.name("macroId").value(ref.macroId);
+            if (ref.keybind != null) {
+                out.name("keybind");
+                keybindAdapter.write(out, ref.keybind);
+            }
+            out.endObject();
+        }
+
+        @Override
+        public MacroRef read(JsonReader in) throws IOException {
+            String macroId = null;
+            Keybind keybind = null;
+
+            in.beginObject();
+            ConfigMigrator.requireVersion(in, VERSION);
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "macroId" -> macroId = in.nextString();
+                    case "keybind" -> keybind = keybindAdapter.read(in);
+                    default -> in.skipValue();
+                }
+            }
+            in.endObject();
+
+            return new MacroRef(StringPool.intern(Config.required(macroId, "macroId")), keybind);
+        }
+    }
+}
@@ -16,18 +16,25 @@
 
 package dev.terminalmc.commandkeys.config;
 
-import com.google.gson.*;
+import com.google.gson.JsonParseException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
 import dev.terminalmc.commandkeys.CommandKeys;
 import org.jetbrains.annotations.Nullable;
 
-import java.lang.reflect.Type;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
 
 public class Message {
-    public final int version = 1;
+    static final int VERSION = 1;
+    public final int version = VERSION;
 
     private boolean enabled; // v1 parity
-    public String string;
-    public int delayTicks;
+    String string;
+    int delayTicks;
 
     /**
      * Creates a default instance.
@@ -43,21 +50,92 @@ public class Message {
      */
     Message(boolean enabled, String string, int delayTicks) {
         this.enabled = enabled;
-        this.string = string;
+        this.string = StringPool.intern(string);
         this.delayTicks = delayTicks;
     }
 
-    public static class Deserializer implements JsonDeserializer<Message> {
+    /**
+     * Copy constructor.
+     */
+    Message(Message message) {
+        this.enabled = message.enabled;
+        this.string = message.string;
+        this.delayTicks = message.delayTicks;
+    }
+
+    public String getString() {
+        return string;
+    }
+
+    public int getDelayTicks() {
+        return delayTicks;
+    }
+
+    // Snapshot serialization
+
+    void writeSnapshot(DataOutput out) throws IOException {
+        out.writeBoolean(enabled);
+        ConfigSnapshot.writeString(out, string);
+        out.writeInt(delayTicks);
+    }
+
+    static Message readSnapshot(ByteBuffer in) {
+        return new Message(in.get() != 0, ConfigSnapshot.readString(in), in.getInt());
+    }
+
+    // Serialization
+
+    public static class Adapter extends TypeAdapter<Message> {
+        @Override
+        public void write(JsonWriter out, Message message) throws IOException {
+            out.beginObject();
+            out.name("version").value(message.version);
+            out.name("enabled").value(message.enabled);
+            out.name("string").value(message.string);
+            out.name("delayTicks").value(message.delayTicks);
+            out.endObject();
+        }
+
+        /**
+         * @return the deserialized message, or {@code null} if the object
+         * was not a valid message. The object is consumed in either case.
+         */
         @Override
-        public @Nullable Message deserialize(JsonElement json, Type typeOfT, JsonDeserializationContext ctx)
-                throws JsonParseException {
-            JsonObject obj = json.getAsJsonObject();
+        public @Nullable Message read(JsonReader in) throws IOException {
+            Integer version = null;
+            Boolean enabled = null;
+            String string = null;
+            Integer delayTicks = null;
+            RuntimeException error = null;
+
+            in.beginObject();
+            while (in.hasNext()) {
+                String name = in.nextName();
+                try {
+                    switch (name) {
+                        case "version" -> version = in.nextInt();
+                        // Tree parsing accepted any string as a boolean
+                        case "enabled" -> enabled = in.peek().equals(JsonToken.STRING)
+                                ? Boolean.parseBoolean(in.nextString())
+                                : in.nextBoolean();
+                        case "string" -> string = in.nextString();
+                        case "delayTicks" -> delayTicks = in.nextInt();
+                        default -> in.skipValue();
+                    }
+                } catch (IllegalStateException | NumberFormatException e) {
+                    // Value was not consumed
+                    in.skipValue();
+                    if (error == null) error = e;
+                }
+            }
+            in.endObject();
+
             try {
-                int version = obj.get("version").getAsInt();
-                
-                boolean enabled = obj.get("enabled").getAsBoolean();
-                String string = obj.get("string").getAsString();
-                int delayTicks = obj.get("delayTicks").getAsInt();
+                if (error != null) throw error;
+                Config.required(version, "version");
+                Config.required(enabled, "enabled");
+                Config.required(string, "string");
+                Config.required(delayTicks, "delayTicks");
 
                 // Validation
                 if (delayTicks < 0) throw new JsonParseException("ResponseMessage Error: delayTicks < 0");
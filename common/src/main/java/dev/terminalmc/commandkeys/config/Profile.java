@@ -18,11 +18,30 @@ package dev.terminalmc.commandkeys.config;
 
 import com.google.common.collect.LinkedHashMultimap;
 import com.google.common.collect.Multimap;
-import com.google.gson.*;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
 import com.mojang.blaze3d.platform.InputConstants;
+import dev.terminalmc.commandkeys.CommandKeys;
+import dev.terminalmc.commandkeys.util.PlaceholderUtil;
+import org.jetbrains.annotations.Nullable;
 
-import java.lang.reflect.Type;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
 
 /**
  * Consists of behavioral options, a list of {@link Macro} instances, and
@@ -31,25 +50,151 @@ import java.util.*;
  *
  * <p>A static {@link Map} {@link Profile#LINK_PROFILE_MAP} is maintained to
  * ensure no overlap of links across different profiles, and to improve link
- * lookup time.</p>
+ * lookup time. Wildcard and port links are matched by a {@link LinkMatcher}
+ * compiled from it, see {@link Profile#matchLink}.</p>
  *
  * <p>A pair of transient {@link Multimap} instances ({@link Profile#keybindMap}
  * and {@link Profile#macroMap}) are maintained to improve macro lookup time.
+ * They are rebuilt when next used after the macro list or a keybind changes,
+ * so that keys are only resolved on the client thread, see {@link Keybind}.
  * </p>
+ *
+ * <p>A profile may inherit the macros of a parent profile, see
+ * {@link Profile#setParent}. The inherited macros are flattened into the maps
+ * when they are built, so that a key press never walks the inheritance chain.
+ * </p>
+ *
+ * <p>A profile with a parent may be a sub-profile for one or more dimensions,
+ * see {@link Profile#setDimensions}, in which case it is activated instead of
+ * its parent while in those dimensions, see {@link Config#activateDimension}.
+ * </p>
+ *
+ * <p>On proxy networks, where the server address does not identify the
+ * server, a profile may instead be activated by signals matching the text
+ * the server sends, see {@link Profile#setSignals}.</p>
+ *
+ * <p>The ID, name and links of a profile are stored in the config index, and
+ * the behavior controls and macros in a separate file. A profile read from the
+ * index is not loaded until its controls or macros are first accessed, or it
+ * is activated. Until then, its macro list and maps are empty. A profile
+ * activated on joining a world or server is loaded in the background, see
+ * {@link Profile#prewarm}.</p>
+ *
+ * <p>A copy of a profile shares its macro list until either profile is
+ * modified or the copy is used, see {@link Profile#own}, so that copying a
+ * large profile does not copy its macros.</p>
+ *
+ * <p>A profile may also reference macros of the config's macro library, a
+ * profile of its own, see {@link MacroRef}. Referenced macros are added to the
+ * maps along with the profile's own macros, and follow the behavior controls
+ * of the library.</p>
  */
 public class Profile {
-    public final int version = 4;
+    static final int VERSION = 6;
+    public final int version = VERSION;
     
+    /**
+     * The ID of the macro library, see {@link Config#getLibrary}.
+     */
+    static final String LIBRARY_ID = "library";
+
     public static final Map<String, Profile> LINK_PROFILE_MAP = new HashMap<>();
+    private static @Nullable LinkMatcher linkMatcher;
+    private static final Macro.Adapter MACRO_ADAPTER = new Macro.Adapter();
+    private static final MacroRef.Adapter REF_ADAPTER = new MacroRef.Adapter();
     
-    public transient final Multimap<InputConstants.Key, Keybind> keybindMap 
+    private transient final Multimap<InputConstants.Key, Keybind> keybindMap 
             = LinkedHashMultimap.create();
-    public transient final Multimap<Keybind, Macro> macroMap 
+    private transient final Multimap<Keybind, Macro> macroMap 
             = LinkedHashMultimap.create();
+    private transient boolean mapsStale = true;
+    /**
+     * Incremented whenever the maps are invalidated or updated in place, so
+     * that profiles
+     * referencing the macros of this profile, if it is the library, can tell
+     * that theirs are out of date.
+     */
+    private transient int mapsVersion;
+    /**
+     * The distinct macros in the maps, including inherited and referenced
+     * macros, in the order they were added.
+     */
+    private transient final Set<Macro> boundMacros = new LinkedHashSet<>();
+    /**
+     * The library macros referenced by this profile, as added to the maps.
+     */
+    private transient final Set<Macro> refMacros = new HashSet<>();
+    /**
+     * The number of open {@link Profile#edit} transactions.
+     */
+    private transient int editDepth;
+    /**
+     * Whether the maps were invalidated during the open transaction, so that
+     * those of inheriting profiles must be invalidated when it ends.
+     */
+    private transient boolean editInvalidated;
+
+    /**
+     * The macro library, see {@link Config#getLibrary}, or {@code null} if this
+     * profile is the library or not part of a config.
+     */
+    private transient @Nullable Profile library;
+    /**
+     * The {@link Profile#mapsVersion} of {@link Profile#library} when the maps
+     * were last built.
+     */
+    private transient int libraryVersion;
+    /**
+     * The macros of this profile by ID, if it is the library and the index
+     * has been built since the macro list last changed.
+     */
+    private transient @Nullable Map<String, Macro> macrosById;
+
+    /**
+     * The profile whose macros are inherited, if any. Stored in the config
+     * index by ID.
+     */
+    private transient @Nullable Profile parent;
+    /**
+     * The profiles inheriting from this profile, whose maps are updated with
+     * its own.
+     */
+    private transient final List<Profile> children = new ArrayList<>();
+    /**
+     * The children of this profile by the dimension IDs they are sub-profiles
+     * for, or {@code null} if not built since the children or their
+     * dimensions last changed.
+     */
+    private transient @Nullable Map<String, Profile> subProfiles;
+
+    /**
+     * The profile whose macro list is shared by this copy of it, until either
+     * is modified, see {@link Profile#own}.
+     */
+    private transient @Nullable Profile macroSource;
+    /**
+     * The copies of this profile sharing its macro list.
+     */
+    private transient final List<Profile> copies = new ArrayList<>();
 
     // Profile details
-    public String name;
+    /**
+     * Stable identifier, also used as the name of the profile's file.
+     */
+    private final String id;
+    private String name;
     private final List<String> links;
+    /**
+     * IDs of the dimensions in which this profile replaces its parent. Stored
+     * in the config index.
+     */
+    private final List<String> dimensions = new ArrayList<>();
+    /**
+     * Regular expressions matched against the tab-list header and footer and
+     * the sidebar objective title, which activate this profile. Stored in the
+     * config index.
+     */
+    private final List<String> signals = new ArrayList<>();
 
     // Behavior controls
     public static final Control addToHistoryDefault = Control.OFF;
@@ -63,11 +208,70 @@ public class Profile {
     public enum Control {
         ON,
         OFF,
-        DEFER
+        DEFER;
+
+        /**
+         * @return the status of a macro behavior governed by this control,
+         * given the value of the behavior for the macro.
+         */
+        public boolean apply(boolean value) {
+            return switch (this) {
+                case ON -> true;
+                case OFF -> false;
+                case DEFER -> value;
+            };
+        }
     }
 
     // Macro list
-    private final List<Macro> macros;
+    private List<Macro> macros;
+    private List<MacroRef> macroRefs = new ArrayList<>();
+
+    /**
+     * Whether the profile details, behavior controls or macro list have been
+     * modified since last saved. Changes to individual macros are tracked by
+     * the macros.
+     */
+    private transient boolean dirty;
+    /**
+     * Whether the name or links have been modified since last saved.
+     */
+    transient boolean headerDirty;
+    /**
+     * Whether the name or links have been modified since last recorded in the
+     * journal, see {@link Profile#commitEdits}.
+     */
+    private transient boolean headerPending;
+    /**
+     * Whether any macro has been modified since last recorded in the journal,
+     * see {@link Profile#commitEdits}.
+     */
+    private transient boolean macrosPending;
+    /**
+     * The sequence number of the last journal record included in the profile
+     * file, see {@link Profile#replay}.
+     */
+    transient long journalSeq;
+
+    /**
+     * Source of the behavior controls and macros, if not yet loaded.
+     */
+    private transient @Nullable Loader loader;
+    /**
+     * Result of reading {@link Profile#loader} in the background, if started
+     * by {@link Profile#prewarm}.
+     */
+    private transient @Nullable CompletableFuture<Profile> prewarmed;
+    /**
+     * Whether loading failed, in which case the profile is empty.
+     */
+    transient boolean loadFailed;
+    /**
+     * The body written to or read from the last snapshot, reused by the next
+     * snapshot while the profile is not modified, or {@code null} if not
+     * known.
+     */
+    private transient byte @Nullable [] snapshotBody;
 
     /**
      * Creates a default empty instance.
@@ -78,6 +282,7 @@ public class Profile {
     
     public Profile(String name) {
         this(
+                newId(),
                 name,
                 new ArrayList<>(),
                 addToHistoryDefault,
@@ -92,6 +297,7 @@ public class Profile {
      * Not validated, only for use by self-validating deserializer.
      */
     private Profile(
+            String id,
             String name,
             List<String> links,
             Control addToHistory,
@@ -100,6 +306,7 @@ public class Profile {
             Control useRatelimit,
             List<Macro> macros
     ) {
+        this.id = id;
         this.name = name;
         this.links = links;
         this.addToHistory = addToHistory;
@@ -107,21 +314,90 @@ public class Profile {
         this.resumeRepeating = resumeRepeating;
         this.useRatelimit = useRatelimit;
         this.macros = macros;
-        // Add missing links to map
-        this.links.removeIf((link) -> LINK_PROFILE_MAP.putIfAbsent(link, this) != null);
+        // Add missing links to map. Profiles without links may be created
+        // off the client thread, see Loader
+        if (!links.isEmpty()) {
+            this.links.removeIf((link) -> LINK_PROFILE_MAP.putIfAbsent(link, this) != null);
+            linkMatcher = null;
+        }
     }
 
     /**
-     * Copy constructor.
+     * Copy constructor. The macro list is shared with {@code profile} until
+     * either profile is modified, see {@link Profile#own}.
      */
     Profile(Profile profile) {
+        this(newId(), profile);
+    }
+
+    /**
+     * Copy constructor for a copy with a known ID, see {@link Config#replay}.
+     */
+    Profile(String id, Profile profile) {
+        profile.load();
+        this.id = id;
         this.name = profile.name;
         this.links = new ArrayList<>();
         this.addToHistory = profile.addToHistory;
         this.showHudMessage = profile.showHudMessage;
         this.resumeRepeating = profile.resumeRepeating;
         this.useRatelimit = profile.useRatelimit;
-        this.macros = profile.macros;
+        this.macroSource = profile.macroSource != null ? profile.macroSource : profile;
+        this.macros = macroSource.macros;
+        macroSource.copies.add(this);
+        for (MacroRef ref : profile.macroRefs) macroRefs.add(new MacroRef(ref));
+        this.library = profile.library;
+        this.dirty = true;
+    }
+
+    /**
+     * Creates a profile whose behavior controls and macros will be read from
+     * {@code loader} when first required.
+     */
+    static Profile unloaded(String id, String name, List<String> links, Loader loader) {
+        Profile profile = new Profile(id, name, links,
+                addToHistoryDefault, showHudMessageDefault, resumeRepeatingDefault,
+                useRatelimitDefault, new ArrayList<>());
+        profile.loader = loader;
+        return profile;
+    }
+
+    /**
+     * Creates the macro library, whose behavior controls and macros will be
+     * read from {@code loader} when first required, or empty if
+     * {@code loader} is {@code null}.
+     */
+    static Profile library(@Nullable Loader loader) {
+        if (loader != null) return unloaded(LIBRARY_ID, "", new ArrayList<>(), loader);
+        return new Profile(LIBRARY_ID, "", new ArrayList<>(),
+                addToHistoryDefault, showHudMessageDefault, resumeRepeatingDefault,
+                useRatelimitDefault, new ArrayList<>());
+    }
+
+    private static String newId() {
+        return UUID.randomUUID().toString();
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * @return {@code true} if this profile is the macro library, see
+     * {@link Config#getLibrary}, {@code false} otherwise.
+     */
+    public boolean isLibrary() {
+        return id.equals(LIBRARY_ID);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        if (name.equals(this.name)) return;
+        this.name = name;
+        headerChanged();
     }
 
     /**
@@ -152,6 +428,35 @@ public class Profile {
         if (LINK_PROFILE_MAP.containsKey(link)) LINK_PROFILE_MAP.get(link).removeLink(link);
         links.add(link);
         LINK_PROFILE_MAP.put(link, this);
+        linkMatcher = null;
+        headerChanged();
+    }
+
+    /**
+     * @return {@code true} if {@link Profile#replaceLink} would succeed,
+     * {@code false} otherwise.
+     */
+    public boolean canReplaceLink(String oldLink, String link) {
+        Profile owner = LINK_PROFILE_MAP.get(link);
+        if (owner != null) return owner == this && link.equals(oldLink);
+        return links.contains(oldLink);
+    }
+
+    /**
+     * Replaces the link {@code oldLink} of this profile with {@code link}, in
+     * the same position, unless {@code link} is linked to another profile.
+     * @return {@code true} if the link was replaced, {@code false} otherwise.
+     */
+    public boolean replaceLink(String oldLink, String link) {
+        if (!canReplaceLink(oldLink, link)) return false;
+        if (link.equals(oldLink)) return true;
+        int index = links.indexOf(oldLink);
+        links.set(index, link);
+        LINK_PROFILE_MAP.remove(oldLink);
+        LINK_PROFILE_MAP.put(link, this);
+        linkMatcher = null;
+        headerChanged();
+        return true;
     }
 
     /**
@@ -159,60 +464,397 @@ public class Profile {
      * {@link Profile#LINK_PROFILE_MAP}.
      */
     public void removeLink(String link) {
-        links.remove(link);
+        if (links.remove(link)) headerChanged();
         LINK_PROFILE_MAP.remove(link);
+        linkMatcher = null;
+    }
+
+    /**
+     * @param port the port, or -1 if unknown.
+     * @return the profile linked to the server address, or {@code null} if
+     * none is. See {@link LinkMatcher} for the supported links.
+     */
+    static @Nullable Profile matchLink(String host, int port) {
+        LinkMatcher matcher = linkMatcher;
+        if (matcher == null) linkMatcher = matcher = LinkMatcher.compile(LINK_PROFILE_MAP);
+        return matcher.match(LINK_PROFILE_MAP, host, port);
+    }
+
+    private void headerChanged() {
+        headerDirty = true;
+        headerPending = true;
+    }
+
+    private void journalHeader() {
+        journal("header", (record) -> {
+            record.addProperty("name", name);
+            JsonArray links = new JsonArray();
+            this.links.forEach(links::add);
+            record.add("links", links);
+            if (parent != null) record.addProperty("parent", parent.id);
+            if (!dimensions.isEmpty()) {
+                JsonArray dimensions = new JsonArray();
+                this.dimensions.forEach(dimensions::add);
+                record.add("dimensions", dimensions);
+            }
+            if (!signals.isEmpty()) {
+                JsonArray signals = new JsonArray();
+                this.signals.forEach(signals::add);
+                record.add("signals", signals);
+            }
+        });
+    }
+    
+    // Inheritance
+
+    /**
+     * @return the profile whose macros are inherited, or {@code null} if
+     * there is none.
+     */
+    public @Nullable Profile getParent() {
+        return parent;
+    }
+
+    /**
+     * @return {@code true} if {@code profile} is neither this profile nor
+     * inherits from it, so can be set as its parent, {@code false} otherwise.
+     */
+    public boolean canInheritFrom(Profile profile) {
+        for (Profile ancestor = profile; ancestor != null; ancestor = ancestor.parent) {
+            if (ancestor == this) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Sets the profile whose macros are inherited by this profile. A macro of
+     * this profile overrides any inherited macros bound to the same keybind,
+     * which are then not activated by it. Inherited macros keep the behavior
+     * controls of the profile they belong to.
+     * @param parent the parent profile, or {@code null} for none.
+     * @throws IllegalArgumentException if {@code parent} is this profile or
+     * inherits from it.
+     */
+    public void setParent(@Nullable Profile parent) {
+        if (parent == this.parent) return;
+        if (parent != null && !canInheritFrom(parent))
+            throw new IllegalArgumentException("Profile cannot inherit from itself");
+        linkParent(parent);
+        headerChanged();
+    }
+
+    /**
+     * Sets the parent without marking the profile as modified. The parent
+     * must not inherit from this profile.
+     */
+    void linkParent(@Nullable Profile parent) {
+        if (parent == this.parent) return;
+        if (this.parent != null) {
+            this.parent.children.remove(this);
+            this.parent.subProfiles = null;
+        }
+        this.parent = parent;
+        if (parent != null) {
+            parent.children.add(this);
+            parent.subProfiles = null;
+        }
+        invalidateMaps();
+    }
+
+    /**
+     * Moves the profiles inheriting from this profile to its parent, and
+     * removes it from its parent, before it is removed from the config.
+     */
+    void detach() {
+        for (Profile child : List.copyOf(children)) child.setParent(parent);
+        linkParent(null);
+        unshare();
+    }
+    
+    // Sub-profiles
+
+    /**
+     * @return an unmodifiable view of the IDs of the dimensions in which this
+     * profile is activated instead of its parent.
+     */
+    public List<String> getDimensions() {
+        return Collections.unmodifiableList(dimensions);
+    }
+
+    /**
+     * Sets the IDs of the dimensions, such as {@code minecraft:the_nether},
+     * in which this profile is activated instead of its parent. A dimension
+     * already claimed by an earlier sibling is ignored while it is claimed.
+     */
+    public void setDimensions(Collection<String> dimensions) {
+        List<String> distinct = new ArrayList<>(new LinkedHashSet<>(dimensions));
+        if (distinct.equals(this.dimensions)) return;
+        linkDimensions(distinct);
+        headerChanged();
+    }
+
+    /**
+     * Sets the dimensions without marking the profile as modified.
+     */
+    void linkDimensions(List<String> dimensions) {
+        this.dimensions.clear();
+        this.dimensions.addAll(dimensions);
+        if (parent != null) parent.subProfiles = null;
+    }
+
+    /**
+     * @return the child of this profile which is a sub-profile for the
+     * dimension {@code dimension}, or {@code null} if there is none.
+     */
+    public @Nullable Profile getSubProfile(String dimension) {
+        return subProfiles().get(dimension);
+    }
+
+    /**
+     * @return the distinct children of this profile which are sub-profiles
+     * for any dimension.
+     */
+    Collection<Profile> getSubProfiles() {
+        return new LinkedHashSet<>(subProfiles().values());
+    }
+
+    private Map<String, Profile> subProfiles() {
+        if (subProfiles == null) {
+            subProfiles = new HashMap<>();
+            for (Profile child : children) {
+                for (String dimension : child.dimensions) {
+                    subProfiles.putIfAbsent(dimension, child);
+                }
+            }
+        }
+        return subProfiles;
+    }
+    
+    // Signals
+
+    /**
+     * @return an unmodifiable view of the signals, see
+     * {@link Profile#setSignals}.
+     */
+    public List<String> getSignals() {
+        return Collections.unmodifiableList(signals);
+    }
+
+    /**
+     * Sets the regular expressions which activate this profile when one
+     * matches the tab-list header or footer, or the sidebar objective title,
+     * received from the server. If signals of several profiles match, the
+     * first profile in the list wins. See {@link Config#onServerText}.
+     */
+    public void setSignals(List<String> signals) {
+        if (signals.equals(this.signals)) return;
+        linkSignals(signals);
+        headerChanged();
+    }
+
+    /**
+     * @return {@code true} if {@code signal} is a valid regular expression,
+     * {@code false} otherwise. Blank signals are ignored.
+     */
+    public static boolean isValidSignal(String signal) {
+        return signal.isBlank() || SignalMatcher.isValid(signal);
+    }
+
+    /**
+     * Sets the signals without marking the profile as modified.
+     */
+    void linkSignals(List<String> signals) {
+        this.signals.clear();
+        this.signals.addAll(signals);
+        Config.signalsChanged();
+    }
+    
+    // Library management
+
+    /**
+     * Sets the macro library whose macros this profile may reference.
+     */
+    void linkLibrary(Profile library) {
+        if (library == this.library) return;
+        this.library = library;
+        invalidateMaps();
+    }
+
+    /**
+     * @return an unmodifiable view of the references to library macros.
+     */
+    public List<MacroRef> getMacroRefs() {
+        load();
+        return Collections.unmodifiableList(macroRefs);
+    }
+
+    /**
+     * @return the library macro referenced by {@code ref}, or {@code null} if
+     * it is no longer in the library.
+     */
+    public @Nullable Macro getLibraryMacro(MacroRef ref) {
+        return library != null ? library.findMacro(ref.getMacroId()) : null;
+    }
+
+    /**
+     * Adds a reference to {@code macro}, a macro of the library.
+     * @throws IllegalArgumentException if {@code macro} is not a macro of the
+     * library.
+     */
+    public void addMacroRef(Macro macro) {
+        if (macro.id == null || library == null || library.findMacro(macro.id) != macro)
+            throw new IllegalArgumentException("Not a library macro");
+        addMacroRef(new MacroRef(macro.id));
+    }
+
+    private void addMacroRef(MacroRef ref) {
+        load();
+        macroRefs.add(ref);
+        invalidateMaps();
+        dirty = true;
+        journal("addRef", (record) -> record.add("body", REF_ADAPTER.toJsonTree(ref)));
+    }
+
+    public void removeMacroRef(MacroRef ref) {
+        load();
+        int index = macroRefs.indexOf(ref);
+        if (index < 0) return;
+        macroRefs.remove(index);
+        invalidateMaps();
+        dirty = true;
+        journal("removeRef", (record) -> record.addProperty("index", index));
+    }
+
+    /**
+     * Overrides the primary keybind of the macro referenced by {@code ref}
+     * for this profile.
+     * @param keybind the keybind, or {@code null} to use that of the macro.
+     */
+    public void setMacroRefKeybind(MacroRef ref, @Nullable Keybind keybind) {
+        load();
+        int index = macroRefs.indexOf(ref);
+        if (index < 0 || Objects.equals(keybind, ref.getKeybind())) return;
+        ref.setKeybind(keybind);
+        invalidateMaps();
+        dirty = true;
+        journal("ref", (record) -> {
+            record.addProperty("index", index);
+            record.add("body", REF_ADAPTER.toJsonTree(ref));
+        });
+    }
+
+    /**
+     * @return the macro with {@code id}, if this profile is the library and
+     * has one, otherwise {@code null}.
+     */
+    @Nullable Macro findMacro(String id) {
+        load();
+        if (macrosById == null) {
+            macrosById = new HashMap<>();
+            for (Macro macro : macros) {
+                if (macro.id != null) macrosById.putIfAbsent(macro.id, macro);
+            }
+        }
+        return macrosById.get(id);
     }
     
     // Behavior management
 
     public Control getAddToHistory() {
+        load();
         return addToHistory;
     }
 
     public void setAddToHistory(Control addToHistory) {
+        load();
+        beforeEdit();
+        boolean changed = addToHistory != this.addToHistory;
         this.addToHistory = addToHistory;
-        macros.forEach((macro) -> setAddToHistory(macro, macro.addToHistory));
+        if (changed) controlsChanged();
     }
 
     public Control getShowHudMessage() {
+        load();
         return showHudMessage;
     }
 
     public void setShowHudMessage(Control showHudMessage) {
+        load();
+        beforeEdit();
+        boolean changed = showHudMessage != this.showHudMessage;
         this.showHudMessage = showHudMessage;
-        macros.forEach((macro) -> setShowHudMessage(macro, macro.showHudMessage));
+        if (changed) controlsChanged();
     }
 
     public Control getResumeRepeating() {
+        load();
         return resumeRepeating;
     }
 
     public void setResumeRepeating(Control resumeRepeating) {
+        load();
+        beforeEdit();
+        boolean changed = resumeRepeating != this.resumeRepeating;
         this.resumeRepeating = resumeRepeating;
-        macros.forEach((macro) -> setResumeRepeating(macro, macro.resumeRepeating));
+        if (changed) controlsChanged();
     }
 
     public Control getUseRatelimit() {
+        load();
         return useRatelimit;
     }
 
     public void setUseRatelimit(Control useRatelimit) {
+        load();
+        beforeEdit();
+        boolean changed = useRatelimit != this.useRatelimit;
         this.useRatelimit = useRatelimit;
-        macros.forEach((macro) -> setUseRatelimit(macro, macro.useRatelimit));
+        if (changed) controlsChanged();
+    }
+
+    private void controlsChanged() {
+        dirty = true;
+        journal("controls", (record) -> {
+            record.addProperty("addToHistory", addToHistory.name());
+            record.addProperty("showHudMessage", showHudMessage.name());
+            record.addProperty("resumeRepeating", resumeRepeating.name());
+            record.addProperty("useRatelimit", useRatelimit.name());
+        });
     }
     
     // Macro management
 
     /**
-     * @return an unmodifiable view of the {@link Macro} list.
+     * @return an unmodifiable view of the {@link Macro} list. If this profile
+     * is a copy, the macros are shared with the profile it was copied from,
+     * so must be modified via {@link Profile#getEditableMacros} instead.
      */
     public List<Macro> getMacros() {
+        load();
+        return Collections.unmodifiableList(macros);
+    }
+
+    /**
+     * @return an unmodifiable view of the {@link Macro} list, after giving
+     * this profile its own macros if it is a copy, so that they can be
+     * modified directly. For use by editors.
+     */
+    public List<Macro> getEditableMacros() {
+        load();
+        own();
         return Collections.unmodifiableList(macros);
     }
     
     public void addMacro(Macro macro) {
+        load();
+        beforeEdit();
+        // Identified so that profiles can reference it
+        if (isLibrary() && macro.id == null) macro.id = newId();
+        macrosById = null;
         macros.add(macro);
         addToMaps(macro);
+        dirty = true;
+        journal("addMacro", (record) -> record.add("body", MACRO_ADAPTER.toJsonTree(macro)));
     }
 
     /**
@@ -221,182 +863,1032 @@ public class Profile {
      * @param destIndex the desired final index of the element.
      */
     public void moveMacro(int sourceIndex, int destIndex) {
+        load();
         if (sourceIndex != destIndex) {
-            macros.add(destIndex, macros.remove(sourceIndex));
-            rebuildMaps();
+            beforeEdit();
+            Macro macro = macros.remove(sourceIndex);
+            macros.add(destIndex, macro);
+            moveInMaps(macro);
+            dirty = true;
+            journal("moveMacro", (record) -> {
+                record.addProperty("from", sourceIndex);
+                record.addProperty("to", destIndex);
+            });
         }
     }
     
     public void removeMacro(Macro macro) {
-        macros.remove(macro);
-        rebuildMaps();
+        load();
+        int index = indexOf(macro);
+        if (index >= 0) {
+            macro = beforeEdit(macro);
+            removeFromMaps(macro);
+            macros.remove(index);
+            macrosById = null;
+            dirty = true;
+            journal("removeMacro", (record) -> record.addProperty("index", index));
+        }
+    }
+
+    /**
+     * Applies several edits to this profile as one transaction. The maps are
+     * not updated by each edit, but rebuilt once when next used after the
+     * transaction, so that adding, moving or rebinding many macros takes
+     * linear time. Transactions may be nested.
+     * @param edits the edits, made using the methods of this profile.
+     */
+    public void edit(Consumer<Profile> edits) {
+        load();
+        beforeEdit();
+        editDepth++;
+        try {
+            edits.accept(this);
+        } finally {
+            if (--editDepth == 0 && editInvalidated) {
+                editInvalidated = false;
+                invalidateMaps();
+            }
+        }
     }
     
     // Macro map management
 
+    /**
+     * @return the keybinds of the macros, including inherited macros, by key.
+     * Must not be modified.
+     */
+    public Multimap<InputConstants.Key, Keybind> getKeybindMap() {
+        updateMaps();
+        return keybindMap;
+    }
+
+    /**
+     * @return the macros, including inherited macros, by keybind. Must not be
+     * modified.
+     */
+    public Multimap<Keybind, Macro> getMacroMap() {
+        updateMaps();
+        return macroMap;
+    }
+
+    private void updateMaps() {
+        load();
+        if (mapsStale || library != null && libraryVersion != library.mapsVersion) {
+            rebuildMaps();
+        }
+    }
+
+    /**
+     * @return the distinct macros in the maps, including inherited and
+     * referenced macros, which are those that can be activated while this
+     * profile is active. Must not be modified.
+     */
+    public Collection<Macro> getBoundMacros() {
+        updateMaps();
+        return boundMacros;
+    }
+
     /**
      * Adds the keybind key and, if appropriate, the alternate keybind key of 
      * {@code macro} to {@link Profile#keybindMap}, and adds the macro to
-     * {@link Profile#macroMap}. 
+     * {@link Profile#macroMap}, unless they are to be rebuilt anyway. The
+     * maps of inheriting profiles are updated in the same way.
      */
     public void addToMaps(Macro macro) {
-        keybindMap.put(macro.keybind.getKey(), macro.keybind);
-        macroMap.put(macro.keybind, macro);
-        if (macro.usesAltKeybind()) {
-            keybindMap.put(macro.altKeybind.getKey(), macro.altKeybind);
-            macroMap.put(macro.altKeybind, macro);
+        // The owner of shared macros is the source
+        if (macroSource == null) macro.owner = this;
+        if (mapsStale) return;
+        putOwn(macro.keybind, macro);
+        if (macro.usesAltKeybind()) putOwn(macro.altKeybind, macro);
+    }
+
+    /**
+     * Adds an entry for a macro of this profile. If the key is bound by an
+     * inherited macro, which may now be overridden, the maps are rebuilt
+     * instead.
+     */
+    private void putOwn(Keybind keybind, Macro macro) {
+        if (mapsStale) return;
+        if (parent != null) {
+            for (Keybind bound : keybindMap.get(keybind.getKey())) {
+                if (!isOwn(bound)) {
+                    invalidateMaps();
+                    return;
+                }
+            }
+        }
+        put(keybind, macro);
+    }
+
+    /**
+     * Adds an entry for a macro inherited from the parent, unless overridden
+     * by a macro of this profile. If the key is already bound, the maps are
+     * rebuilt instead, so that the entries keep the order of a full rebuild.
+     */
+    private void inherit(Keybind keybind, Macro macro) {
+        if (mapsStale || isOwn(keybind)) return;
+        if (keybindMap.containsKey(keybind.getKey())) {
+            invalidateMaps();
+            return;
+        }
+        put(keybind, macro);
+    }
+
+    private void put(Keybind keybind, Macro macro) {
+        keybindMap.put(keybind.getKey(), keybind);
+        macroMap.put(keybind, macro);
+        boundMacros.add(macro);
+        for (Profile child : children) child.inherit(keybind, macro);
+    }
+
+    /**
+     * @return {@code true} if {@code keybind} is bound by a macro of this
+     * profile or a library macro it references, rather than an inherited
+     * macro, {@code false} otherwise.
+     */
+    private boolean isOwn(Keybind keybind) {
+        Collection<Macro> bound = macroMap.get(keybind);
+        if (bound.isEmpty()) return false;
+        Macro first = bound.iterator().next();
+        return first.owner == (macroSource != null ? macroSource : this)
+                || refMacros.contains(first);
+    }
+
+    /**
+     * Removes the entries of {@code macro}, a macro of this profile, before
+     * its keybinds or send mode are modified or it is removed, unless the
+     * maps are to be rebuilt anyway. If an inherited macro may no longer be
+     * overridden, the maps are rebuilt instead, and those of any inheriting
+     * profiles holding the entries.
+     */
+    private void removeFromMaps(Macro macro) {
+        if (mapsStale) return;
+        if (editDepth > 0) {
+            invalidateMaps();
+            return;
         }
+        removeOwn(macro.keybind, macro);
+        if (macro.usesAltKeybind()) removeOwn(macro.altKeybind, macro);
+        boundMacros.remove(macro);
+        mapsVersion++;
+    }
+
+    private void removeOwn(Keybind keybind, Macro macro) {
+        if (mapsStale || !macroMap.remove(keybind, macro)) return;
+        for (Profile child : children) {
+            if (!child.mapsStale && child.macroMap.containsEntry(keybind, macro)) {
+                child.invalidateMaps();
+            }
+        }
+        if (macroMap.containsKey(keybind)) return;
+        keybindMap.remove(keybind.getKey(), keybind);
+        if (parent != null && parent.macroMap.containsKey(keybind)) invalidateMaps();
+    }
+
+    /**
+     * Adds the entries of {@code macro}, a macro of this profile, after its
+     * keybinds or send mode are modified, see {@link Profile#removeFromMaps}.
+     * If a key is already bound, the maps are rebuilt instead, so that the
+     * entries keep the order of the macro list.
+     */
+    private void readdToMaps(Macro macro) {
+        if (mapsStale) return;
+        if (keybindMap.containsKey(macro.keybind.getKey()) || macro.usesAltKeybind()
+                && keybindMap.containsKey(macro.altKeybind.getKey())) {
+            invalidateMaps();
+            return;
+        }
+        addToMaps(macro);
+        mapsVersion++;
+    }
+
+    /**
+     * Keeps the maps in order after {@code macro}, a macro of this profile,
+     * is moved within the macro list. The maps are only rebuilt if a key of
+     * the macro is shared with another keybind or macro.
+     */
+    private void moveInMaps(Macro macro) {
+        if (mapsStale) return;
+        if (isShared(macro.keybind) || macro.usesAltKeybind() && isShared(macro.altKeybind)) {
+            invalidateMaps();
+        }
+    }
+
+    private boolean isShared(Keybind keybind) {
+        return keybindMap.get(keybind.getKey()).size() > 1 || macroMap.get(keybind).size() > 1;
     }
 
     /**
      * Clears and repopulates {@link Profile#keybindMap} and 
-     * {@link Profile#macroMap}.
+     * {@link Profile#macroMap}, with the macros of this profile, followed by
+     * the library macros it references, followed by those of the parent which
+     * are not overridden.
      */
     public void rebuildMaps() {
+        // Built first, while the entries it adds are ignored by this profile
+        Multimap<Keybind, Macro> inherited = parent != null ? parent.getMacroMap() : null;
         keybindMap.clear();
         macroMap.clear();
+        boundMacros.clear();
+        refMacros.clear();
+        mapsStale = false;
         for (Macro macro : macros) {
             addToMaps(macro);
         }
+        if (library != null) {
+            for (MacroRef ref : macroRefs) {
+                Macro macro = library.findMacro(ref.getMacroId());
+                // Removed from the library
+                if (macro == null) continue;
+                refMacros.add(macro);
+                put(ref.keybindOf(macro), macro);
+                if (macro.usesAltKeybind()) put(macro.altKeybind, macro);
+            }
+            // Read after finding the macros, which may load the library
+            libraryVersion = library.mapsVersion;
+        }
+        if (inherited != null) {
+            for (Map.Entry<Keybind, Macro> entry : inherited.entries()) {
+                Keybind keybind = entry.getKey();
+                if (isOwn(keybind)) continue;
+                keybindMap.put(keybind.getKey(), keybind);
+                macroMap.put(keybind, entry.getValue());
+                boundMacros.add(entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * Marks {@link Profile#keybindMap} and {@link Profile#macroMap}, and those
+     * of inheriting profiles, to be rebuilt when next used.
+     */
+    private void invalidateMaps() {
+        mapsStale = true;
+        macrosById = null;
+        // Completed when the transaction ends, see edit
+        if (editDepth > 0) {
+            editInvalidated = true;
+            return;
+        }
+        mapsVersion++;
+        // The owner of shared macros is the source
+        if (macroSource == null) for (Macro macro : macros) macro.owner = this;
+        for (Profile child : children) child.invalidateMaps();
+    }
+    
+    // Copy-on-write
+
+    /**
+     * Prepares the macro list and macros of this profile to be modified, see
+     * {@link Profile#own} and {@link Profile#releaseCopies}.
+     */
+    void beforeEdit() {
+        own();
+        releaseCopies();
+    }
+
+    /**
+     * As {@link Profile#beforeEdit}, before {@code macro} is modified.
+     * @return the macro to modify, which replaces {@code macro} if it was
+     * shared with the profile this profile was copied from.
+     */
+    private Macro beforeEdit(Macro macro) {
+        int index = macroSource != null ? indexOf(macro) : -1;
+        beforeEdit();
+        return index >= 0 ? macros.get(index) : macro;
+    }
+
+    /**
+     * @return the index of {@code macro} in the macro list, by identity, or
+     * {@code -1} if not present.
+     */
+    private int indexOf(Macro macro) {
+        for (int i = 0; i < macros.size(); i++) {
+            if (macros.get(i) == macro) return i;
+        }
+        return -1;
+    }
+
+    /**
+     * If this profile is a copy sharing the macro list of another profile,
+     * replaces the list with its own. The macros are replaced with copies
+     * sharing only their messages, see {@link Macro#Macro(Macro)}.
+     */
+    private void own() {
+        if (macroSource == null) return;
+        List<Macro> owned = new ArrayList<>(macros.size());
+        for (Macro macro : macros) owned.add(new Macro(macro));
+        macroSource.copies.remove(this);
+        macroSource = null;
+        macros = owned;
+        invalidateMaps();
+    }
+
+    /**
+     * Gives any copies sharing the macro list of this profile their own, so
+     * that it can be modified.
+     */
+    private void releaseCopies() {
+        if (copies.isEmpty()) return;
+        for (Profile copy : List.copyOf(copies)) copy.own();
+    }
+
+    /**
+     * Stops sharing the macro list of another profile, before this profile is
+     * removed from the config.
+     */
+    void unshare() {
+        if (macroSource == null) return;
+        macroSource.copies.remove(this);
     }
     
     // Macro editing
     
     public void setSendMode(Macro macro, Macro.SendMode sendMode) {
         if (sendMode.equals(macro.sendMode)) return;
+        macro = beforeEdit(macro);
         macro.clearScheduled();
+        // The alternate keybind is only bound in some modes
+        removeFromMaps(macro);
         macro.sendMode = sendMode;
-        rebuildMaps();
+        readdToMaps(macro);
+        macroChanged(macro);
     }
     
     public void setConflictStrategy(Macro macro, Macro.ConflictStrategy conflictStrategy) {
         if (conflictStrategy.equals(macro.conflictStrategy)) return;
+        macro = beforeEdit(macro);
         macro.clearScheduled();
         macro.conflictStrategy = conflictStrategy;
+        macroChanged(macro);
     }
     
     public void setKey(Macro macro, Keybind keybind, InputConstants.Key key) {
         if (key.equals(keybind.getKey())) return;
         if (keybind == macro.keybind || keybind == macro.altKeybind) {
+            boolean alt = keybind == macro.altKeybind;
+            macro = beforeEdit(macro);
+            keybind = alt ? macro.altKeybind : macro.keybind;
             macro.clearScheduled();
+            // Removed first, as the keybind is a key of the map
+            removeFromMaps(macro);
             keybind.setKey(key);
-            rebuildMaps();
+            readdToMaps(macro);
+            macroChanged(macro);
         }
     }
 
     public void setLimitKey(Macro macro, Keybind keybind, InputConstants.Key key) {
         if (key.equals(keybind.getLimitKey())) return;
         if (keybind == macro.keybind || keybind == macro.altKeybind) {
+            boolean alt = keybind == macro.altKeybind;
+            macro = beforeEdit(macro);
+            keybind = alt ? macro.altKeybind : macro.keybind;
             macro.clearScheduled();
+            // Removed first, as the keybind is a key of the map
+            removeFromMaps(macro);
             keybind.setLimitKey(key);
-            rebuildMaps();
+            readdToMaps(macro);
+            macroChanged(macro);
         }
     }
     
     public void setAddToHistory(Macro macro, boolean value) {
+        boolean changed = value != macro.addToHistory;
+        if (changed) macro = beforeEdit(macro);
         macro.addToHistory = value;
-        macro.addToHistoryStatus = switch(this.addToHistory) {
-            case ON -> true;
-            case OFF -> false;
-            case DEFER -> macro.addToHistory;
-        };
+        if (changed) macroChanged(macro);
     }
 
     public void setShowHudMessage(Macro macro, boolean value) {
+        boolean changed = value != macro.showHudMessage;
+        if (changed) macro = beforeEdit(macro);
         macro.showHudMessage = value;
-        macro.showHudMessageStatus = switch(this.showHudMessage) {
-            case ON -> true;
-            case OFF -> false;
-            case DEFER -> macro.showHudMessage;
-        };
+        if (changed) macroChanged(macro);
     }
 
     public void setResumeRepeating(Macro macro, boolean value) {
+        boolean changed = value != macro.resumeRepeating;
+        if (changed) macro = beforeEdit(macro);
         macro.resumeRepeating = value;
-        macro.resumeRepeatingStatus = switch(this.resumeRepeating) {
-            case ON -> true;
-            case OFF -> false;
-            case DEFER -> macro.resumeRepeating;
-        };
+        if (changed) macroChanged(macro);
     }
 
     public void setUseRatelimit(Macro macro, boolean value) {
+        boolean changed = value != macro.useRatelimit;
+        if (changed) macro = beforeEdit(macro);
         macro.useRatelimit = value;
-        macro.useRatelimitStatus = switch(this.useRatelimit) {
-            case ON -> true;
-            case OFF -> false;
-            case DEFER -> macro.useRatelimit;
-        };
+        if (changed) macroChanged(macro);
+    }
+
+    /**
+     * Marks {@code macro} as modified, to be recorded in the journal by
+     * {@link Profile#commitEdits}.
+     */
+    void macroChanged(Macro macro) {
+        macro.dirty = true;
+        macro.journalPending = true;
+        macrosPending = true;
+    }
+
+    /**
+     * Records the edits to the header and macros of this profile not yet
+     * recorded in the journal, see {@link Config#commitEdits}. Edits which may
+     * be made on every keystroke, such as to the name or a message, are
+     * recorded once editing is done rather than as they are made. Each
+     * modified macro is recorded once, with its state and index as of now.
+     */
+    public void commitEdits() {
+        if (headerPending) {
+            headerPending = false;
+            journalHeader();
+        }
+        if (!macrosPending) return;
+        macrosPending = false;
+        for (int i = 0; i < macros.size(); i++) {
+            Macro macro = macros.get(i);
+            if (!macro.journalPending) continue;
+            macro.journalPending = false;
+            int index = i;
+            journal("macro", (record) -> {
+                record.addProperty("index", index);
+                record.add("body", MACRO_ADAPTER.toJsonTree(macro));
+            });
+        }
     }
 
     // Cleanup and validation
 
     void cleanup() {
-        macros.removeIf((macro) -> {
+        // Cleaned up before last saved, or with the source
+        if (loader != null || macroSource != null) {
+            commitEdits();
+            return;
+        }
+        for (Macro macro : macros) {
+            // Added to the library by editing its file
+            if (isLibrary() && macro.id == null) {
+                macro.id = newId();
+                macrosById = null;
+                macroChanged(macro);
+            }
             // Allow trailing whitespace only for TYPE mode
             if (!macro.sendMode.equals(Macro.SendMode.TYPE)) {
-                macro.messages.forEach((msg) -> msg.string = msg.string.stripTrailing());
+                for (int i = 0; i < macro.messages.size(); i++) {
+                    macro.setMessage(i, macro.messages.get(i).string.stripTrailing());
+                }
             }
+            if (macro.dirty) macro.internMessages();
             // Allow blank messages for CYCLE mode as spacers and TYPE mode to open chat
             if (!macro.sendMode.equals(Macro.SendMode.CYCLE) && 
                     !macro.sendMode.equals(Macro.SendMode.TYPE)) {
-                macro.messages.removeIf((msg) -> msg.string.isBlank());
+                if (macro.removeBlankMessages()) macroChanged(macro);
+            }
+        }
+        // Before any removal, while the indices recorded are current
+        commitEdits();
+        // Compacted in one pass, journaling each removal with the index of the
+        // macro at the time of its removal, which is the number kept so far
+        int kept = 0;
+        for (int i = 0; i < macros.size(); i++) {
+            Macro macro = macros.get(i);
+            if (macro.messages.isEmpty()) {
+                // Before the list is first modified
+                if (kept == i) releaseCopies();
+                int removed = kept;
+                journal("removeMacro", (record) -> record.addProperty("index", removed));
+            } else {
+                if (kept != i) macros.set(kept, macro);
+                kept++;
             }
-            // Update transients in macros
-            setAddToHistory(addToHistory);
-            setShowHudMessage(showHudMessage);
-            setResumeRepeating(resumeRepeating);
-            setUseRatelimit(useRatelimit);
-            return macro.messages.isEmpty();
+        }
+        if (kept < macros.size()) {
+            macros.subList(kept, macros.size()).clear();
+            dirty = true;
+            invalidateMaps();
+        }
+    }
+
+    // Loading
+
+    /**
+     * Source of the behavior controls and macros of a profile.
+     */
+    interface Loader {
+        /**
+         * @return a detached profile holding the behavior controls and macros
+         * of the profile {@code id}, which is marked as modified if it was
+         * upgraded from an earlier version. Safe to call off the client
+         * thread.
+         */
+        Profile read(String id) throws IOException;
+    }
+
+    /**
+     * Reads the profile file at {@code file}.
+     */
+    record FileLoader(Path file) implements Loader {
+        @Override
+        public Profile read(String id) throws IOException {
+            return Config.readProfile(file, id);
+        }
+    }
+
+    /**
+     * Reads a section of a {@link ConfigSnapshot} payload, as written by
+     * {@link Profile#writeSnapshotBody}.
+     */
+    record SnapshotLoader(byte[] body) implements Loader {
+        @Override
+        public Profile read(String id) {
+            Profile source = new Profile(id, "", new ArrayList<>(),
+                    addToHistoryDefault, showHudMessageDefault, resumeRepeatingDefault,
+                    useRatelimitDefault, new ArrayList<>());
+            source.readSnapshotBody(ByteBuffer.wrap(body));
+            return source;
+        }
+    }
+
+    /**
+     * @return {@code true} if the behavior controls and macros have been
+     * loaded, {@code false} otherwise.
+     */
+    public boolean isLoaded() {
+        return loader == null;
+    }
+
+    /**
+     * Loads the behavior controls and macros, if not already loaded. If
+     * loading fails the profile is left empty.
+     */
+    void load() {
+        if (loader == null) return;
+        Loader loader = this.loader;
+        CompletableFuture<Profile> prewarmed = this.prewarmed;
+        this.loader = null;
+        this.prewarmed = null;
+        try {
+            Profile source = prewarmed != null ? prewarmed.join() : loader.read(id);
+            addToHistory = source.addToHistory;
+            showHudMessage = source.showHudMessage;
+            resumeRepeating = source.resumeRepeating;
+            useRatelimit = source.useRatelimit;
+            macros = source.macros;
+            macroRefs = source.macroRefs;
+            journalSeq = source.journalSeq;
+            // Upgraded from an earlier version
+            if (source.dirty) markDirty();
+            else if (loader instanceof SnapshotLoader snapshotLoader) {
+                snapshotBody = snapshotLoader.body();
+            }
+        } catch (Exception e) {
+            CommandKeys.LOG.error("Unable to load profile {}", getDisplayName(),
+                    e instanceof CompletionException ? e.getCause() : e);
+            loadFailed = true;
+        }
+        invalidateMaps();
+    }
+
+    /**
+     * Prepares the profile to be used, so that the first key press after it
+     * is activated does no more work than any other.
+     *
+     * <p>If not yet loaded, the behavior controls and macros are read on
+     * {@code executor}, along with the regex patterns of their placeholders,
+     * then published to this profile on the client thread. The macro maps are
+     * then built on the client thread, as keys can only be resolved there,
+     * see {@link Keybind}. If the profile is required before then, it waits
+     * for the read to finish rather than reading again.</p>
+     */
+    void prewarm(Executor executor) {
+        if (loader == null) {
+            updateMaps();
+            return;
+        }
+        if (prewarmed != null) return;
+        Loader loader = this.loader;
+        CompletableFuture<Profile> future = CompletableFuture.supplyAsync(() -> {
+            try {
+                Profile source = loader.read(id);
+                for (Macro macro : source.macros) {
+                    for (Message message : macro.messages) PlaceholderUtil.prewarm(message.string);
+                }
+                return source;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, executor);
+        prewarmed = future;
+        future.whenComplete((source, e) -> CommandKeys.context().execute(() -> {
+            // Unless the source was replaced meanwhile, see applyExternalChanges
+            if (prewarmed == future || this.loader == null) updateMaps();
+        }));
+    }
+
+    // External changes
+
+    /**
+     * Replaces the name and links without marking the profile as modified.
+     * {@link Profile#LINK_PROFILE_MAP} must be rebuilt afterward.
+     */
+    void setHeader(String name, List<String> links) {
+        this.name = name;
+        this.links.clear();
+        this.links.addAll(links);
+    }
+
+    /**
+     * Sets the name and links of a profile read without them, adding any
+     * links not already claimed to {@link Profile#LINK_PROFILE_MAP}.
+     */
+    void initHeader(String name, List<String> links) {
+        this.name = name;
+        this.links.addAll(links);
+        this.links.removeIf((link) -> LINK_PROFILE_MAP.putIfAbsent(link, this) != null);
+        linkMatcher = null;
+    }
+
+    /**
+     * Clears and repopulates {@link Profile#LINK_PROFILE_MAP}, removing any
+     * link already claimed by an earlier profile.
+     */
+    static void rebuildLinkMap(List<Profile> profiles) {
+        LINK_PROFILE_MAP.clear();
+        for (Profile profile : profiles) {
+            profile.links.removeIf((link) -> LINK_PROFILE_MAP.putIfAbsent(link, profile) != null);
+        }
+        linkMatcher = null;
+    }
+
+    /**
+     * Applies the contents of the profile file, after it was modified by
+     * another program. Macros which are unchanged keep their scheduled
+     * messages and cycle position, and the macro maps are only rebuilt if the
+     * macro list changed.
+     */
+    void applyExternalChanges(JsonObject json, Path file) {
+        if (loader != null) {
+            // Read the modified file when loaded, rather than a snapshot
+            loader = new FileLoader(file);
+            prewarmed = null;
+            return;
+        }
+        beforeEdit();
+        snapshotBody = null;
+        ConfigMigrator.migrateProfile(json);
+        Profile source = new Adapter().fromJsonTree(json);
+        if (!source.id.equals(id)) throw new JsonParseException(
+                "Expected profile " + id + " in " + file + ", got " + source.id);
+
+        // Match unchanged macros by their serialized form
+        Macro.Adapter macroAdapter = new Macro.Adapter();
+        Map<JsonElement, Deque<Macro>> unchanged = new HashMap<>();
+        for (Macro macro : macros) {
+            unchanged.computeIfAbsent(macroAdapter.toJsonTree(macro),
+                    (key) -> new ArrayDeque<>()).add(macro);
+        }
+        List<Macro> updated = new ArrayList<>(source.macros.size());
+        for (Macro macro : source.macros) {
+            Deque<Macro> matches = unchanged.get(macroAdapter.toJsonTree(macro));
+            updated.add(matches != null && !matches.isEmpty() ? matches.poll() : macro);
+        }
+        // Stop any macros which were modified or removed
+        unchanged.values().forEach((matches) -> matches.forEach(Macro::clearScheduled));
+
+        addToHistory = source.addToHistory;
+        showHudMessage = source.showHudMessage;
+        resumeRepeating = source.resumeRepeating;
+        useRatelimit = source.useRatelimit;
+        if (!updated.equals(macros)) {
+            macros.clear();
+            macros.addAll(updated);
+            invalidateMaps();
+        }
+        if (!refsJson(source.macroRefs).equals(refsJson(macroRefs))) {
+            macroRefs = source.macroRefs;
+            invalidateMaps();
+        }
+    }
+
+    private static JsonArray refsJson(List<MacroRef> refs) {
+        JsonArray array = new JsonArray();
+        for (MacroRef ref : refs) array.add(REF_ADAPTER.toJsonTree(ref));
+        return array;
+    }
+
+    // Journal
+
+    /**
+     * Appends a record of an edit to this profile to the journal, if open.
+     */
+    private void journal(String op, Consumer<JsonObject> fields) {
+        Config.journal(op, (record) -> {
+            record.addProperty("profile", id);
+            fields.accept(record);
         });
     }
 
-    // Deserialization
+    /**
+     * Applies a record of an edit to this profile, see {@link Config#replay}.
+     */
+    void replay(String op, JsonObject record) {
+        load();
+        // Already included if the profile file was written by a save which
+        // did not reach the index. The header is stored in the index.
+        if (!op.equals("header")
+                && Config.required(record.get("seq"), "seq").getAsLong() <= journalSeq) return;
+        beforeEdit();
+        switch (op) {
+            case "header" -> {
+                setName(Config.required(record.get("name"), "name").getAsString());
+                List<String> links = new ArrayList<>();
+                for (JsonElement link : Config.required(record.getAsJsonArray("links"), "links")) {
+                    links.add(link.getAsString());
+                }
+                for (String link : List.copyOf(this.links)) {
+                    if (!links.contains(link)) removeLink(link);
+                }
+                for (String link : links) {
+                    if (!this.links.contains(link)) forceAddLink(link);
+                }
+                setDimensions(Config.optionalStrings(record, "dimensions"));
+                setSignals(Config.optionalStrings(record, "signals"));
+            }
+            case "controls" -> {
+                setAddToHistory(replayControl(record, "addToHistory"));
+                setShowHudMessage(replayControl(record, "showHudMessage"));
+                setResumeRepeating(replayControl(record, "resumeRepeating"));
+                setUseRatelimit(replayControl(record, "useRatelimit"));
+            }
+            case "addMacro" -> addMacro(readMacro(record));
+            case "moveMacro" -> moveMacro(
+                    Config.required(record.get("from"), "from").getAsInt(),
+                    Config.required(record.get("to"), "to").getAsInt());
+            case "removeMacro" -> removeMacro(macros.get(
+                    Config.required(record.get("index"), "index").getAsInt()));
+            case "macro" -> {
+                int index = Config.required(record.get("index"), "index").getAsInt();
+                Macro macro = readMacro(record);
+                macros.get(index).clearScheduled();
+                macros.set(index, macro);
+                invalidateMaps();
+                macro.dirty = true;
+            }
+            case "message" -> {
+                Macro macro = macros.get(
+                        Config.required(record.get("macro"), "macro").getAsInt());
+                int index = Config.required(record.get("index"), "index").getAsInt();
+                macro.setMessage(index,
+                        Config.required(record.get("string"), "string").getAsString());
+                macro.setMessageDelay(index,
+                        Config.required(record.get("delayTicks"), "delayTicks").getAsInt());
+            }
+            case "addRef" -> addMacroRef(readRef(record));
+            case "removeRef" -> removeMacroRef(macroRefs.get(
+                    Config.required(record.get("index"), "index").getAsInt()));
+            case "ref" -> {
+                MacroRef ref = macroRefs.get(
+                        Config.required(record.get("index"), "index").getAsInt());
+                setMacroRefKeybind(ref, readRef(record).getKeybind());
+            }
+            default -> throw new JsonParseException("Unknown journal operation " + op);
+        }
+    }
+
+    private static MacroRef readRef(JsonObject record) {
+        return REF_ADAPTER.fromJsonTree(Config.required(record.getAsJsonObject("body"), "body"));
+    }
+
+    private static Macro readMacro(JsonObject record) {
+        JsonObject body = Config.required(record.getAsJsonObject("body"), "body");
+        ConfigMigrator.migrateMacro(body);
+        return MACRO_ADAPTER.fromJsonTree(body);
+    }
+
+    private static Control replayControl(JsonObject record, String name) {
+        return Control.valueOf(Config.required(record.get(name), name).getAsString());
+    }
+
+    // Dirty tracking
+
+    /**
+     * @return {@code true} if the behavior controls, macro list or any macro
+     * have been modified since last saved, {@code false} otherwise.
+     */
+    public boolean isDirty() {
+        if (dirty) return true;
+        // Shared macros are tracked by the source
+        if (macroSource != null) return false;
+        for (Macro macro : macros) {
+            if (macro.dirty) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Marks this profile as modified, so that it will be written on the next
+     * save.
+     */
+    public void markDirty() {
+        dirty = true;
+    }
+
+    void clearDirty() {
+        dirty = false;
+        snapshotBody = null;
+        if (macroSource == null) for (Macro macro : macros) macro.dirty = false;
+    }
+
+    // Snapshot serialization
+
+    /**
+     * Writes the header, followed by the length-prefixed body so that it can
+     * be read later by a {@link SnapshotLoader}. The body of a profile not yet
+     * loaded from a snapshot is copied as-is. A profile not yet loaded from
+     * its profile file is written with a length of {@code -1} instead, so
+     * that it is read from that file when loaded. The body of a loaded
+     * profile is reused from the last snapshot if it has not been modified
+     * since.
+     */
+    void writeSnapshot(DataOutput out) throws IOException {
+        ConfigSnapshot.writeString(out, id);
+        ConfigSnapshot.writeString(out, name);
+        out.writeInt(links.size());
+        for (String link : links) ConfigSnapshot.writeString(out, link);
+        out.writeInt(dimensions.size());
+        for (String dimension : dimensions) ConfigSnapshot.writeString(out, dimension);
+        out.writeInt(signals.size());
+        for (String signal : signals) ConfigSnapshot.writeString(out, signal);
+        byte[] body;
+        if (loader instanceof SnapshotLoader snapshotLoader) {
+            body = snapshotLoader.body();
+        } else if (loader instanceof FileLoader) {
+            // Not read here, the snapshot is usually taken on the client thread
+            out.writeInt(-1);
+            return;
+        } else if (snapshotBody != null && !isDirty()) {
+            body = snapshotBody;
+        } else {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            writeSnapshotBody(new DataOutputStream(bytes));
+            body = bytes.toByteArray();
+            // A shared macro list can be modified via the source
+            if (macroSource == null) snapshotBody = body;
+        }
+        out.writeInt(body.length);
+        out.write(body);
+    }
+
+    private void writeSnapshotBody(DataOutput out) throws IOException {
+        out.writeByte(addToHistory.ordinal());
+        out.writeByte(showHudMessage.ordinal());
+        out.writeByte(resumeRepeating.ordinal());
+        out.writeByte(useRatelimit.ordinal());
+        out.writeInt(macros.size());
+        for (Macro macro : macros) macro.writeSnapshot(out);
+        out.writeInt(macroRefs.size());
+        for (MacroRef ref : macroRefs) ref.writeSnapshot(out);
+    }
+
+    /**
+     * Reads the header, keeping a copy of the body to be read on load.
+     * @param profileDir the directory of the profile files, from which a
+     *                   profile written without a body is read on load.
+     */
+    static Profile readSnapshot(ByteBuffer in, Path profileDir) {
+        String id = ConfigSnapshot.readString(in);
+        String name = ConfigSnapshot.readString(in);
+        int linkCount = in.getInt();
+        List<String> links = new ArrayList<>(linkCount);
+        for (int i = 0; i < linkCount; i++) links.add(ConfigSnapshot.readString(in));
+        int dimensionCount = in.getInt();
+        List<String> dimensions = new ArrayList<>(dimensionCount);
+        for (int i = 0; i < dimensionCount; i++) dimensions.add(ConfigSnapshot.readString(in));
+        int signalCount = in.getInt();
+        List<String> signals = new ArrayList<>(signalCount);
+        for (int i = 0; i < signalCount; i++) signals.add(ConfigSnapshot.readString(in));
+        int length = in.getInt();
+        Loader loader;
+        if (length < 0) {
+            // Unchanged since the snapshot was written, as checked by its stamp
+            loader = new FileLoader(Config.profileFile(profileDir, id));
+        } else {
+            byte[] body = new byte[length];
+            in.get(body);
+            loader = new SnapshotLoader(body);
+        }
+        Profile profile = unloaded(id, name, links, loader);
+        profile.linkDimensions(dimensions);
+        profile.linkSignals(signals);
+        return profile;
+    }
+
+    private void readSnapshotBody(ByteBuffer in) {
+        Control[] controls = Control.values();
+        addToHistory = controls[in.get()];
+        showHudMessage = controls[in.get()];
+        resumeRepeating = controls[in.get()];
+        useRatelimit = controls[in.get()];
+        int macroCount = in.getInt();
+        List<Macro> macros = new ArrayList<>(macroCount);
+        for (int i = 0; i < macroCount; i++) macros.add(Macro.readSnapshot(in));
+        this.macros = macros;
+        int refCount = in.getInt();
+        List<MacroRef> macroRefs = new ArrayList<>(refCount);
+        for (int i = 0; i < refCount; i++) macroRefs.add(MacroRef.readSnapshot(in));
+        this.macroRefs = macroRefs;
+    }
+
+    // Serialization
+
+    /**
+     * Writes the ID, behavior controls and macros of a profile, for its
+     * profile file, along with the sequence number of the last journal record
+     * it includes. The name and links are written by {@link Config.Adapter}.
+     */
+    public static class Adapter extends TypeAdapter<Profile> {
+        private final Macro.Adapter macroAdapter = new Macro.Adapter();
+        private final MacroRef.Adapter refAdapter = new MacroRef.Adapter();
 
-    public static class Deserializer implements JsonDeserializer<Profile> {
         @Override
-        public Profile deserialize(JsonElement json, Type typeOfT, JsonDeserializationContext ctx)
-                throws JsonParseException {
-            JsonObject obj = json.getAsJsonObject();
-            int version = obj.has("version") ? obj.get("version").getAsInt() : 0;
-
-            String name = obj.get("name").getAsString();
-            List<String> addresses = new ArrayList<>();
-            for (JsonElement je : obj.getAsJsonArray(version >= 3 ? "links" : "addresses")) {
-                addresses.add(je.getAsString());
+        public void write(JsonWriter out, Profile profile) throws IOException {
+            profile.load();
+            out.beginObject();
+            out.name("version").value(profile.version);
+            out.name("id").value(profile.id);
+            out.name("addToHistory").value(profile.addToHistory.name());
+            out.name("showHudMessage").value(profile.showHudMessage.name());
+            out.name("resumeRepeating").value(profile.resumeRepeating.name());
+            out.name("useRatelimit").value(profile.useRatelimit.name());
+            if (profile.journalSeq > 0) out.name("journalSeq").value(profile.journalSeq);
+            out.name("macros").beginArray();
+            for (Macro macro : profile.macros) macroAdapter.write(out, macro);
+            out.endArray();
+            if (!profile.macroRefs.isEmpty()) {
+                out.name("macroRefs").beginArray();
+                for (MacroRef ref : profile.macroRefs) refAdapter.write(out, ref);
+                out.endArray();
             }
-            Control addToHistory = version >= 2
-                    ? Control.valueOf(obj.get("addToHistory").getAsString())
-                    : addToHistoryDefault;
-            Control showHudMessage = version >= 2
-                    ? Control.valueOf(obj.get("showHudMessage").getAsString())
-                    : showHudMessageDefault;
-            Control resumeRepeating = version >= 4
-                    ? Control.valueOf(obj.get("resumeRepeating").getAsString())
-                    : resumeRepeatingDefault;
-            Control useRatelimit = version >= 4
-                    ? Control.valueOf(obj.get("useRatelimit").getAsString())
-                    : useRatelimitDefault;
-
-            // Deserialize CommandKey objects with link to deserialized Profile
-            List<Macro> macros = new ArrayList<>();
+            out.endObject();
+        }
 
-            Profile profile = new Profile(
-                    name,
-                    addresses,
-                    addToHistory,
-                    showHudMessage,
-                    resumeRepeating,
-                    useRatelimit,
-                    macros
-            );
-            for (JsonElement je : obj.getAsJsonArray(version >= 2 ? "macros" : "commandKeys")) {
-                macros.add(ctx.deserialize(je, Macro.class));
+        @Override
+        public Profile read(JsonReader in) throws IOException {
+            String id = null;
+            String addToHistory = null;
+            String showHudMessage = null;
+            String resumeRepeating = null;
+            String useRatelimit = null;
+            long journalSeq = 0;
+            List<Macro> macros = null;
+            List<MacroRef> macroRefs = new ArrayList<>();
+
+            in.beginObject();
+            ConfigMigrator.requireVersion(in, VERSION);
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "id" -> id = in.nextString();
+                    case "addToHistory" -> addToHistory = in.nextString();
+                    case "showHudMessage" -> showHudMessage = in.nextString();
+                    case "resumeRepeating" -> resumeRepeating = in.nextString();
+                    case "useRatelimit" -> useRatelimit = in.nextString();
+                    case "journalSeq" -> journalSeq = in.nextLong();
+                    case "macros" -> {
+                        macros = new ArrayList<>();
+                        in.beginArray();
+                        while (in.hasNext()) {
+                            Macro macro = ConfigReader.readOrSkip(in, macroAdapter::read, "macro");
+                            if (macro != null) macros.add(macro);
+                        }
+                        in.endArray();
+                    }
+                    case "macroRefs" -> {
+                        in.beginArray();
+                        while (in.hasNext()) {
+                            MacroRef ref = ConfigReader.readOrSkip(in, refAdapter::read, "macro reference");
+                            if (ref != null) macroRefs.add(ref);
+                        }
+                        in.endArray();
+                    }
+                    default -> in.skipValue();
+                }
             }
-            profile.rebuildMaps();
+            in.endObject();
 
-            // Validate
-            if (name == null) throw new JsonParseException("Profile Error: name == null");
+            // The name and links are stored in the index
+            Profile profile = new Profile(
+                    Config.required(id, "id"),
+                    "",
+                    new ArrayList<>(),
+                    Control.valueOf(Config.required(addToHistory, "addToHistory")),
+                    Control.valueOf(Config.required(showHudMessage, "showHudMessage")),
+                    Control.valueOf(Config.required(resumeRepeating, "resumeRepeating")),
+                    Control.valueOf(Config.required(useRatelimit, "useRatelimit")),
+                    Config.required(macros, "macros")
+            );
+            profile.macroRefs = macroRefs;
+            profile.journalSeq = journalSeq;
+            profile.invalidateMaps();
 
             return profile;
         }
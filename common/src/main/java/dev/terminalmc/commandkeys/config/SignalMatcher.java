@@ -0,0 +1,194 @@
+/*
+ * Copyright 2025 TerminalMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.terminalmc.commandkeys.config;
+
+import dev.terminalmc.commandkeys.CommandKeys;
+import dev.terminalmc.commandkeys.util.PlaceholderUtil;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Matches the text sent by a server, such as the tab-list header, against
+ * the signals of all profiles, see {@link Profile#setSignals}.
+ *
+ * <p>The signals are combined into a single pattern, an alternation of named
+ * groups, so that one matcher tries every signal at each position of the
+ * text. At each position the alternation reports the first matching signal in
+ * list order, so the first profile with a matching signal is the lowest found
+ * at any position. The text is scanned once, only continuing past a match if
+ * an earlier signal could still match later in the text.</p>
+ *
+ * <p>The signals are user-supplied, so the matcher reads the text via
+ * {@link PlaceholderUtil#withRegexBudget}. If matching is aborted for
+ * exceeding the budget, the error is logged and the matcher matches nothing
+ * until the signals are next compiled.</p>
+ */
+final class SignalMatcher {
+    private static final SignalMatcher EMPTY = new SignalMatcher(null, new Profile[0]);
+
+    private final @Nullable Pattern pattern;
+    /**
+     * The profile of each alternative, in order.
+     */
+    private final Profile[] profiles;
+    /**
+     * The number of the group of each alternative, which also counts any
+     * groups of the signals.
+     */
+    private final int[] groups;
+    /**
+     * Whether matching was aborted for exceeding the regex budget.
+     */
+    private boolean aborted;
+
+    private SignalMatcher(@Nullable Pattern pattern, Profile[] profiles) {
+        this.pattern = pattern;
+        this.profiles = profiles;
+        this.groups = new int[profiles.length];
+        if (pattern != null) {
+            for (int i = 0; i < groups.length; i++) groups[i] = pattern.namedGroups().get("s" + i);
+        }
+    }
+
+    /**
+     * Compiles the signals of {@code profiles}, skipping any which are blank
+     * or not valid regular expressions.
+     */
+    static SignalMatcher compile(List<Profile> profiles) {
+        StringBuilder regex = new StringBuilder();
+        List<Profile> groupProfiles = new ArrayList<>();
+        int groupCount = 0;
+        for (Profile profile : profiles) {
+            for (String signal : profile.getSignals()) {
+                if (!isValid(signal)) {
+                    if (!signal.isBlank()) CommandKeys.LOG.warn("Ignoring invalid signal {} of " +
+                            "profile {}", signal, profile.getDisplayName());
+                    continue;
+                }
+                if (!groupProfiles.isEmpty()) regex.append('|');
+                // The groups of the signal follow those before it and its own
+                regex.append("(?<s").append(groupProfiles.size()).append('>')
+                        .append(offsetBackreferences(signal, groupCount + 1)).append(')');
+                groupCount += 1 + Pattern.compile(signal).matcher("").groupCount();
+                groupProfiles.add(profile);
+            }
+        }
+        if (groupProfiles.isEmpty()) return EMPTY;
+        try {
+            return new SignalMatcher(Pattern.compile(regex.toString()),
+                    groupProfiles.toArray(new Profile[0]));
+        } catch (PatternSyntaxException e) {
+            // Signals valid alone may not be combined, as with repeated
+            // group names
+            CommandKeys.LOG.warn("Unable to combine signals, ignoring all", e);
+            return EMPTY;
+        }
+    }
+
+    /**
+     * @return {@code signal} with the group numbers of its numbered
+     * backreferences increased by {@code offset}, as its groups are numbered
+     * after {@code offset} others when combined. Each backreference is
+     * enclosed in a group, so that it is not extended by a following digit.
+     */
+    private static String offsetBackreferences(String signal, int offset) {
+        if (signal.indexOf('\\') < 0) return signal;
+        int signalGroups = Pattern.compile(signal).matcher("").groupCount();
+        StringBuilder result = new StringBuilder(signal.length() + 8);
+        int i = 0;
+        while (i < signal.length()) {
+            char c = signal.charAt(i++);
+            if (c != '\\' || i == signal.length()) {
+                result.append(c);
+                continue;
+            }
+            char next = signal.charAt(i++);
+            if (next == 'Q') {
+                // Quoted until the next \E, or the end
+                int end = signal.indexOf("\\E", i);
+                end = end < 0 ? signal.length() : end + 2;
+                result.append(signal, i - 2, end);
+                i = end;
+                continue;
+            }
+            if (next < '1' || next > '9') {
+                result.append(c).append(next);
+                continue;
+            }
+            // The longest number of an existing group, as parsed by Pattern
+            int group = next - '0';
+            while (i < signal.length() && signal.charAt(i) >= '0' && signal.charAt(i) <= '9') {
+                int longer = group * 10 + (signal.charAt(i) - '0');
+                if (longer > signalGroups) break;
+                group = longer;
+                i++;
+            }
+            result.append("(?:\\").append(group + offset).append(')');
+        }
+        return result.toString();
+    }
+
+    /**
+     * @return {@code true} if {@code signal} is a non-blank regular
+     * expression, {@code false} otherwise.
+     */
+    static boolean isValid(String signal) {
+        if (signal.isBlank()) return false;
+        try {
+            Pattern.compile(signal);
+            return true;
+        } catch (PatternSyntaxException e) {
+            // Reported by the caller
+            return false;
+        }
+    }
+
+    /**
+     * @return the first profile with a signal matching {@code text}, or
+     * {@code null} if there is none.
+     */
+    @Nullable Profile match(String text) {
+        if (pattern == null || aborted) return null;
+        Matcher matcher = pattern.matcher(PlaceholderUtil.withRegexBudget(text));
+        // The lowest alternative found so far
+        int first = profiles.length;
+        try {
+            int from = 0;
+            while (first > 0 && from <= text.length() && matcher.find(from)) {
+                for (int i = 0; i < first; i++) {
+                    if (matcher.start(groups[i]) >= 0) {
+                        first = i;
+                        break;
+                    }
+                }
+                // Signals may overlap, so the next match may start within this one
+                from = matcher.start() + 1;
+            }
+        } catch (PlaceholderUtil.RegexBudgetExceededException e) {
+            aborted = true;
+            CommandKeys.LOG.error("Signal matching aborted after exceeding the regex " +
+                    "budget, ignoring signals until modified");
+            return null;
+        }
+        return first < profiles.length ? profiles[first] : null;
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright 2025 TerminalMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.terminalmc.commandkeys.config;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Deduplicates the message strings and key names of a config, so that equal
+ * strings read from the config files or saved after an edit share one
+ * instance.
+ *
+ * <p>The pool belongs to the current config, and is replaced when the config
+ * is loaded by {@link Config#load()}, so that strings of a discarded config
+ * are not retained. Edited messages are only added when saved, see
+ * {@link Profile#cleanup}, so strings replaced by an edit are retained only
+ * until the pool is next replaced.</p>
+ */
+public final class StringPool {
+    private static volatile StringPool current = new StringPool();
+
+    private final Map<String, String> strings = new HashMap<>();
+    private long duplicates;
+    private long savedBytes;
+
+    private StringPool() {
+    }
+
+    /**
+     * @return the pooled instance equal to {@code string}, or
+     * {@code string} after adding it to the current pool.
+     */
+    static String intern(String string) {
+        return current.get(string);
+    }
+
+    /**
+     * Replaces the current pool with an empty one.
+     */
+    public static void reset() {
+        current = new StringPool();
+    }
+
+    /**
+     * @return a report of the duplicates found by the current pool.
+     */
+    public static Report report() {
+        return current.createReport();
+    }
+
+    private synchronized String get(String string) {
+        String pooled = strings.putIfAbsent(string, string);
+        if (pooled == null) return string;
+        if (pooled != string) {
+            duplicates++;
+            savedBytes += retainedBytes(string);
+        }
+        return pooled;
+    }
+
+    private synchronized Report createReport() {
+        long pooledBytes = 0;
+        for (String string : strings.keySet()) pooledBytes += retainedBytes(string);
+        return new Report(strings.size(), pooledBytes, duplicates, savedBytes);
+    }
+
+    /**
+     * @return the estimated size of {@code string} and its backing array, for
+     * a 64-bit JVM with compressed references and compact strings.
+     */
+    static long retainedBytes(String string) {
+        boolean latin1 = true;
+        for (int i = 0; i < string.length(); i++) {
+            if (string.charAt(i) > 0xFF) {
+                latin1 = false;
+                break;
+            }
+        }
+        long arrayBytes = 16L + (long) string.length() * (latin1 ? 1 : 2);
+        return 24 + ((arrayBytes + 7) & ~7L);
+    }
+
+    /**
+     * @param unique the number of pooled strings.
+     * @param pooledBytes the estimated size of the pooled strings.
+     * @param duplicates the number of strings replaced by a pooled instance.
+     * @param savedBytes the estimated size of the replaced strings, which are
+     *                   no longer retained.
+     */
+    public record Report(int unique, long pooledBytes, long duplicates, long savedBytes) {
+        @Override
+        public String toString() {
+            return String.format("%d unique strings (%.1f KiB), %d duplicates removed (%.1f KiB)",
+                    unique, pooledBytes / 1024.0, duplicates, savedBytes / 1024.0);
+        }
+    }
+}
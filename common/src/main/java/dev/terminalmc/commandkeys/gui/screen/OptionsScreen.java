@@ -118,7 +118,10 @@ public class OptionsScreen extends OptionsSubScreen {
 
     @Override
     public void onClose() {
+        // Commits the focused field, see MainOptionList
+        clearFocus();
         if (lastScreen instanceof OptionsScreen screen) {
+            Config.commitEdits();
             screen.reload(width, height);
         } else {
             Config.save();
@@ -35,6 +35,7 @@ public abstract class MacroBindList extends OptionList {
     protected @NotNull Profile profile;
     private @Nullable Macro macro;
     private @Nullable Keybind keybind;
+    private @Nullable MacroRef ref;
     private InputConstants.Key heldKey;
     private InputConstants.Key sendKey;
 
@@ -52,15 +53,40 @@ public abstract class MacroBindList extends OptionList {
                 "Specified keybind not used by specified macro.");
         this.macro = macro;
         this.keybind = keybind;
+        this.ref = null;
+    }
+
+    /**
+     * Selects {@code ref}, so that the next key press sets the keybind
+     * overriding that of the referenced library macro.
+     */
+    protected void setSelected(@NotNull MacroRef ref) {
+        if (!profile.getMacroRefs().contains(ref)) throw new IllegalArgumentException(
+                "Specified macro reference does not exist in profile.");
+        this.macro = null;
+        this.keybind = null;
+        this.ref = ref;
+    }
+
+    private boolean isBinding() {
+        return (macro != null && keybind != null) || ref != null;
+    }
+
+    private void bind(InputConstants.Key key, InputConstants.Key limitKey) {
+        if (ref != null) {
+            profile.setMacroRefKeybind(ref, new Keybind(key, limitKey));
+        } else if (macro != null && keybind != null) {
+            profile.setKey(macro, keybind, key);
+            profile.setLimitKey(macro, keybind, limitKey);
+        }
+        reload();
     }
 
     @Override
     public boolean keyPressed(InputConstants.Key key) {
-        if (macro != null && keybind != null) {
+        if (isBinding()) {
             if (key.getValue() == InputConstants.KEY_ESCAPE) {
-                profile.setKey(macro, keybind, InputConstants.UNKNOWN);
-                profile.setLimitKey(macro, keybind, InputConstants.UNKNOWN);
-                reload();
+                bind(InputConstants.UNKNOWN, InputConstants.UNKNOWN);
             }
             else {
                 if (heldKey == null) {
@@ -68,9 +94,7 @@ public abstract class MacroBindList extends OptionList {
                 }
                 else {
                     if (key != heldKey) {
-                        profile.setKey(macro, keybind, key);
-                        profile.setLimitKey(macro, keybind, heldKey);
-                        reload();
+                        bind(key, heldKey);
                     }
                     else {
                         return false;
@@ -88,17 +112,15 @@ public abstract class MacroBindList extends OptionList {
 
     @Override
     public boolean keyReleased(InputConstants.Key key) {
-        if (macro != null && keybind != null) {
+        if (isBinding()) {
             if (heldKey == key) {
-                profile.setKey(macro, keybind, key);
-                profile.setLimitKey(macro, keybind, InputConstants.UNKNOWN);
-                reload();
+                bind(key, InputConstants.UNKNOWN);
                 return true;
             }
         }
         else if (key.equals(sendKey)) {
             if (getSelected() == null && CommandKeys.inGame()) {
-                Collection<Keybind> keybinds = profile.keybindMap.get(key);
+                Collection<Keybind> keybinds = profile.getKeybindMap().get(key);
                 Keybind active1 = null;
                 Keybind active2 = null;
                 for (Keybind kb : keybinds) {
@@ -110,7 +132,7 @@ public abstract class MacroBindList extends OptionList {
                     }
                 }
                 if (active1 == null) active1 = active2;
-                Collection<Macro> macros = profile.macroMap.get(active1);
+                Collection<Macro> macros = profile.getMacroMap().get(active1);
                 if (!macros.isEmpty()) {
                     screen.onClose();
                     minecraft.setScreen(null);
@@ -17,8 +17,10 @@
 package dev.terminalmc.commandkeys.gui.widget.list;
 
 import com.mojang.blaze3d.platform.InputConstants;
+import dev.terminalmc.commandkeys.CommandKeys;
 import dev.terminalmc.commandkeys.config.*;
 import dev.terminalmc.commandkeys.util.KeybindUtil;
+import dev.terminalmc.commandkeys.util.PlaceholderUtil;
 import net.minecraft.ChatFormatting;
 import net.minecraft.client.Minecraft;
 import net.minecraft.client.gui.Font;
@@ -27,10 +29,13 @@ import net.minecraft.client.gui.components.*;
 import net.minecraft.network.chat.CommonComponents;
 import net.minecraft.network.chat.Component;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 
 import static dev.terminalmc.commandkeys.config.Macro.ConflictStrategy.*;
 import static dev.terminalmc.commandkeys.config.Macro.SendMode.*;
@@ -63,12 +68,14 @@ public class MacroOptionList extends MacroBindList {
         addEntry(new OptionList.Entry.TextEntry(entryX, entryWidth, entryHeight,
                 localized("option", "key.messages"), null, -1));
 
+        boolean inGame = CommandKeys.inGame();
         int i = 0;
         for (Message msg : macro.getMessages()) {
-            Entry msgEntry = new Entry.MessageEntry(dynEntryX, dynEntryWidth, entryHeight,
-                    this, macro, msg, i++);
+            Entry.MessageEntry msgEntry = new Entry.MessageEntry(dynEntryX, dynEntryWidth, 
+                    entryHeight, this, macro, msg, i++, inGame);
             addEntry(msgEntry);
             addEntry(new OptionList.Entry.SpaceEntry(msgEntry));
+            if (msgEntry.preview != null) addEntry(msgEntry.preview);
         }
         addEntry(new OptionList.Entry.ActionButtonEntry(entryX, entryWidth, entryHeight,
                 Component.literal("+"), null, -1,
@@ -183,7 +190,7 @@ public class MacroOptionList extends MacroBindList {
                                 CommonComponents.OPTION_ON.copy().withStyle(ChatFormatting.GREEN),
                                 CommonComponents.OPTION_OFF.copy().withStyle(ChatFormatting.RED))
                         .withInitialValue(hudActive
-                                ? macro.getShowHudMessage() : macro.showHudMessageStatus)
+                                ? macro.getShowHudMessage() : macro.getShowHudMessageStatus())
                         .withTooltip((status) -> Tooltip.create(
                                 localized("option", "macro.hud.tooltip")))
                         .create(movingX, 0, buttonWidth, height,
@@ -199,7 +206,7 @@ public class MacroOptionList extends MacroBindList {
                                 CommonComponents.OPTION_ON.copy().withStyle(ChatFormatting.GREEN),
                                 CommonComponents.OPTION_OFF.copy().withStyle(ChatFormatting.RED))
                         .withInitialValue(historyActive
-                                ? macro.getAddToHistory() : macro.addToHistoryStatus)
+                                ? macro.getAddToHistory() : macro.getAddToHistoryStatus())
                         .withTooltip((status) -> Tooltip.create(
                                 localized("option", "macro.history.tooltip")))
                         .create(movingX, 0, buttonWidth, height,
@@ -215,7 +222,7 @@ public class MacroOptionList extends MacroBindList {
                                 CommonComponents.OPTION_ON.copy().withStyle(ChatFormatting.GREEN),
                                 CommonComponents.OPTION_OFF.copy().withStyle(ChatFormatting.RED))
                         .withInitialValue(resumeActive
-                                ? macro.getResumeRepeating() : macro.resumeRepeatingStatus)
+                                ? macro.getResumeRepeating() : macro.getResumeRepeatingStatus())
                         .withTooltip((status) -> Tooltip.create(
                                 localized("option", "macro.resume.tooltip")))
                         .create(movingX, 0, buttonWidth, height,
@@ -231,7 +238,7 @@ public class MacroOptionList extends MacroBindList {
                                 CommonComponents.OPTION_ON.copy().withStyle(ChatFormatting.GREEN),
                                 CommonComponents.OPTION_OFF.copy().withStyle(ChatFormatting.RED))
                         .withInitialValue(ratelimitActive
-                                ? macro.getUseRatelimit() : macro.useRatelimitStatus)
+                                ? macro.getUseRatelimit() : macro.getUseRatelimitStatus())
                         .withTooltip((status) -> Tooltip.create(
                                 localized("option", "macro.ratelimit.tooltip")))
                         .create(movingX, 0, buttonWidth, height,
@@ -348,8 +355,8 @@ public class MacroOptionList extends MacroBindList {
                         try {
                             int space = Integer.parseInt(val.strip());
                             if (space < 0) throw new NumberFormatException();
-                            int oldSpace = macro.spaceTicks;
-                            macro.spaceTicks = space;
+                            int oldSpace = macro.getSpaceTicks();
+                            macro.setSpaceTicks(space);
                             // Show/hide per-message delay fields
                             if (macro.getMode() == SEND
                                     && ((space == 0 && oldSpace != 0) || (space != 0 && oldSpace == 0))) {
@@ -361,7 +368,7 @@ public class MacroOptionList extends MacroBindList {
                             delayField.setTextColor(16711680);
                         }
                     });
-                    delayField.setValue(String.valueOf(macro.spaceTicks));
+                    delayField.setValue(String.valueOf(macro.getSpaceTicks()));
                     // Workaround to prevent the value sliding off to the left
                     delayField.setCursorPosition(0);
                     delayField.setHighlightPos(0);
@@ -412,12 +419,15 @@ public class MacroOptionList extends MacroBindList {
         }
 
         private static class MessageEntry extends Entry {
+            private final @Nullable PreviewEntry preview;
+            private final MultiLineEditBox messageField;
+
             MessageEntry(int x, int width, int height, MacroOptionList list,
-                         Macro macro, Message msg, int index) {
+                         Macro macro, Message msg, int index, boolean inGame) {
                 super();
                 Font font = Minecraft.getInstance().font;
                 boolean showDelayField = (macro.getStrategy() == AVOID
-                        || (macro.getMode() == SEND && macro.spaceTicks == 0)
+                        || (macro.getMode() == SEND && macro.getSpaceTicks() == 0)
                         || macro.getMode() == REPEAT);
                 int minDelayFieldWidth = font.width("0__") + 8;
                 int msgFieldWidth = width - list.smallButtonWidth * 2 - SPACING * 2
@@ -433,13 +443,24 @@ public class MacroOptionList extends MacroBindList {
                         .size(list.smallButtonWidth, height)
                         .build());
 
+                // Placeholder preview
+                preview = inGame ? new PreviewEntry(this, x + list.smallButtonWidth + SPACING, 
+                        msgFieldWidth, height, msg.getString()) : null;
+
                 // Message field
-                MultiLineEditBox messageField = new MultiLineEditBox(font,
+                messageField = new MultiLineEditBox(font,
                         x + list.smallButtonWidth + SPACING, 0, msgFieldWidth, height * 2,
                         Component.empty(), Component.empty());
                 messageField.setCharacterLimit(256);
-                messageField.setValue(msg.string);
-                messageField.setValueListener((val) -> msg.string = val.stripLeading());
+                messageField.setValue(msg.getString());
+                messageField.setValueListener((val) -> {
+                    macro.setMessage(index, val.stripLeading());
+                    // The message may be replaced if shared with a copy, see Macro
+                    String message = macro.getMessages().get(index).getString();
+                    updateTooltip(message);
+                    if (preview != null) preview.update(message);
+                });
+                updateTooltip(msg.getString());
                 elements.add(messageField);
 
                 // Delay field
@@ -464,13 +485,13 @@ public class MacroOptionList extends MacroBindList {
                         try {
                             int delay = Integer.parseInt(val.strip());
                             if (delay < 0) throw new NumberFormatException();
-                            msg.delayTicks = delay;
+                            macro.setMessageDelay(index, delay);
                             delayField.setTextColor(16777215);
                         } catch (NumberFormatException ignored) {
                             delayField.setTextColor(16711680);
                         }
                     });
-                    delayField.setValue(String.valueOf(msg.delayTicks));
+                    delayField.setValue(String.valueOf(msg.getDelayTicks()));
                     // Workaround to prevent the value sliding off to the left
                     delayField.setCursorPosition(0);
                     delayField.setHighlightPos(0);
@@ -488,6 +509,62 @@ public class MacroOptionList extends MacroBindList {
                         .size(list.smallButtonWidth, height)
                         .build());
             }
+
+            /**
+             * Warns of any regex pattern used by {@code message} which has been
+             * aborted for taking too long, see
+             * {@link PlaceholderUtil#hasUnsafePattern}.
+             */
+            void updateTooltip(String message) {
+                messageField.setTooltip(PlaceholderUtil.hasUnsafePattern(message)
+                        ? Tooltip.create(localized("option", "key.message.unsafeRegex.tooltip")
+                                .withStyle(ChatFormatting.RED))
+                        : null);
+            }
+        }
+
+        /**
+         * Shows the result of applying placeholders to a message, below its
+         * {@link MessageEntry}. The preview is updated after a short delay, so
+         * that it is not re-evaluated for every keystroke, and evaluated off
+         * the client thread, see {@link PlaceholderUtil#preview}.
+         */
+        private static class PreviewEntry extends OptionList.Entry.SpaceEntry {
+            private static final long DEBOUNCE_MS = 250;
+            private final MessageEntry entry;
+            private final StringWidget widget;
+            private int generation;
+
+            PreviewEntry(MessageEntry entry, int x, int width, int height, String message) {
+                super(entry);
+                this.entry = entry;
+                Font font = Minecraft.getInstance().font;
+                widget = new StringWidget(x, 0, width, height, Component.empty(), font)
+                        .alignLeft();
+                elements.add(widget);
+                update(message);
+            }
+
+            void update(String message) {
+                int gen = ++generation;
+                CompletableFuture.delayedExecutor(DEBOUNCE_MS, TimeUnit.MILLISECONDS,
+                        Minecraft.getInstance()).execute(() -> {
+                    // Skip if superseded by a later update
+                    if (gen != generation || !CommandKeys.inGame()) return;
+                    PlaceholderUtil.preview(message).whenCompleteAsync((preview, e) -> {
+                        if (e != null) {
+                            CommandKeys.LOG.error("Unable to preview message", e);
+                            return;
+                        }
+                        if (gen != generation) return;
+                        widget.setMessage(Component.literal("\u2192 ")
+                                .withStyle(ChatFormatting.DARK_GRAY)
+                                .append(preview.toComponent()));
+                        // A pattern may have been aborted by the preview
+                        entry.updateTooltip(message);
+                    }, Minecraft.getInstance());
+                });
+            }
         }
     }
 }
@@ -57,9 +57,10 @@ public class MainOptionList extends OptionList {
 
         Config config = Config.get();
         int i = 0;
-        for (Profile profile : config.getProfiles()) {
+        for (Profile profile : config.getRecentProfiles()) {
             addEntry(new Entry.ProfileEntry(entryX, entryWidth, entryHeight, this,
-                    profile, i, i == config.getSpDefault(), i == config.getMpDefault(), inGame));
+                    profile, i == 0, profile == config.getSpDefault(),
+                    profile == config.getMpDefault(), inGame));
             if (profile.equals(editingProfile)) {
                 addEntry(new Entry.ProfileNameEntry(entryX, entryWidth, entryHeight, profile));
                 for (String address : profile.getLinks()) {
@@ -84,6 +85,13 @@ public class MainOptionList extends OptionList {
                     reload();
                 }));
 
+        addEntry(new OptionList.Entry.TextEntry(entryX, entryWidth, entryHeight,
+                localized("option", "main.library", "\u2139"),
+                Tooltip.create(localized("option", "main.library.tooltip")), 500));
+        addEntry(new OptionList.Entry.ActionButtonEntry(entryX, entryWidth, entryHeight,
+                localized("option", "main.library.edit"), null, -1,
+                (button) -> openProfileOptionsScreen(Config.get().getLibrary())));
+
         addEntry(new OptionList.Entry.TextEntry(entryX, entryWidth, entryHeight,
                 localized("option", "main.default", "\u2139"),
                 Tooltip.create(localized("option", "main.default.tooltip")), 500));
@@ -128,7 +136,10 @@ public class MainOptionList extends OptionList {
     }
 
     public void openProfileOptionsScreen(Profile profile) {
-        minecraft.setScreen(new OptionsScreen(screen, localized("option", "profile", profile.getDisplayName()),
+        Component title = profile.isLibrary()
+                ? localized("option", "library")
+                : localized("option", "profile", profile.getDisplayName());
+        minecraft.setScreen(new OptionsScreen(screen, title,
                 new ProfileOptionList(minecraft, screen.width, screen.height, getY(),
                         itemHeight, entryWidth, entryHeight, profile)));
     }
@@ -140,7 +151,7 @@ public class MainOptionList extends OptionList {
             Profile profile;
 
             ProfileEntry(int x, int width, int height, MainOptionList list, Profile profile,
-                         int index, boolean spDefault, boolean mpDefault, boolean inGame) {
+                         boolean active, boolean spDefault, boolean mpDefault, boolean inGame) {
                 super();
                 this.list = list;
                 this.profile = profile;
@@ -150,7 +161,7 @@ public class MainOptionList extends OptionList {
                 int mainButtonX = x;
 
                 if (inGame) {
-                    if (index == 0) {
+                    if (active) {
                         // Link button
                         ImageButton linkButton = new ImageButton(
                                 x, 0, smallButtonWidth, height, LINK_SPRITES,
@@ -173,7 +184,7 @@ public class MainOptionList extends OptionList {
                         // Activate button
                         Button activateButton = Button.builder(Component.literal("\u2191"),
                                         (button) -> {
-                                            Config.get().activateProfile(index);
+                                            Config.get().activateProfile(profile);
                                             list.reload();
                                         })
                                 .pos(x, 0)
@@ -239,7 +250,7 @@ public class MainOptionList extends OptionList {
                 Button setAsSpDefaultButton = Button.builder(
                         localized("option", "main.defaultSingleplayer.set"),
                         (button) -> {
-                            Config.get().setSpDefault(index);
+                            Config.get().setSpDefault(profile);
                             list.reload();
                         })
                         .pos(movingX, 0)
@@ -263,7 +274,7 @@ public class MainOptionList extends OptionList {
                 Button setAsMpDefaultButton = Button.builder(
                         localized("option", "main.defaultMultiplayer.set"),
                                 (button) -> {
-                                    Config.get().setMpDefault(index);
+                                    Config.get().setMpDefault(profile);
                                     list.reload();
                                 })
                         .pos(movingX, 0)
@@ -301,7 +312,7 @@ public class MainOptionList extends OptionList {
                 // Delete button
                 Button deleteButton = Button.builder(Component.literal("\u274C"),
                                 (button) -> {
-                                    Config.get().removeProfile(index);
+                                    Config.get().removeProfile(profile);
                                     list.reload();
                                 })
                         .pos(movingX, 0)
@@ -341,8 +352,8 @@ public class MainOptionList extends OptionList {
                 EditBox nameBox = new EditBox(Minecraft.getInstance().font, x + labelWidth, 0,
                         nameBoxWidth, height, Component.empty());
                 nameBox.setMaxLength(64);
-                nameBox.setValue(profile.name);
-                nameBox.setResponder((value) -> profile.name = value.strip());
+                nameBox.setValue(profile.getName());
+                nameBox.setResponder((value) -> profile.setName(value.strip()));
                 elements.add(nameBox);
             }
         }
@@ -361,16 +372,54 @@ public class MainOptionList extends OptionList {
                 label.active = false;
                 elements.add(label);
 
+                String[] link = {address};
+                // Only replaced once committed, as a partial address could
+                // take the link of another profile
                 EditBox addressBox = new EditBox(Minecraft.getInstance().font, x + labelWidth, 0,
-                        addressBoxWidth, height, Component.empty());
+                        addressBoxWidth, height, Component.empty()) {
+                    @Override
+                    public boolean keyPressed(int keyCode, int scanCode, int modifiers) {
+                        if (keyCode == InputConstants.KEY_RETURN
+                                || keyCode == InputConstants.KEY_NUMPADENTER) {
+                            commit(false);
+                            return true;
+                        }
+                        return super.keyPressed(keyCode, scanCode, modifiers);
+                    }
+
+                    @Override
+                    public void setFocused(boolean focused) {
+                        if (!focused && isFocused()) commit(true);
+                        super.setFocused(focused);
+                    }
+
+                    /**
+                     * @param revert whether to show the current link again if
+                     *               the address is invalid.
+                     */
+                    private void commit(boolean revert) {
+                        String value = getValue().strip();
+                        if (!value.isEmpty() && profile.replaceLink(link[0], value)) {
+                            link[0] = value;
+                        } else if (revert) {
+                            setValue(link[0]);
+                        }
+                    }
+                };
                 addressBox.setMaxLength(64);
                 addressBox.setValue(address);
-                addressBox.active = false;
+                addressBox.setResponder((value) -> {
+                    value = value.strip();
+                    boolean valid = !value.isEmpty() && profile.canReplaceLink(link[0], value);
+                    addressBox.setTextColor(valid ? 16777215 : 16711680);
+                });
+                addressBox.setTooltip(Tooltip.create(localized("option", "main.link.edit.tooltip")));
+                addressBox.setTooltipDelay(Duration.ofMillis(500));
                 elements.add(addressBox);
 
                 Button removeButton = Button.builder(Component.literal("\u274C"),
                         (button) -> {
-                            profile.removeLink(address);
+                            profile.removeLink(link[0]);
                             list.reload();
                         })
                         .pos(x + width - list.smallButtonWidth, 0)
@@ -391,24 +440,24 @@ public class MainOptionList extends OptionList {
                 // Conflict strategy button
                 elements.add(CycleButton.builder(KeybindUtil::localizeStrategy)
                         .withValues(Macro.ConflictStrategy.values())
-                        .withInitialValue(Config.get().defaultConflictStrategy)
+                        .withInitialValue(Config.get().getDefaultConflictStrategy())
                         .withTooltip((status) -> Tooltip.create(
                                 KeybindUtil.localizeStrategyTooltip(status)))
                         .create(x, 0, buttonWidth, height,
                                 localized("option", "main.default.conflictStrategy"),
                                 (button, status) ->
-                                        Config.get().defaultConflictStrategy = status));
+                                        Config.get().setDefaultConflictStrategy(status)));
 
                 // Send mode button
                 elements.add(CycleButton.builder(KeybindUtil::localizeMode)
                         .withValues(Macro.SendMode.values())
-                        .withInitialValue(Config.get().defaultSendMode)
+                        .withInitialValue(Config.get().getDefaultSendMode())
                         .withTooltip((status) -> Tooltip.create(
                                 KeybindUtil.localizeModeTooltip(status)))
                         .create(x + width - buttonWidth, 0, buttonWidth, height,
                                 localized("option", "main.default.sendMode"),
                                 (button, status) ->
-                                        Config.get().defaultSendMode = status));
+                                        Config.get().setDefaultSendMode(status)));
             }
         }
 
@@ -462,12 +511,12 @@ public class MainOptionList extends OptionList {
                 CycleButton<Boolean> strictButton = CycleButton.booleanBuilder(
                                 CommonComponents.OPTION_ON.copy().withStyle(ChatFormatting.GREEN),
                                 CommonComponents.OPTION_OFF.copy().withStyle(ChatFormatting.RED))
-                        .withInitialValue(Config.get().ratelimitStrict)
+                        .withInitialValue(Config.get().getRatelimitStrict())
                         .withTooltip((status) -> Tooltip.create(
                                 localized("option", "main.ratelimit.strict.tooltip")))
                         .create(movingX, 0, buttonWidth, height,
                                 localized("option", "main.ratelimit.strict"),
-                                (button, status) -> Config.get().ratelimitStrict = status);
+                                (button, status) -> Config.get().setRatelimitStrict(status));
                 strictButton.setTooltipDelay(Duration.ofMillis(500));
                 elements.add(strictButton);
                 movingX = x + width - buttonWidth;
@@ -475,12 +524,12 @@ public class MainOptionList extends OptionList {
                 CycleButton<Boolean> spButton = CycleButton.booleanBuilder(
                                 CommonComponents.OPTION_ON.copy().withStyle(ChatFormatting.GREEN),
                                 CommonComponents.OPTION_OFF.copy().withStyle(ChatFormatting.RED))
-                        .withInitialValue(Config.get().ratelimitSp)
+                        .withInitialValue(Config.get().getRatelimitSp())
                         .withTooltip((status) -> Tooltip.create(
                                 localized("option", "main.ratelimit.sp.tooltip")))
                         .create(movingX, 0, buttonWidth, height,
                                 localized("option", "main.ratelimit.sp"),
-                                (button, status) -> Config.get().ratelimitSp = status);
+                                (button, status) -> Config.get().setRatelimitSp(status));
                 spButton.setTooltipDelay(Duration.ofMillis(500));
                 elements.add(spButton);
             }
@@ -35,6 +35,7 @@ import org.jetbrains.annotations.NotNull;
 import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Optional;
 
 import static dev.terminalmc.commandkeys.util.Localization.localized;
 
@@ -54,11 +55,33 @@ public class ProfileOptionList extends MacroBindList {
 
         addEntry(new Entry.ControlsEntry(entryX, entryWidth, entryHeight, this));
 
+        if (!profile.isLibrary()) {
+            addEntry(new Entry.ParentEntry(entryX, entryWidth, entryHeight, this));
+            if (profile.getParent() != null) {
+                addEntry(new Entry.DimensionsEntry(entryX, entryWidth, entryHeight, this));
+            }
+
+            addEntry(new OptionList.Entry.TextEntry(entryX, entryWidth, entryHeight,
+                    localized("option", "profile.signals", "\u2139"),
+                    Tooltip.create(localized("option", "profile.signals.tooltip")), 500));
+            for (int i = 0; i < profile.getSignals().size(); i++) {
+                addEntry(new Entry.SignalEntry(entryX, entryWidth, entryHeight, this, i));
+            }
+            addEntry(new OptionList.Entry.ActionButtonEntry(entryX, entryWidth, entryHeight,
+                    Component.literal("+"), null, -1,
+                    (button) -> {
+                        List<String> signals = new ArrayList<>(profile.getSignals());
+                        signals.add("");
+                        profile.setSignals(signals);
+                        reload();
+                    }));
+        }
+
         addEntry(new OptionList.Entry.TextEntry(entryX, entryWidth, entryHeight,
                 localized("option", "profile.keys", "\u2139"),
                 Tooltip.create(localized("option", "profile.keys.tooltip")), 500));
 
-        for (Macro macro : profile.getMacros()) {
+        for (Macro macro : profile.getEditableMacros()) {
             // A CommandKey's message list may be empty, but here we need at
             // least one message, so we add an empty one. Removed in cleanup.
             List<Message> messages = macro.getMessages();
@@ -71,6 +94,18 @@ public class ProfileOptionList extends MacroBindList {
                     profile.addMacro(new Macro());
                     reload();
                 }));
+
+        if (!profile.isLibrary()) {
+            addEntry(new OptionList.Entry.TextEntry(entryX, entryWidth, entryHeight,
+                    localized("option", "profile.refs", "\u2139"),
+                    Tooltip.create(localized("option", "profile.refs.tooltip")), 500));
+            for (MacroRef ref : profile.getMacroRefs()) {
+                addEntry(new Entry.MacroRefEntry(dynEntryX, dynEntryWidth, entryHeight,
+                        this, profile, ref));
+            }
+            addEntry(new Entry.AddMacroRefEntry(dynEntryX, dynEntryWidth, entryHeight,
+                    this, profile));
+        }
     }
 
     @Override
@@ -246,6 +281,121 @@ public class ProfileOptionList extends MacroBindList {
             }
         }
 
+        private static class ParentEntry extends Entry {
+            ParentEntry(int x, int width, int height, ProfileOptionList list) {
+                super();
+                // Profiles which would inherit from this profile are excluded
+                List<Optional<Profile>> parents = new ArrayList<>();
+                parents.add(Optional.empty());
+                for (Profile profile : Config.get().getProfiles()) {
+                    if (list.profile.canInheritFrom(profile)) parents.add(Optional.of(profile));
+                }
+
+                CycleButton<Optional<Profile>> parentButton = CycleButton.builder(
+                        (Optional<Profile> parent) -> parent
+                                .map((profile) -> Component.literal(profile.getDisplayName()))
+                                .orElseGet(() -> localized("option", "profile.parent.none")
+                                        .withStyle(ChatFormatting.GRAY)))
+                        .withValues(parents)
+                        .withInitialValue(Optional.ofNullable(list.profile.getParent()))
+                        .withTooltip((parent) -> Tooltip.create(
+                                localized("option", "profile.parent.tooltip")))
+                        .create(x, 0, width, height,
+                                localized("option", "profile.parent"),
+                                (button, parent) -> {
+                                    list.profile.setParent(parent.orElse(null));
+                                    list.reload();
+                                });
+                parentButton.setTooltipDelay(Duration.ofMillis(500));
+                elements.add(parentButton);
+            }
+        }
+
+        private static class DimensionsEntry extends Entry {
+            DimensionsEntry(int x, int width, int height, ProfileOptionList list) {
+                super();
+                int labelWidth = 80;
+                int dimensionBoxWidth = width - labelWidth - SPACING;
+
+                Button label = Button.builder(localized("option", "profile.dimensions"),
+                                (button -> {}))
+                        .pos(x, 0)
+                        .size(labelWidth, height)
+                        .build();
+                label.active = false;
+                elements.add(label);
+
+                EditBox dimensionBox = new EditBox(Minecraft.getInstance().font,
+                        x + labelWidth + SPACING, 0, dimensionBoxWidth, height,
+                        Component.empty());
+                dimensionBox.setMaxLength(256);
+                dimensionBox.setValue(String.join(", ", list.profile.getDimensions()));
+                dimensionBox.setResponder((value) -> {
+                    List<String> dimensions = new ArrayList<>();
+                    for (String dimension : value.split(",")) {
+                        dimension = dimension.strip();
+                        if (!dimension.isEmpty()) dimensions.add(dimension);
+                    }
+                    list.profile.setDimensions(dimensions);
+                });
+                dimensionBox.setTooltip(Tooltip.create(
+                        localized("option", "profile.dimensions.tooltip")));
+                dimensionBox.setTooltipDelay(Duration.ofMillis(500));
+                elements.add(dimensionBox);
+            }
+        }
+
+        private static class SignalEntry extends Entry {
+            SignalEntry(int x, int width, int height, ProfileOptionList list, int index) {
+                super();
+                int labelWidth = 80;
+                int signalBoxWidth = width - labelWidth - list.smallButtonWidth - SPACING * 2;
+
+                Button label = Button.builder(localized("option", "profile.signal"),
+                                (button -> {}))
+                        .pos(x, 0)
+                        .size(labelWidth, height)
+                        .build();
+                label.active = false;
+                elements.add(label);
+
+                EditBox signalBox = new EditBox(Minecraft.getInstance().font,
+                        x + labelWidth + SPACING, 0, signalBoxWidth, height,
+                        Component.empty());
+                signalBox.setMaxLength(256);
+                signalBox.setValue(list.profile.getSignals().get(index));
+                signalBox.setResponder((value) -> {
+                    boolean valid = Profile.isValidSignal(value);
+                    if (valid) {
+                        List<String> signals = new ArrayList<>(list.profile.getSignals());
+                        signals.set(index, value);
+                        list.profile.setSignals(signals);
+                    }
+                    signalBox.setTextColor(valid ? 16777215 : 16711680);
+                });
+                signalBox.setTooltip(Tooltip.create(
+                        localized("option", "profile.signal.tooltip")));
+                signalBox.setTooltipDelay(Duration.ofMillis(500));
+                elements.add(signalBox);
+
+                Button removeButton = Button.builder(Component.literal("\u274C"),
+                                (button) -> {
+                                    List<String> signals =
+                                            new ArrayList<>(list.profile.getSignals());
+                                    signals.remove(index);
+                                    list.profile.setSignals(signals);
+                                    list.reload();
+                                })
+                        .pos(x + width - list.smallButtonWidth, 0)
+                        .size(list.smallButtonWidth, height)
+                        .build();
+                removeButton.setTooltip(Tooltip.create(
+                        localized("option", "profile.signal.remove.tooltip")));
+                removeButton.setTooltipDelay(Duration.ofMillis(500));
+                elements.add(removeButton);
+            }
+        }
+
         private static class MacroEntry extends Entry {
             MacroEntry(int x, int width, int height, ProfileOptionList list, 
                        Profile profile, Macro macro) {
@@ -297,7 +447,7 @@ public class ProfileOptionList extends MacroBindList {
                         messageFieldWidth, height, Component.empty());
                 messageField.setMaxLength(256);
                 messageField.setValue(editableField
-                        ? messages.getFirst().string
+                        ? messages.getFirst().getString()
                         : getEditButtonLabel(macro, messageFieldWidth - 10));
                 messageField.setResponder(editableField
                         ? (val) -> macro.setMessage(0, val.stripLeading())
@@ -379,7 +529,7 @@ public class ProfileOptionList extends MacroBindList {
             private String getEditButtonLabel(Macro macro, int maxWidth) {
                 Font font = Minecraft.getInstance().font;
                 List<String> strings = new ArrayList<>();
-                for (Message msg : macro.getMessages()) strings.add(msg.string);
+                for (Message msg : macro.getMessages()) strings.add(msg.getString());
                 int excess = strings.size() - 1;
                 String tag = String.format(" [+%d]", excess);
                 String trimTag = String.format("... [+%d]", excess);
@@ -397,5 +547,133 @@ public class ProfileOptionList extends MacroBindList {
                 }
             }
         }
+
+        private static class MacroRefEntry extends Entry {
+            MacroRefEntry(int x, int width, int height, ProfileOptionList list,
+                          Profile profile, MacroRef ref) {
+                super();
+                int keyButtonWidth = Mth.clamp(width / 3, 90, 150);
+                int labelWidth = width - keyButtonWidth - (2 * list.smallButtonWidth + 3 * SPACING);
+                int movingX = x;
+                Macro macro = profile.getLibraryMacro(ref);
+
+                // Keybind button
+                if (macro != null) {
+                    Keybind keybind = ref.keybindOf(macro);
+                    KeybindUtil.KeybindInfo info =
+                            new KeybindUtil.KeybindInfo(profile, macro, keybind);
+                    elements.add(Button.builder(info.conflictLabel,
+                                    (button) -> {
+                                        list.setSelected(ref);
+                                        button.setMessage(Component.literal("> ")
+                                                .append(info.label.withStyle(ChatFormatting.WHITE)
+                                                        .withStyle(ChatFormatting.UNDERLINE))
+                                                .append(" <").withStyle(ChatFormatting.YELLOW));
+                                    })
+                            .tooltip(Tooltip.create(info.tooltip))
+                            .pos(movingX, 0)
+                            .size(keyButtonWidth, height)
+                            .build());
+                }
+                movingX += keyButtonWidth + SPACING;
+
+                // Label
+                Button labelButton = Button.builder(macro != null
+                                ? Component.literal(macroLabel(macro, labelWidth - 10))
+                                : localized("option", "profile.refs.missing")
+                                        .withStyle(ChatFormatting.GRAY),
+                                (button) -> {})
+                        .pos(movingX, 0)
+                        .size(labelWidth, height)
+                        .build();
+                labelButton.active = false;
+                elements.add(labelButton);
+                movingX += labelWidth + SPACING;
+
+                // Reset keybind button
+                Button resetButton = Button.builder(Component.literal("\u21BA"),
+                                (button) -> {
+                                    profile.setMacroRefKeybind(ref, null);
+                                    list.reload();
+                                })
+                        .pos(movingX, 0)
+                        .size(list.smallButtonWidth, height)
+                        .build();
+                resetButton.setTooltip(Tooltip.create(
+                        localized("option", "profile.refs.reset.tooltip")));
+                resetButton.setTooltipDelay(Duration.ofMillis(500));
+                resetButton.active = ref.getKeybind() != null;
+                elements.add(resetButton);
+
+                // Delete button
+                elements.add(Button.builder(Component.literal("\u274C")
+                                        .withStyle(ChatFormatting.RED),
+                                (button) -> {
+                                    profile.removeMacroRef(ref);
+                                    list.reload();
+                                })
+                        .pos(x + width - list.smallButtonWidth, 0)
+                        .size(list.smallButtonWidth, height)
+                        .build());
+            }
+        }
+
+        private static class AddMacroRefEntry extends Entry {
+            AddMacroRefEntry(int x, int width, int height, ProfileOptionList list,
+                             Profile profile) {
+                super();
+                int cycleButtonWidth = width - list.smallButtonWidth - SPACING;
+                // Library macros not yet referenced by this profile
+                List<Macro> macros = new ArrayList<>(Config.get().getLibrary().getMacros());
+                for (MacroRef ref : profile.getMacroRefs()) {
+                    macros.remove(profile.getLibraryMacro(ref));
+                }
+                if (macros.isEmpty()) {
+                    Button emptyButton = Button.builder(
+                                    localized("option", "profile.refs.none")
+                                            .withStyle(ChatFormatting.GRAY), (button) -> {})
+                            .pos(x, 0)
+                            .size(width, height)
+                            .build();
+                    emptyButton.active = false;
+                    elements.add(emptyButton);
+                    return;
+                }
+
+                CycleButton<Macro> macroButton = CycleButton.builder(
+                                (Macro macro) -> Component.literal(
+                                        macroLabel(macro, cycleButtonWidth - 10)))
+                        .displayOnlyValue()
+                        .withValues(macros)
+                        .withInitialValue(macros.getFirst())
+                        .create(x, 0, cycleButtonWidth, height, Component.empty(),
+                                (button, macro) -> {});
+                elements.add(macroButton);
+
+                Button addButton = Button.builder(Component.literal("+"),
+                                (button) -> {
+                                    profile.addMacroRef(macroButton.getValue());
+                                    list.reload();
+                                })
+                        .pos(x + width - list.smallButtonWidth, 0)
+                        .size(list.smallButtonWidth, height)
+                        .build();
+                addButton.setTooltip(Tooltip.create(
+                        localized("option", "profile.refs.add.tooltip")));
+                addButton.setTooltipDelay(Duration.ofMillis(500));
+                elements.add(addButton);
+            }
+        }
+
+        /**
+         * @return the first message of {@code macro}, trimmed to
+         * {@code maxWidth}.
+         */
+        private static String macroLabel(Macro macro, int maxWidth) {
+            Font font = Minecraft.getInstance().font;
+            List<Message> messages = macro.getMessages();
+            String label = messages.isEmpty() ? "" : messages.getFirst().getString();
+            return font.plainSubstrByWidth(label, maxWidth);
+        }
     }
 }
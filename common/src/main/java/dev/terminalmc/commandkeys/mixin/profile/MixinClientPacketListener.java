@@ -0,0 +1,112 @@
+/*
+ * Copyright 2025 TerminalMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.terminalmc.commandkeys.mixin.profile;
+
+import dev.terminalmc.commandkeys.config.Config;
+import net.minecraft.client.multiplayer.ClientPacketListener;
+import net.minecraft.network.protocol.game.ClientboundLoginPacket;
+import net.minecraft.network.protocol.game.ClientboundRespawnPacket;
+import net.minecraft.network.protocol.game.ClientboundSetDisplayObjectivePacket;
+import net.minecraft.network.protocol.game.ClientboundSetObjectivePacket;
+import net.minecraft.network.protocol.game.ClientboundTabListPacket;
+import net.minecraft.network.protocol.game.CommonPlayerSpawnInfo;
+import net.minecraft.world.scores.DisplaySlot;
+import net.minecraft.world.scores.Objective;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
+
+@Mixin(ClientPacketListener.class)
+public class MixinClientPacketListener {
+    /**
+     * Automatic sub-profile switching on joining a world or server. Injected
+     * at the tail, which is only reached on the client thread.
+     */
+    @Inject(
+            method = "handleLogin",
+            at = @At("TAIL")
+    )
+    private void selectLoginSubProfile(ClientboundLoginPacket packet, CallbackInfo ci) {
+        activateDimension(packet.commonPlayerSpawnInfo());
+    }
+
+    /**
+     * Automatic sub-profile switching on respawning or changing dimension.
+     */
+    @Inject(
+            method = "handleRespawn",
+            at = @At("TAIL")
+    )
+    private void selectRespawnSubProfile(ClientboundRespawnPacket packet, CallbackInfo ci) {
+        activateDimension(packet.commonPlayerSpawnInfo());
+    }
+
+    /**
+     * Automatic profile switching on proxy networks.
+     */
+    @Inject(
+            method = "handleTabListCustomisation",
+            at = @At("TAIL")
+    )
+    private void matchTabListSignals(ClientboundTabListPacket packet, CallbackInfo ci) {
+        Config config = Config.get();
+        config.onServerText(Config.ServerText.TAB_HEADER, packet.header().getString());
+        config.onServerText(Config.ServerText.TAB_FOOTER, packet.footer().getString());
+    }
+
+    /**
+     * Automatic profile switching on proxy networks, on the sidebar objective
+     * being added, renamed or removed.
+     */
+    @Inject(
+            method = "handleAddObjective",
+            at = @At("TAIL")
+    )
+    private void matchObjectiveSignals(ClientboundSetObjectivePacket packet, CallbackInfo ci) {
+        matchSidebarSignals();
+    }
+
+    /**
+     * Automatic profile switching on proxy networks, on another objective
+     * being displayed in the sidebar.
+     */
+    @Inject(
+            method = "handleSetDisplayObjective",
+            at = @At("TAIL")
+    )
+    private void matchDisplayObjectiveSignals(ClientboundSetDisplayObjectivePacket packet,
+                                              CallbackInfo ci) {
+        matchSidebarSignals();
+    }
+
+    /**
+     * Matches the title of the objective displayed in the sidebar, read from
+     * the scoreboard once updated, so that objectives displayed below names or
+     * in the tab list, or not displayed, are ignored.
+     */
+    private void matchSidebarSignals() {
+        Objective objective = ((ClientPacketListener)(Object)this).scoreboard()
+                .getDisplayObjective(DisplaySlot.SIDEBAR);
+        Config.get().onServerText(Config.ServerText.OBJECTIVE,
+                objective != null ? objective.getDisplayName().getString() : "");
+    }
+
+    private static void activateDimension(CommonPlayerSpawnInfo spawnInfo) {
+        Config.get().activateDimension(spawnInfo.dimension().location().toString());
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright 2025 TerminalMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.terminalmc.commandkeys.util;
+
+import com.mojang.blaze3d.platform.InputConstants;
+import net.minecraft.client.KeyMapping;
+import net.minecraft.core.BlockPos;
+import net.minecraft.network.chat.Component;
+import net.minecraft.world.phys.Vec3;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * The client state read and written by the macro send path, placeholders and
+ * key handling.
+ *
+ * <p>{@link MinecraftClientContext} is used in-game, and
+ * {@link HeadlessClientContext} allows macros to be run without a client.</p>
+ */
+public interface ClientContext {
+
+    // Sending
+
+    /**
+     * @return {@code true} if messages can currently be sent to the server,
+     * {@code false} otherwise.
+     */
+    boolean canSend();
+
+    /**
+     * Sends {@code command}, without the leading slash, to the server.
+     */
+    void sendCommand(String command);
+
+    /**
+     * Sends {@code message} to the server as a chat message.
+     */
+    void sendChat(String message);
+
+    /**
+     * Opens the chat screen with {@code message} as the initial input.
+     */
+    void openChat(String message);
+
+    /**
+     * Adds {@code message} to the sent message history.
+     */
+    void addToHistory(String message);
+
+    /**
+     * Shows {@code message} above the hotbar.
+     */
+    void showOverlayMessage(Component message);
+
+    /**
+     * Shows {@code message} in the chat window, without sending it.
+     */
+    void showChatMessage(Component message);
+
+    // Client state
+
+    boolean inSingleplayer();
+
+    boolean isScreenOpen();
+
+    boolean isKeyDown(InputConstants.Key key);
+
+    KeyMapping[] getKeyMappings();
+
+    // Placeholder sources
+
+    /**
+     * @return the received chat messages, most recent first.
+     */
+    Iterable<Component> getChatMessages();
+
+    @Nullable String getLastSentMessage();
+
+    @Nullable String getLastCommand();
+
+    String getClipboard();
+
+    String getPlayerName();
+
+    @Nullable BlockPos getPlayerBlockPos();
+
+    /**
+     * @return the position of the block the player is looking at, or 
+     * {@code null} if there is none in range.
+     */
+    @Nullable BlockPos getLookBlockPos();
+
+    @Nullable Vec3 getLookAngle();
+
+    // Threading
+
+    /**
+     * Runs {@code task} on the client thread, later if called from another
+     * thread.
+     */
+    void execute(Runnable task);
+}
@@ -0,0 +1,243 @@
+/*
+ * Copyright 2025 TerminalMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.terminalmc.commandkeys.util;
+
+import com.mojang.blaze3d.platform.InputConstants;
+import net.minecraft.client.KeyMapping;
+import net.minecraft.core.BlockPos;
+import net.minecraft.network.chat.Component;
+import net.minecraft.world.phys.Vec3;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+
+/**
+ * {@link ClientContext} which requires no running client, for simulating
+ * macro use in tests and benchmarks.
+ *
+ * <p>Everything sent or shown is recorded as a {@link Send}, stamped with
+ * the current simulated tick and {@link System#nanoTime()}. Client state is
+ * exposed as public fields, which the caller may set as required.</p>
+ */
+public class HeadlessClientContext implements ClientContext {
+
+    public enum SendType {
+        COMMAND,
+        CHAT,
+        TYPE,
+        OVERLAY,
+        NOTICE,
+    }
+
+    public record Send(long tick, long nanoTime, SendType type, String message) {}
+
+    private final int capacity;
+    private final Deque<Send> sends;
+    private long sendCount;
+    private long tick;
+
+    // Client state
+    public boolean connected = true;
+    public boolean singleplayer = false;
+    public boolean screenOpen = false;
+    public final Set<InputConstants.Key> heldKeys = new HashSet<>();
+    public KeyMapping[] keyMappings = new KeyMapping[0];
+
+    // Placeholder sources
+    /**
+     * Received chat messages, most recent first.
+     */
+    public final Deque<Component> chatMessages = new ArrayDeque<>();
+    public @Nullable String lastSentMessage = null;
+    public @Nullable String lastCommand = null;
+    public String clipboard = "";
+    public String playerName = "Player";
+    public @Nullable BlockPos playerBlockPos = BlockPos.ZERO;
+    public @Nullable BlockPos lookBlockPos = null;
+    public @Nullable Vec3 lookAngle = new Vec3(0, 0, 1);
+
+    /**
+     * Creates an instance retaining all sends.
+     */
+    public HeadlessClientContext() {
+        this(Integer.MAX_VALUE);
+    }
+
+    /**
+     * Creates an instance retaining only the most recent {@code capacity}
+     * sends. All sends are still counted.
+     */
+    public HeadlessClientContext(int capacity) {
+        if (capacity < 0) throw new IllegalArgumentException();
+        this.capacity = capacity;
+        this.sends = new ArrayDeque<>(Math.min(capacity, 1024));
+    }
+
+    // Simulation control
+
+    /**
+     * @return the current simulated tick.
+     */
+    public long getTick() {
+        return tick;
+    }
+
+    /**
+     * Advances the simulated tick used to stamp sends.
+     */
+    public void advanceTick() {
+        tick++;
+    }
+
+    /**
+     * @return an unmodifiable view of the retained sends, oldest first.
+     */
+    public Collection<Send> getSends() {
+        return Collections.unmodifiableCollection(sends);
+    }
+
+    /**
+     * @return the total number of sends, including any no longer retained.
+     */
+    public long getSendCount() {
+        return sendCount;
+    }
+
+    public void clearSends() {
+        sends.clear();
+        sendCount = 0;
+    }
+
+    private void record(SendType type, String message) {
+        sendCount++;
+        if (capacity == 0) return;
+        if (sends.size() >= capacity) sends.removeFirst();
+        sends.addLast(new Send(tick, System.nanoTime(), type, message));
+    }
+
+    // Sending
+
+    @Override
+    public boolean canSend() {
+        return connected;
+    }
+
+    @Override
+    public void sendCommand(String command) {
+        record(SendType.COMMAND, command);
+    }
+
+    @Override
+    public void sendChat(String message) {
+        record(SendType.CHAT, message);
+    }
+
+    @Override
+    public void openChat(String message) {
+        record(SendType.TYPE, message);
+    }
+
+    @Override
+    public void addToHistory(String message) {
+        lastSentMessage = message;
+    }
+
+    @Override
+    public void showOverlayMessage(Component message) {
+        record(SendType.OVERLAY, message.getString());
+    }
+
+    @Override
+    public void showChatMessage(Component message) {
+        record(SendType.NOTICE, message.getString());
+    }
+
+    // Client state
+
+    @Override
+    public boolean inSingleplayer() {
+        return singleplayer;
+    }
+
+    @Override
+    public boolean isScreenOpen() {
+        return screenOpen;
+    }
+
+    @Override
+    public boolean isKeyDown(InputConstants.Key key) {
+        return heldKeys.contains(key);
+    }
+
+    @Override
+    public KeyMapping[] getKeyMappings() {
+        return keyMappings;
+    }
+
+    // Placeholder sources
+
+    @Override
+    public Iterable<Component> getChatMessages() {
+        return chatMessages;
+    }
+
+    @Override
+    public @Nullable String getLastSentMessage() {
+        return lastSentMessage;
+    }
+
+    @Override
+    public @Nullable String getLastCommand() {
+        return lastCommand;
+    }
+
+    @Override
+    public String getClipboard() {
+        return clipboard;
+    }
+
+    @Override
+    public String getPlayerName() {
+        return playerName;
+    }
+
+    @Override
+    public @Nullable BlockPos getPlayerBlockPos() {
+        return playerBlockPos;
+    }
+
+    @Override
+    public @Nullable BlockPos getLookBlockPos() {
+        return lookBlockPos;
+    }
+
+    @Override
+    public @Nullable Vec3 getLookAngle() {
+        return lookAngle;
+    }
+
+    // Threading
+
+    /**
+     * Runs {@code task} immediately on the calling thread, as there is no
+     * client thread.
+     */
+    @Override
+    public void execute(Runnable task) {
+        task.run();
+    }
+}
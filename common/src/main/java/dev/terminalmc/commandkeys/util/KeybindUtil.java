@@ -17,13 +17,13 @@
 package dev.terminalmc.commandkeys.util;
 
 import com.mojang.blaze3d.platform.InputConstants;
+import dev.terminalmc.commandkeys.CommandKeys;
 import dev.terminalmc.commandkeys.config.Keybind;
 import dev.terminalmc.commandkeys.config.Macro;
 import dev.terminalmc.commandkeys.config.Profile;
 import dev.terminalmc.commandkeys.mixin.accessor.KeyMappingAccessor;
 import net.minecraft.ChatFormatting;
 import net.minecraft.client.KeyMapping;
-import net.minecraft.client.Minecraft;
 import net.minecraft.network.chat.Component;
 import net.minecraft.network.chat.MutableComponent;
 import org.jetbrains.annotations.Nullable;
@@ -50,13 +50,13 @@ public class KeybindUtil {
      */
     public static int handleKeys(InputConstants.Key key, InputConstants.Key limitKey) {
         if (key.equals(InputConstants.UNKNOWN)) return 0;
-        if (!profile().keybindMap.containsKey(key)) return 0;
+        if (!profile().getKeybindMap().containsKey(key)) return 0;
         
         int i = 0;
-        Collection<Keybind> keybinds = profile().keybindMap.get(key);
+        Collection<Keybind> keybinds = profile().getKeybindMap().get(key);
         for (Keybind keybind : keybinds) {
             if (!keybind.getLimitKey().equals(limitKey)) continue;
-            for (Macro macro : profile().macroMap.get(keybind)) {
+            for (Macro macro : profile().getMacroMap().get(keybind)) {
                 macro.trigger(keybind);
                 i++;
             }
@@ -74,9 +74,9 @@ public class KeybindUtil {
     public static int handleKey(InputConstants.Key key) {
         int cancel = 0;
 
-        if (Minecraft.getInstance().screen == null && profile().keybindMap.containsKey(key)) {
+        if (!CommandKeys.context().isScreenOpen() && profile().getKeybindMap().containsKey(key)) {
             // Get all keybinds matching the pressed key
-            Collection<Keybind> keybinds = profile().keybindMap.get(key);
+            Collection<Keybind> keybinds = profile().getKeybindMap().get(key);
             Keybind triggerKb = null;
             Keybind monoKb = null;
             
@@ -85,7 +85,7 @@ public class KeybindUtil {
                 if (kb.isLimitKeyDown()) {
                     // Preference limited keybinds
                     triggerKb = kb;
-                    activeMacros = profile().macroMap.get(triggerKb).stream()
+                    activeMacros = profile().getMacroMap().get(triggerKb).stream()
                             .filter((macro) -> !macro.getStrategy().equals(AVOID))
                             .toList();
                     if (!activeMacros.isEmpty()) break;
@@ -97,7 +97,7 @@ public class KeybindUtil {
             if (activeMacros == null || activeMacros.isEmpty()) {
                 triggerKb = monoKb;
                 if (triggerKb == null) return cancel;
-                activeMacros = profile().macroMap.get(triggerKb).stream()
+                activeMacros = profile().getMacroMap().get(triggerKb).stream()
                         .filter((macro) -> !macro.getStrategy().equals(AVOID))
                         .toList();
                 if (activeMacros.isEmpty()) return cancel;
@@ -116,7 +116,7 @@ public class KeybindUtil {
                 
                 if (send) {
                     if (first) {
-                        ratelimited = macro.useRatelimitStatus && !canTrigger(key);
+                        ratelimited = macro.getUseRatelimitStatus() && !canTrigger(key);
                         first = false;
                     }
                     // Always allow repeat-stop
@@ -132,7 +132,7 @@ public class KeybindUtil {
     }
 
     public static @Nullable KeyMapping getConflict(InputConstants.Key key) {
-        for (KeyMapping keyMapping : Minecraft.getInstance().options.keyMappings) {
+        for (KeyMapping keyMapping : CommandKeys.context().getKeyMappings()) {
             if (((KeyMappingAccessor)keyMapping).getKey().equals(key)) {
                 return keyMapping;
             }
@@ -170,13 +170,13 @@ public class KeybindUtil {
         private void checkConflict(InputConstants.Key key, Keybind keybind) {
             if (key.equals(InputConstants.UNKNOWN)) return;
             // Check internal conflict
-            if (profile.keybindMap.get(key).size() > 1) {
+            if (profile.getKeybindMap().get(key).size() > 1) {
                 if (internalConflict || mcConflict) tooltip.append("\n");
                 tooltip.append(localized("option", "key.bind.tooltip.conflict.internal",
                                 key.getDisplayName().copy().withStyle(ChatFormatting.GOLD)))
                         .withStyle(ChatFormatting.WHITE);
                 internalConflict = true;
-            } else if (keybind != null && profile.macroMap.get(keybind).size() > 1) {
+            } else if (keybind != null && profile.getMacroMap().get(keybind).size() > 1) {
                 if (internalConflict || mcConflict) tooltip.append("\n");
                 tooltip.append(localized("option", "key.bind.tooltip.conflict.internal",
                                 key.getDisplayName().copy().withStyle(ChatFormatting.GOLD)))
@@ -0,0 +1,164 @@
+/*
+ * Copyright 2025 TerminalMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.terminalmc.commandkeys.util;
+
+import com.google.common.collect.Iterables;
+import com.mojang.blaze3d.platform.InputConstants;
+import dev.terminalmc.commandkeys.CommandKeys;
+import dev.terminalmc.commandkeys.mixin.accessor.ChatComponentAccessor;
+import net.minecraft.client.GuiMessage;
+import net.minecraft.client.KeyMapping;
+import net.minecraft.client.Minecraft;
+import net.minecraft.client.gui.screens.ChatScreen;
+import net.minecraft.core.BlockPos;
+import net.minecraft.network.chat.Component;
+import net.minecraft.util.ArrayListDeque;
+import net.minecraft.world.phys.BlockHitResult;
+import net.minecraft.world.phys.HitResult;
+import net.minecraft.world.phys.Vec3;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * {@link ClientContext} backed by the running {@link Minecraft} client.
+ */
+public class MinecraftClientContext implements ClientContext {
+
+    // Sending
+
+    @Override
+    public boolean canSend() {
+        Minecraft mc = Minecraft.getInstance();
+        return mc.player != null && mc.player.connection.isAcceptingMessages();
+    }
+
+    @Override
+    public void sendCommand(String command) {
+        Minecraft.getInstance().player.connection.sendCommand(command);
+    }
+
+    @Override
+    public void sendChat(String message) {
+        // new ChatScreen("").handleChatInput(message, addToHistory)
+        // could be slightly better for compat but costs performance.
+        Minecraft.getInstance().player.connection.sendChat(message);
+    }
+
+    @Override
+    public void openChat(String message) {
+        Minecraft.getInstance().setScreen(new ChatScreen(message));
+    }
+
+    @Override
+    public void addToHistory(String message) {
+        Minecraft.getInstance().gui.getChat().addRecentChat(message);
+    }
+
+    @Override
+    public void showOverlayMessage(Component message) {
+        Minecraft.getInstance().gui.setOverlayMessage(message, false);
+    }
+
+    @Override
+    public void showChatMessage(Component message) {
+        Minecraft.getInstance().gui.getChat().addMessage(message);
+    }
+
+    // Client state
+
+    @Override
+    public boolean inSingleplayer() {
+        return Minecraft.getInstance().getSingleplayerServer() != null;
+    }
+
+    @Override
+    public boolean isScreenOpen() {
+        return Minecraft.getInstance().screen != null;
+    }
+
+    @Override
+    public boolean isKeyDown(InputConstants.Key key) {
+        return InputConstants.isKeyDown(
+                Minecraft.getInstance().getWindow().getWindow(), key.getValue());
+    }
+
+    @Override
+    public KeyMapping[] getKeyMappings() {
+        return Minecraft.getInstance().options.keyMappings;
+    }
+
+    // Placeholder sources
+
+    @Override
+    public Iterable<Component> getChatMessages() {
+        return Iterables.transform(((ChatComponentAccessor)
+                Minecraft.getInstance().gui.getChat()).getAllMessages(), GuiMessage::content);
+    }
+
+    @Override
+    public @Nullable String getLastSentMessage() {
+        return Minecraft.getInstance().gui.getChat().getRecentChat().peekLast();
+    }
+
+    @Override
+    public @Nullable String getLastCommand() {
+        if (Minecraft.getInstance().commandHistory().history() instanceof ArrayListDeque<String> deque) {
+            return deque.peekLast();
+        }
+        CommandKeys.LOG.error("Command history not ArrayListDeque");
+        return null;
+    }
+
+    @Override
+    public String getClipboard() {
+        return Minecraft.getInstance().keyboardHandler.getClipboard();
+    }
+
+    @Override
+    public String getPlayerName() {
+        return Minecraft.getInstance().player.getName().getString();
+    }
+
+    @Override
+    public @Nullable BlockPos getPlayerBlockPos() {
+        return Minecraft.getInstance().player.blockPosition();
+    }
+
+    @Override
+    public @Nullable BlockPos getLookBlockPos() {
+        // Note: ProjectileUtil.getEntityHitResult for entities
+        Minecraft mc = Minecraft.getInstance();
+        // Distance is arbitrary but will do for now
+        HitResult result = mc.player.pick(Math.max(384,
+                (mc.levelRenderer.getLastViewDistance() + 1D) * 16), 0.0F, false);
+        if (result.getType().equals(HitResult.Type.BLOCK)) {
+            return ((BlockHitResult)result).getBlockPos();
+        }
+        return null;
+    }
+
+    @Override
+    public @Nullable Vec3 getLookAngle() {
+        return Minecraft.getInstance().player.getLookAngle();
+    }
+
+    // Threading
+
+    @Override
+    public void execute(Runnable task) {
+        Minecraft.getInstance().execute(task);
+    }
+}
@@ -16,23 +16,32 @@
 
 package dev.terminalmc.commandkeys.util;
 
+import com.google.common.collect.Iterables;
 import com.mojang.datafixers.util.Pair;
 import dev.terminalmc.commandkeys.CommandKeys;
-import dev.terminalmc.commandkeys.mixin.accessor.ChatComponentAccessor;
-import net.minecraft.client.GuiMessage;
-import net.minecraft.client.Minecraft;
+import net.minecraft.ChatFormatting;
 import net.minecraft.core.BlockPos;
 import net.minecraft.network.chat.Component;
 import net.minecraft.network.chat.MutableComponent;
 import net.minecraft.network.chat.contents.TranslatableContents;
-import net.minecraft.util.ArrayListDeque;
 import net.minecraft.util.Mth;
-import net.minecraft.world.phys.BlockHitResult;
-import net.minecraft.world.phys.HitResult;
 import net.minecraft.world.phys.Vec3;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.BiFunction;
 import java.util.function.Function;
 import java.util.function.Supplier;
 import java.util.regex.Matcher;
@@ -41,31 +50,70 @@ import java.util.regex.PatternSyntaxException;
 
 public class PlaceholderUtil {
 
-    private static int faults;
-    private static @Nullable BlockPos playerBlockPos;
-    private static @Nullable BlockPos lookBlockPos;
-    private static @Nullable Vec3 lookAngle;
-    private static @Nullable String pmSenderName;
+    /**
+     * Maximum number of character reads allowed for a single user-supplied
+     * regex evaluation, after which the evaluation is aborted. Prevents
+     * catastrophic backtracking from freezing the client thread.
+     */
+    private static final int REGEX_STEP_BUDGET = 1_000_000;
+    /**
+     * User-supplied regex patterns which have exceeded 
+     * {@link PlaceholderUtil#REGEX_STEP_BUDGET}.
+     */
+    private static final Set<String> UNSAFE_PATTERNS = ConcurrentHashMap.newKeySet();
+    private static final int PATTERN_CACHE_SIZE = 32;
+    /**
+     * Compiled user-supplied regex patterns, in least-recently-used order.
+     * Synchronized, as patterns may be compiled in advance off the client
+     * thread, see {@link PlaceholderUtil#prewarm}.
+     */
+    private static final Map<String, Pattern> PATTERN_CACHE = Collections.synchronizedMap(
+            new LinkedHashMap<>(16, 0.75F, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Pattern> eldest) {
+                    return size() > PATTERN_CACHE_SIZE;
+                }
+            });
+    /**
+     * Maximum number of received chat messages searched by placeholders.
+     */
+    private static final int CHAT_LIMIT = 50;
+    private static final Sources LIVE_SOURCES = new LiveSources();
+    private static final ExecutorService PREVIEW_EXECUTOR =
+            Executors.newSingleThreadExecutor((runnable) -> {
+                Thread thread = new Thread(runnable,
+                        CommandKeys.MOD_NAME + " placeholder preview");
+                thread.setDaemon(true);
+                return thread;
+            });
 
     private static final SimplePlaceholder[] SIMPLE_PLACEHOLDERS = {
             new SimplePlaceholder("%lastsent%", PlaceholderUtil::getLastMessage),
             new SimplePlaceholder("%lastcmd%", PlaceholderUtil::getLastCommand),
-            new SimplePlaceholder("%clipboard%", () -> getClipboard(null)),
+            new SimplePlaceholder("%clipboard%", (eval) -> getClipboard(eval, null)),
             new SimplePlaceholder("%myname%", PlaceholderUtil::getPlayerName),
             new SimplePlaceholder("%pmsender%", PlaceholderUtil::getPmSenderName),
-            new SimplePlaceholder("%pos%", () -> getPlayerBlockPos(new String[]{"0", "0"})),
-            new SimplePlaceholder("%x%", () -> getPlayerBlockX(new String[]{"0"})),
-            new SimplePlaceholder("%y%", () -> getPlayerBlockY(new String[]{"0"})),
-            new SimplePlaceholder("%z%", () -> getPlayerBlockZ(new String[]{"0"})),
-            new SimplePlaceholder("%lpos%", () -> getLookBlockPos(new String[]{"0", "0"})),
-            new SimplePlaceholder("%lx%", () -> getLookBlockX(new String[]{"0"})),
-            new SimplePlaceholder("%ly%", () -> getLookBlockY(new String[]{"0"})),
-            new SimplePlaceholder("%lz%", () -> getLookBlockZ(new String[]{"0"})),
+            new SimplePlaceholder("%pos%", (eval) -> getPlayerBlockPos(eval, new String[]{"0", "0"})),
+            new SimplePlaceholder("%x%", (eval) -> getPlayerBlockX(eval, new String[]{"0"})),
+            new SimplePlaceholder("%y%", (eval) -> getPlayerBlockY(eval, new String[]{"0"})),
+            new SimplePlaceholder("%z%", (eval) -> getPlayerBlockZ(eval, new String[]{"0"})),
+            new SimplePlaceholder("%lpos%", (eval) -> getLookBlockPos(eval, new String[]{"0", "0"})),
+            new SimplePlaceholder("%lx%", (eval) -> getLookBlockX(eval, new String[]{"0"})),
+            new SimplePlaceholder("%ly%", (eval) -> getLookBlockY(eval, new String[]{"0"})),
+            new SimplePlaceholder("%lz%", (eval) -> getLookBlockZ(eval, new String[]{"0"})),
+    };
+
+    /**
+     * Placeholders whose argument is a user-supplied regex pattern.
+     */
+    private static final Pattern[] USER_PATTERN_PLACEHOLDERS = {
+            Pattern.compile("%#(.*)%"),
+            Pattern.compile("%clipboard#(.*)%"),
     };
 
     private static final Placeholder[] REGEX_PLACEHOLDERS = {
-            new Placeholder(Pattern.compile("%#(.*)%"), 1, PlaceholderUtil::getRecentChat),
-            new Placeholder(Pattern.compile("%clipboard#(.*)%"), 1, PlaceholderUtil::getClipboard),
+            new Placeholder(USER_PATTERN_PLACEHOLDERS[0], 1, PlaceholderUtil::getRecentChat),
+            new Placeholder(USER_PATTERN_PLACEHOLDERS[1], 1, PlaceholderUtil::getClipboard),
             new Placeholder(Pattern.compile("%pos([FBLR])(\\d+)%"), 2, PlaceholderUtil::getPlayerBlockPos),
             new Placeholder(Pattern.compile("%x([+-]\\d+)%"), 1, PlaceholderUtil::getPlayerBlockX),
             new Placeholder(Pattern.compile("%y([+-]\\d+)%"), 1, PlaceholderUtil::getPlayerBlockY),
@@ -77,69 +125,536 @@ public class PlaceholderUtil {
     };
 
     /**
-     * Breaks if player is not in-game. Does not self-check for performance
-     * reasons, but expects caller to validate.
+     * Replaces each placeholder in {@code message} with its value, inserted
+     * literally: a {@code $} or {@code \} in a value is not a group
+     * reference or escape, and a placeholder in a value is not replaced by
+     * the placeholder it came from, only by those applied after it.
+     *
+     * <p>Breaks if player is not in-game, or if the current
+     * {@link ClientContext} cannot otherwise supply placeholder values. Does
+     * not self-check for performance reasons, but expects caller to
+     * validate.</p>
      */
     public static Pair<String,Integer> replace(String message) {
         if (!message.contains("%")) return new Pair<>(message, 0);
-        reset();
-        for (SimplePlaceholder p : SIMPLE_PLACEHOLDERS) message = p.process(message);
-        for (Placeholder p : REGEX_PLACEHOLDERS) message = p.process(message);
+        Evaluation eval = new Evaluation(LIVE_SOURCES, null);
+        message = eval.apply(message);
 
-        return new Pair<>(message, faults);
+        return new Pair<>(message, eval.faults);
     }
 
-    private static void reset() {
-        faults = 0;
-        playerBlockPos = null;
-        lookBlockPos = null;
-        lookAngle = null;
-        pmSenderName = null;
+    /**
+     * Applies placeholders to {@code message} as {@link PlaceholderUtil#replace}
+     * would, recording the placeholders which failed to apply.
+     *
+     * <p>The client state used by the placeholders is read on the calling
+     * thread, which must be the client thread, and the placeholders, including
+     * any user-supplied regex patterns, are then applied on a background
+     * thread.</p>
+     *
+     * <p>Breaks if player is not in-game, see 
+     * {@link PlaceholderUtil#replace}.</p>
+     */
+    public static CompletableFuture<Preview> preview(String message) {
+        if (!message.contains("%")) {
+            return CompletableFuture.completedFuture(new Preview(message, List.of()));
+        }
+        Sources sources = new CapturedSources(message);
+        return CompletableFuture.supplyAsync(() -> {
+            List<Fault> faults = new ArrayList<>();
+            String text = new Evaluation(sources, faults).apply(message);
+            faults.sort(Comparator.comparingInt(Fault::start));
+            return new Preview(text, faults);
+        }, PREVIEW_EXECUTOR);
     }
-    
-    private static String fault() {
-        faults++;
-        return "?";
+
+    /**
+     * The result of applying placeholders to a message, see
+     * {@link PlaceholderUtil#preview}.
+     * @param text the message, with the value of each placeholder.
+     * @param faults the placeholders which failed to apply, in order.
+     */
+    public record Preview(String text, List<Fault> faults) {
+        /**
+         * @return the text, with the token of each placeholder which failed
+         * to apply highlighted in place of its value.
+         */
+        public Component toComponent() {
+            MutableComponent preview = Component.empty().withStyle(ChatFormatting.GRAY);
+            int start = 0;
+            for (Fault fault : faults) {
+                if (start < fault.start()) preview.append(text.substring(start, fault.start()));
+                preview.append(Component.literal(fault.token())
+                        .withStyle(ChatFormatting.RED, ChatFormatting.UNDERLINE));
+                start = fault.end();
+            }
+            if (start < text.length()) preview.append(text.substring(start));
+            return preview;
+        }
     }
 
-    private record SimplePlaceholder(String string, Supplier<String> supplier) {
-        public String process(String message) {
-            if (!message.contains(string)) return message;
-            String replacement = supplier.get();
-            return message.replaceAll(string, replacement);
+    /**
+     * A placeholder which failed to apply.
+     * @param start the start of its value in {@link Preview#text}.
+     * @param end the end of its value in {@link Preview#text}.
+     * @param token the placeholder, as written in the message.
+     */
+    public record Fault(int start, int end, String token) {}
+
+    /**
+     * The state of a single application of placeholders to a message.
+     */
+    private static class Evaluation {
+        private final Sources sources;
+        /**
+         * The placeholders which failed to apply, by the position of their
+         * values in the message, if recorded.
+         */
+        private final @Nullable List<Fault> faultSpans;
+        private int faults;
+        /**
+         * Whether the value of the current token is a fault.
+         */
+        private boolean faulted;
+        private String token = "";
+        private @Nullable BlockPos playerBlockPos;
+        private @Nullable BlockPos lookBlockPos;
+        private @Nullable Vec3 lookAngle;
+        private @Nullable String pmSenderName;
+
+        Evaluation(Sources sources, @Nullable List<Fault> faultSpans) {
+            this.sources = sources;
+            this.faultSpans = faultSpans;
+        }
+
+        String apply(String message) {
+            for (SimplePlaceholder p : SIMPLE_PLACEHOLDERS) message = p.process(this, message);
+            for (Placeholder p : REGEX_PLACEHOLDERS) message = p.process(this, message);
+            return message;
+        }
+
+        /**
+         * Starts evaluating the placeholder {@code token}.
+         */
+        void begin(String token) {
+            this.token = token;
+            faulted = false;
+        }
+
+        String fault() {
+            faults++;
+            faulted = true;
+            return "?";
+        }
+
+        /**
+         * @return {@code message} with the characters from {@code start} to
+         * {@code end} replaced by {@code value}, the value of the current
+         * token. The recorded positions of earlier faults are moved
+         * accordingly.
+         */
+        String replace(String message, int start, int end, String value) {
+            if (faultSpans != null) {
+                int delta = value.length() - (end - start);
+                for (ListIterator<Fault> iter = faultSpans.listIterator(); iter.hasNext(); ) {
+                    Fault fault = iter.next();
+                    if (fault.end() <= start) continue;
+                    if (fault.start() < end) {
+                        // Part of the token being replaced
+                        iter.remove();
+                    } else {
+                        iter.set(new Fault(fault.start() + delta, fault.end() + delta,
+                                fault.token()));
+                    }
+                }
+                if (faulted) faultSpans.add(new Fault(start, start + value.length(), token));
+            }
+            return message.substring(0, start) + value + message.substring(end);
+        }
+    }
+
+    private record SimplePlaceholder(String string, Function<Evaluation, String> supplier) {
+        /**
+         * Replaces each occurrence of the token with its value. Unlike
+         * {@link String#replaceAll}, the value is inserted literally.
+         */
+        public String process(Evaluation eval, String message) {
+            int index = message.indexOf(string);
+            if (index < 0) return message;
+            eval.begin(string);
+            String replacement = supplier.apply(eval);
+            while (index >= 0) {
+                message = eval.replace(message, index, index + string.length(), replacement);
+                index = message.indexOf(string, index + replacement.length());
+            }
+            return message;
         }
     }
 
-    private record Placeholder(Pattern pattern, int groups, Function<String[], String> operator) {
-        public String process(String message) {
+    private record Placeholder(Pattern pattern, int groups,
+                               BiFunction<Evaluation, String[], String> operator) {
+        /**
+         * Replaces each match of the pattern with its value. Unlike
+         * {@link Matcher#replaceFirst}, the value is inserted literally, and
+         * the search resumes after it, so that a value containing a match is
+         * neither re-evaluated nor able to loop forever.
+         */
+        public String process(Evaluation eval, String message) {
             Matcher matcher = pattern.matcher(message);
-            while (true) {
-                if (!matcher.find()) return message;
+            int from = 0;
+            while (matcher.find(from)) {
                 String[] args = new String[groups];
                 for (int i = 0; i < args.length; i++) args[i] = matcher.group(i + 1);
-                message = matcher.replaceFirst(operator.apply(args));
+                int start = matcher.start();
+                eval.begin(matcher.group());
+                String replacement = operator.apply(eval, args);
+                message = eval.replace(message, start, matcher.end(), replacement);
+                from = start + replacement.length();
+                matcher.reset(message);
             }
+            return message;
+        }
+    }
+
+    // Placeholder sources
+
+    /**
+     * The client state read by placeholders.
+     */
+    private interface Sources {
+        /**
+         * @return the text of the most recent received chat messages, most
+         * recent first, up to {@link PlaceholderUtil#CHAT_LIMIT}.
+         */
+        Iterable<String> getChatMessages();
+
+        /**
+         * @return the sender of the most recent incoming private message
+         * among the most recent received chat messages, or {@code null} if
+         * there is none.
+         */
+        @Nullable String getPmSenderName();
+
+        @Nullable String getLastSentMessage();
+
+        @Nullable String getLastCommand();
+
+        String getClipboard();
+
+        String getPlayerName();
+
+        @Nullable BlockPos getPlayerBlockPos();
+
+        @Nullable BlockPos getLookBlockPos();
+
+        @Nullable Vec3 getLookAngle();
+    }
+
+    /**
+     * Reads the client state from the current {@link ClientContext} when
+     * required, so must only be used on the client thread.
+     */
+    private static class LiveSources implements Sources {
+        @Override
+        public Iterable<String> getChatMessages() {
+            return Iterables.transform(Iterables.limit(
+                    CommandKeys.context().getChatMessages(), CHAT_LIMIT), Component::getString);
+        }
+
+        @Override
+        public @Nullable String getPmSenderName() {
+            for (Component msg : Iterables.limit(
+                    CommandKeys.context().getChatMessages(), CHAT_LIMIT)) {
+                if (msg.getContents() instanceof TranslatableContents tc
+                        && tc.getKey().contains("commands.message.display.incoming")) {
+                    return ((MutableComponent)tc.getArgs()[0]).getString();
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public @Nullable String getLastSentMessage() {
+            return CommandKeys.context().getLastSentMessage();
+        }
+
+        @Override
+        public @Nullable String getLastCommand() {
+            return CommandKeys.context().getLastCommand();
+        }
+
+        @Override
+        public String getClipboard() {
+            return CommandKeys.context().getClipboard();
+        }
+
+        @Override
+        public String getPlayerName() {
+            return CommandKeys.context().getPlayerName();
+        }
+
+        @Override
+        public @Nullable BlockPos getPlayerBlockPos() {
+            return CommandKeys.context().getPlayerBlockPos();
+        }
+
+        @Override
+        public @Nullable BlockPos getLookBlockPos() {
+            return CommandKeys.context().getLookBlockPos();
+        }
+
+        @Override
+        public @Nullable Vec3 getLookAngle() {
+            return CommandKeys.context().getLookAngle();
+        }
+    }
+
+    /**
+     * The client state read by the placeholders of a message, read from the
+     * current {@link ClientContext} on creation, so that the placeholders can
+     * be applied on another thread. Each source is only read if the message,
+     * or the value of a placeholder applied before it, contains a placeholder
+     * using it, so that a preview does not raycast for the look position or
+     * read the clipboard unless required.
+     */
+    private static class CapturedSources implements Sources {
+        private final List<String> chatMessages = new ArrayList<>();
+        private final @Nullable String pmSenderName;
+        private final @Nullable String lastSentMessage;
+        private final @Nullable String lastCommand;
+        private final String clipboard;
+        private final String playerName;
+        private final @Nullable BlockPos playerBlockPos;
+        private final @Nullable BlockPos lookBlockPos;
+        private final @Nullable Vec3 lookAngle;
+
+        CapturedSources(String message) {
+            // Read in the order the placeholders are applied, as placeholders
+            // in the value of one are applied by those after it
+            StringBuilder text = new StringBuilder(message);
+            lastSentMessage = capture(text, "%lastsent%", LIVE_SOURCES::getLastSentMessage);
+            lastCommand = capture(text, "%lastcmd%", LIVE_SOURCES::getLastCommand);
+            String clipboard = capture(text, "%clipboard%", LIVE_SOURCES::getClipboard);
+            String playerName = capture(text, "%myname%", LIVE_SOURCES::getPlayerName);
+            pmSenderName = capture(text, "%pmsender%", LIVE_SOURCES::getPmSenderName);
+            if (text.indexOf("%#") >= 0) {
+                LIVE_SOURCES.getChatMessages().forEach(chatMessages::add);
+                chatMessages.forEach((msg) -> text.append('\n').append(msg));
+            }
+            if (clipboard == null) {
+                clipboard = capture(text, "%clipboard#", LIVE_SOURCES::getClipboard);
+            }
+            this.clipboard = clipboard != null ? clipboard : "";
+            this.playerName = playerName != null ? playerName : "";
+            // The remaining values are numbers
+            boolean pos = text.indexOf("%pos") >= 0;
+            boolean lookPos = text.indexOf("%lpos") >= 0;
+            playerBlockPos = pos || text.indexOf("%x") >= 0 || text.indexOf("%y") >= 0
+                    || text.indexOf("%z") >= 0 ? LIVE_SOURCES.getPlayerBlockPos() : null;
+            lookBlockPos = lookPos || text.indexOf("%lx") >= 0 || text.indexOf("%ly") >= 0
+                    || text.indexOf("%lz") >= 0 ? LIVE_SOURCES.getLookBlockPos() : null;
+            lookAngle = pos || lookPos ? LIVE_SOURCES.getLookAngle() : null;
+        }
+
+        /**
+         * @return the value of {@code source} if {@code text} contains
+         * {@code token}, which is then added to {@code text}, or {@code null}
+         * if it does not.
+         */
+        private static @Nullable String capture(StringBuilder text, String token,
+                                                Supplier<@Nullable String> source) {
+            if (text.indexOf(token) < 0) return null;
+            String value = source.get();
+            if (value != null) text.append('\n').append(value);
+            return value;
+        }
+
+        @Override
+        public Iterable<String> getChatMessages() {
+            return chatMessages;
+        }
+
+        @Override
+        public @Nullable String getPmSenderName() {
+            return pmSenderName;
+        }
+
+        @Override
+        public @Nullable String getLastSentMessage() {
+            return lastSentMessage;
+        }
+
+        @Override
+        public @Nullable String getLastCommand() {
+            return lastCommand;
+        }
+
+        @Override
+        public String getClipboard() {
+            return clipboard;
+        }
+
+        @Override
+        public String getPlayerName() {
+            return playerName;
+        }
+
+        @Override
+        public @Nullable BlockPos getPlayerBlockPos() {
+            return playerBlockPos;
+        }
+
+        @Override
+        public @Nullable BlockPos getLookBlockPos() {
+            return lookBlockPos;
+        }
+
+        @Override
+        public @Nullable Vec3 getLookAngle() {
+            return lookAngle;
+        }
+    }
+
+    // User regex handling
+
+    /**
+     * @return {@code true} if a regex pattern used by a placeholder of
+     * {@code message} has previously been aborted for exceeding the
+     * evaluation budget.
+     */
+    public static boolean hasUnsafePattern(String message) {
+        if (UNSAFE_PATTERNS.isEmpty()) return false;
+        for (String pattern : userPatterns(message)) {
+            if (UNSAFE_PATTERNS.contains(pattern)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return the user-supplied regex patterns of the placeholders of
+     * {@code message}, parsed as by {@link PlaceholderUtil#replace}. Patterns
+     * containing other placeholders are returned before those are applied.
+     */
+    private static List<String> userPatterns(String message) {
+        if (!message.contains("%")) return List.of();
+        List<String> patterns = new ArrayList<>();
+        for (Pattern placeholder : USER_PATTERN_PLACEHOLDERS) {
+            Matcher matcher = placeholder.matcher(message);
+            while (matcher.find()) patterns.add(matcher.group(1));
+        }
+        return patterns;
+    }
+
+    /**
+     * Compiles the user-supplied regex patterns of {@code message}, so that
+     * they are cached when the message is first sent. Safe to call off the
+     * client thread.
+     */
+    public static void prewarm(String message) {
+        for (String pattern : userPatterns(message)) {
+            try {
+                compileUserPattern(pattern);
+            } catch (PatternSyntaxException ignored) {
+                // Reported when sent
+            }
+        }
+    }
+
+    /**
+     * @return the compiled form of {@code regex}, from cache if available.
+     * @throws PatternSyntaxException if {@code regex} is invalid.
+     */
+    private static Pattern compileUserPattern(String regex) {
+        Pattern pattern = PATTERN_CACHE.get(regex);
+        if (pattern == null) {
+            pattern = Pattern.compile(regex);
+            PATTERN_CACHE.put(regex, pattern);
+        }
+        return pattern;
+    }
+
+    /**
+     * @return {@code text}, wrapped so that a matcher reading it throws
+     * {@link RegexBudgetExceededException} once it has read more than
+     * {@link PlaceholderUtil#REGEX_STEP_BUDGET} characters, as when
+     * evaluating placeholders. For matching user-supplied patterns other than
+     * those of placeholders.
+     */
+    public static CharSequence withRegexBudget(String text) {
+        return new BudgetedCharSequence(text, new RegexBudget());
+    }
+
+    private static String unsafePatternFault(Evaluation eval, String pattern) {
+        UNSAFE_PATTERNS.add(pattern);
+        CommandKeys.LOG.error("Regex evaluation aborted after {} steps: {}",
+                REGEX_STEP_BUDGET, pattern);
+        return eval.fault();
+    }
+
+    private static class RegexBudget {
+        private int remaining = REGEX_STEP_BUDGET;
+
+        void step() {
+            if (--remaining < 0) throw new RegexBudgetExceededException();
+        }
+    }
+
+    /**
+     * Thrown by a matcher reading input wrapped with a {@link RegexBudget}
+     * once the budget is exhausted.
+     */
+    public static class RegexBudgetExceededException extends RuntimeException {
+        RegexBudgetExceededException() {
+            super(null, null, false, false);
+        }
+    }
+
+    /**
+     * Wraps a {@link String}, counting character reads against a 
+     * {@link RegexBudget}. Since the regex engine reads the input via 
+     * {@link CharSequence#charAt}, this bounds the work done per evaluation.
+     */
+    private record BudgetedCharSequence(String string, RegexBudget budget) implements CharSequence {
+        @Override
+        public int length() {
+            return string.length();
+        }
+
+        @Override
+        public char charAt(int index) {
+            budget.step();
+            return string.charAt(index);
+        }
+
+        @Override
+        public @NotNull CharSequence subSequence(int start, int end) {
+            return string.subSequence(start, end);
+        }
+
+        @Override
+        public @NotNull String toString() {
+            return string;
         }
     }
 
     // Incoming message
 
-    private static String getRecentChat(@NotNull String[] pattern) {
+    private static String getRecentChat(Evaluation eval, @NotNull String[] pattern) {
         try {
-            Pattern regex = Pattern.compile(pattern[0]);
+            Pattern regex = compileUserPattern(pattern[0]);
+            RegexBudget budget = new RegexBudget();
 
             int i = 0;
-            for (GuiMessage guiMsg : ((ChatComponentAccessor)
-                    Minecraft.getInstance().gui.getChat()).getAllMessages()) {
-                if (++i > 50) break;
+            for (String msg : eval.sources.getChatMessages()) {
+                i++;
 
-                Matcher matcher = regex.matcher(guiMsg.content().getString());
+                Matcher matcher = regex.matcher(new BudgetedCharSequence(msg, budget));
                 if (matcher.find()) {
                     try {
                         return matcher.group(1);
                     } catch (IndexOutOfBoundsException e) {
                         CommandKeys.LOG.error("Recent chat placeholder failed: Group 1 not available: " + e);
-                        return fault();
+                        return eval.fault();
                     }
                 }
             }
@@ -147,28 +662,33 @@ public class PlaceholderUtil {
             CommandKeys.LOG.warn("Recent chat placeholder failed: No message found: Checked " + i);
         } catch (PatternSyntaxException e) {
             CommandKeys.LOG.error("Recent chat placeholder failed: Invalid regex: " + e);
+        } catch (RegexBudgetExceededException e) {
+            return unsafePatternFault(eval, pattern[0]);
         }
 
-        return fault();
+        return eval.fault();
     }
 
     // Clipboard
 
-    private static String getClipboard(@Nullable String[] pattern) {
-        String clipboard = Minecraft.getInstance().keyboardHandler.getClipboard();
+    private static String getClipboard(Evaluation eval, @Nullable String[] pattern) {
+        String clipboard = eval.sources.getClipboard();
         if (clipboard.isEmpty()) {
             CommandKeys.LOG.warn("Clipboard placeholder failed: No data");
-            return fault();
+            return eval.fault();
         }
         if (pattern != null) {
             try {
-                if (!Pattern.compile(pattern[0]).matcher(clipboard).find()) {
+                if (!compileUserPattern(pattern[0]).matcher(
+                        new BudgetedCharSequence(clipboard, new RegexBudget())).find()) {
                     CommandKeys.LOG.warn("Clipboard placeholder failed: Non-matching regex");
-                    return fault();
+                    return eval.fault();
                 }
             } catch (PatternSyntaxException e) {
                 CommandKeys.LOG.warn("Clipboard placeholder failed: Invalid regex: " + e);
-                return fault();
+                return eval.fault();
+            } catch (RegexBudgetExceededException e) {
+                return unsafePatternFault(eval, pattern[0]);
             }
         }
         return clipboard;
@@ -176,126 +696,108 @@ public class PlaceholderUtil {
 
     // Message history
 
-    private static String getLastMessage() {
-        String lastMsg = Minecraft.getInstance().gui.getChat().getRecentChat().peekLast();
-        if (lastMsg == null) return fault();
+    private static String getLastMessage(Evaluation eval) {
+        String lastMsg = eval.sources.getLastSentMessage();
+        if (lastMsg == null) return eval.fault();
         return lastMsg;
     }
 
-    private static String getLastCommand() {
-        if (Minecraft.getInstance().commandHistory().history() instanceof ArrayListDeque<String> deque) {
-            String lastCmd = deque.peekLast();
-            if (lastCmd != null) return lastCmd;
-        } else {
-            CommandKeys.LOG.error("Command history not ArrayListDeque");
-        }
-        return fault();
+    private static String getLastCommand(Evaluation eval) {
+        String lastCmd = eval.sources.getLastCommand();
+        if (lastCmd == null) return eval.fault();
+        return lastCmd;
     }
 
     // Player name
 
-    private static String getPlayerName() {
-        return Minecraft.getInstance().player.getName().getString();
+    private static String getPlayerName(Evaluation eval) {
+        return eval.sources.getPlayerName();
     }
 
     // Incoming private message sender
 
-    private static String getPmSenderName() {
-        if (pmSenderName != null) return pmSenderName;
-        int i = 0;
-        for (GuiMessage guiMsg : ((ChatComponentAccessor)
-                Minecraft.getInstance().gui.getChat()).getAllMessages()) {
-            if (++i > 50) break;
-            Component msg = guiMsg.content();
-            if (msg.getContents() instanceof TranslatableContents tc
-                    && tc.getKey().contains("commands.message.display.incoming")) {
-                pmSenderName = ((MutableComponent)tc.getArgs()[0]).getString();
-                break;
-            }
+    private static String getPmSenderName(Evaluation eval) {
+        if (eval.pmSenderName == null) eval.pmSenderName = eval.sources.getPmSenderName();
+        if (eval.pmSenderName == null) {
+            CommandKeys.LOG.warn("PmSenderName placeholder failed: No message found: Checked "
+                    + CHAT_LIMIT);
+            return eval.fault();
         }
-        if (pmSenderName == null) {
-            CommandKeys.LOG.warn("PmSenderName placeholder failed: No message found: Checked " + i);
-            return fault();
-        }
-        return pmSenderName;
+        return eval.pmSenderName;
     }
 
     // Player position
 
-    private static BlockPos updatePlayerBlockPos() {
-        if (playerBlockPos == null)
-            playerBlockPos = Minecraft.getInstance().player.blockPosition();
-        return playerBlockPos;
-    }
-
-    private static BlockPos updateLookBlockPos() {
-        // Note: ProjectileUtil.getEntityHitResult for entities
-        if (lookBlockPos == null) {
-            Minecraft mc = Minecraft.getInstance();
-            // Distance is arbitrary but will do for now
-            HitResult result = mc.player.pick(Math.max(384, 
-                    (mc.levelRenderer.getLastViewDistance() + 1D) * 16), 0.0F, false);
-            if (result.getType().equals(HitResult.Type.BLOCK)) {
-                lookBlockPos = ((BlockHitResult)result).getBlockPos();
-            }
-        }
-        return lookBlockPos;
+    private static @Nullable BlockPos updatePlayerBlockPos(Evaluation eval) {
+        if (eval.playerBlockPos == null)
+            eval.playerBlockPos = eval.sources.getPlayerBlockPos();
+        return eval.playerBlockPos;
+    }
+
+    private static @Nullable BlockPos updateLookBlockPos(Evaluation eval) {
+        if (eval.lookBlockPos == null)
+            eval.lookBlockPos = eval.sources.getLookBlockPos();
+        return eval.lookBlockPos;
     }
 
-    private static Vec3 updateLookAngle() {
-        if (lookAngle == null)
-            lookAngle = Minecraft.getInstance().player.getLookAngle();
-        return lookAngle;
+    private static @Nullable Vec3 updateLookAngle(Evaluation eval) {
+        if (eval.lookAngle == null)
+            eval.lookAngle = eval.sources.getLookAngle();
+        return eval.lookAngle;
     }
 
-    private static String getPlayerBlockPos(String[] args) {
-        if (updatePlayerBlockPos() == null || updateLookAngle() == null) return fault();
+    private static String getPlayerBlockPos(Evaluation eval, String[] args) {
+        if (updatePlayerBlockPos(eval) == null || updateLookAngle(eval) == null) {
+            return eval.fault();
+        }
         int offset = Integer.parseInt(args[1]);
-        Vec3 playerPos = playerBlockPos.getBottomCenter();
+        Vec3 playerPos = eval.playerBlockPos.getBottomCenter();
         if (offset != 0) playerPos = offsetCardinalDirection(
-                playerPos, lookAngle, args[0], offset);
+                playerPos, eval.lookAngle, args[0], offset);
         return String.format("%d %d %d", Mth.floor(playerPos.x),
                 Mth.floor(playerPos.y), Mth.floor(playerPos.z));
     }
 
-    private static String getPlayerBlockX(String[] offset) {
-        if (updatePlayerBlockPos() == null) return fault();
-        return String.valueOf(Mth.floor(playerBlockPos.getX()) + Integer.parseInt(offset[0]));
+    private static String getPlayerBlockX(Evaluation eval, String[] offset) {
+        if (updatePlayerBlockPos(eval) == null) return eval.fault();
+        return String.valueOf(Mth.floor(eval.playerBlockPos.getX()) + Integer.parseInt(offset[0]));
     }
 
-    private static String getPlayerBlockY(String[] offset) {
-        if (updatePlayerBlockPos() == null) return fault();
-        return String.valueOf(Mth.floor(playerBlockPos.getY()) + Integer.parseInt(offset[0]));
+    private static String getPlayerBlockY(Evaluation eval, String[] offset) {
+        if (updatePlayerBlockPos(eval) == null) return eval.fault();
+        return String.valueOf(Mth.floor(eval.playerBlockPos.getY()) + Integer.parseInt(offset[0]));
     }
 
-    private static String getPlayerBlockZ(String[] offset) {
-        if (updatePlayerBlockPos() == null) return fault();
-        return String.valueOf(Mth.floor(playerBlockPos.getZ()) + Integer.parseInt(offset[0]));
+    private static String getPlayerBlockZ(Evaluation eval, String[] offset) {
+        if (updatePlayerBlockPos(eval) == null) return eval.fault();
+        return String.valueOf(Mth.floor(eval.playerBlockPos.getZ()) + Integer.parseInt(offset[0]));
     }
 
-    private static String getLookBlockPos(String[] args) {
-        if (updateLookBlockPos() == null || updateLookAngle() == null) return fault();
+    private static String getLookBlockPos(Evaluation eval, String[] args) {
+        if (updateLookBlockPos(eval) == null || updateLookAngle(eval) == null) {
+            return eval.fault();
+        }
         int offset = Integer.parseInt(args[1]);
-        Vec3 playerPos = lookBlockPos.getBottomCenter();
+        Vec3 playerPos = eval.lookBlockPos.getBottomCenter();
         if (offset != 0) playerPos = offsetCardinalDirection(
-                playerPos, lookAngle, args[0], offset);
+                playerPos, eval.lookAngle, args[0], offset);
         return String.format("%d %d %d", Mth.floor(playerPos.x),
                 Mth.floor(playerPos.y), Mth.floor(playerPos.z));
     }
 
-    private static String getLookBlockX(String[] offset) {
-        if (updateLookBlockPos() == null) return fault();
-        return String.valueOf(Mth.floor(lookBlockPos.getX()) + Integer.parseInt(offset[0]));
+    private static String getLookBlockX(Evaluation eval, String[] offset) {
+        if (updateLookBlockPos(eval) == null) return eval.fault();
+        return String.valueOf(Mth.floor(eval.lookBlockPos.getX()) + Integer.parseInt(offset[0]));
     }
 
-    private static String getLookBlockY(String[] offset) {
-        if (updateLookBlockPos() == null) return fault();
-        return String.valueOf(Mth.floor(lookBlockPos.getY()) + Integer.parseInt(offset[0]));
+    private static String getLookBlockY(Evaluation eval, String[] offset) {
+        if (updateLookBlockPos(eval) == null) return eval.fault();
+        return String.valueOf(Mth.floor(eval.lookBlockPos.getY()) + Integer.parseInt(offset[0]));
     }
 
-    private static String getLookBlockZ(String[] offset) {
-        if (updateLookBlockPos() == null) return fault();
-        return String.valueOf(Mth.floor(lookBlockPos.getZ()) + Integer.parseInt(offset[0]));
+    private static String getLookBlockZ(Evaluation eval, String[] offset) {
+        if (updateLookBlockPos(eval) == null) return eval.fault();
+        return String.valueOf(Mth.floor(eval.lookBlockPos.getZ()) + Integer.parseInt(offset[0]));
     }
 
     // Util